@@ -0,0 +1,79 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.*;
+import org.openjdk.jmh.annotations.*;
+
+import code.lucamarrocco.hoptoad.*;
+
+import com.sun.net.httpserver.*;
+
+/** The whole HoptoadAppender.append path, posting to a stub server on localhost. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppenderBenchmark {
+
+	@Param({ "urlconnection", "pooled", "nio" })
+	public String transport;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private HoptoadAppender appender;
+
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				final InputStream body = exchange.getRequestBody();
+				final byte[] buffer = new byte[4096];
+				while (body.read(buffer) != -1) {}
+				final byte[] response = "<notice/>".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, response.length);
+				exchange.getResponseBody().write(response);
+				exchange.close();
+			}
+		});
+		executor = Executors.newFixedThreadPool(4);
+		server.setExecutor(executor);
+		server.start();
+
+		appender = new HoptoadAppender("a7bad952a319d10540fbbd64b597260d");
+		appender.setEnabled(true);
+		appender.setEnv("benchmark");
+		appender.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/notifier_api/v2/notices");
+		appender.setTransport(transport);
+		appender.activateOptions();
+
+		final Logger logger = Logger.getLogger(AppenderBenchmark.class);
+		event = new LoggingEvent(Logger.class.getName(), logger, org.apache.log4j.Level.ERROR, "request failed", Throwables.newThrowable(150, 4));
+	}
+
+	@TearDown
+	public void tearDown() {
+		appender.close();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public void append() {
+		appender.doAppend(event);
+	}
+}
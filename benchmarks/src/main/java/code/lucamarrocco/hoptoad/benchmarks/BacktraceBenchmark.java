@@ -0,0 +1,50 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import code.lucamarrocco.hoptoad.*;
+
+/** Capturing and filtering a backtrace from a throwable, with and without the quiet ignore rules. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BacktraceBenchmark {
+
+	@Param({ "40", "150" })
+	public int depth;
+
+	@Param({ "1", "4" })
+	public int causes;
+
+	private Throwable throwable;
+
+	@Setup
+	public void setUp() {
+		throwable = Throwables.newThrowable(depth, causes);
+	}
+
+	@Benchmark
+	public List<BacktraceLine> backtrace() {
+		return new Backtrace(throwable).lines();
+	}
+
+	@Benchmark
+	public List<BacktraceLine> quietRubyBacktrace() {
+		return new QuietRubyBacktrace(throwable).lines();
+	}
+
+	@Benchmark
+	public List<BacktraceLine> rubyBacktrace() {
+		return new RubyBacktrace(throwable).lines();
+	}
+}
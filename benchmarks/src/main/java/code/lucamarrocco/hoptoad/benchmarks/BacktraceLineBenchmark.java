@@ -0,0 +1,45 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import code.lucamarrocco.hoptoad.*;
+
+/** Parsing a formatted frame and rendering it as text and XML. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BacktraceLineBenchmark {
+
+	private final String line = "at org.mortbay.jetty.servlet.ServletHandler$CachedChain.doFilter(ServletHandler.java:1088)";
+
+	private final BacktraceLine backtraceLine = new BacktraceLine("org.mortbay.jetty.servlet.ServletHandler$CachedChain", "ServletHandler.java", 1088, "doFilter");
+
+	@Benchmark
+	public BacktraceLine parse() {
+		return new BacktraceLine(line);
+	}
+
+	@Benchmark
+	public String parseAndToXml() {
+		return new BacktraceLine(line).toXml();
+	}
+
+	@Benchmark
+	public String toXml() {
+		return backtraceLine.toXml();
+	}
+
+	@Benchmark
+	public String toText() {
+		return backtraceLine.toString();
+	}
+}
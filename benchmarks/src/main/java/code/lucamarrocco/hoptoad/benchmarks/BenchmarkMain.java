@@ -0,0 +1,25 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the benchmarks with the GC profiler always on, so every run reports
+ * allocation rate next to throughput. Takes the usual JMH command line, e.g.
+ * {@code java -jar target/benchmarks.jar Backtrace -rf json}.
+ */
+public class BenchmarkMain {
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
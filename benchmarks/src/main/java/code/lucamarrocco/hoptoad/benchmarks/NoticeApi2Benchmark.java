@@ -0,0 +1,63 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import code.lucamarrocco.hoptoad.*;
+
+/** Serializing a notice with small and large request, session and environment maps. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NoticeApi2Benchmark {
+
+	@Param({ "5", "500" })
+	public int mapSize;
+
+	private HoptoadNotice notice;
+
+	private final OutputStream discard = new OutputStream() {
+		@Override
+		public void write(final int b) {}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {}
+	};
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> map = new TreeMap<String, Object>();
+		for (int i = 0; i < mapSize; i++) {
+			map.put("key." + i, "value <" + i + "> & some text that needs escaping");
+		}
+		notice = new HoptoadNoticeBuilder("a7bad952a319d10540fbbd64b597260d", new QuietRubyBacktrace(), Throwables.newThrowable(150, 4), "benchmark") {
+			{
+				setRequest("http://example.com/orders/42", "orders");
+				request(map);
+				session(map);
+				environment(map);
+			}
+		}.newNotice();
+	}
+
+	@Benchmark
+	public String toXmlString() {
+		return new NoticeApi2(notice).toString();
+	}
+
+	@Benchmark
+	public OutputStream toStream() throws IOException {
+		new NoticeApi2(notice, discard);
+		return discard;
+	}
+}
@@ -0,0 +1,55 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.*;
+import org.openjdk.jmh.annotations.*;
+
+import code.lucamarrocco.hoptoad.*;
+
+/** HoptoadAppender.append for an error one of the error filters rejects. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RejectedErrorBenchmark {
+
+	@Param({ "logger", "class", "topFrame" })
+	public String filter;
+
+	private HoptoadAppender appender;
+
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+		appender = new HoptoadAppender("a7bad952a319d10540fbbd64b597260d");
+		appender.setEnabled(true);
+		appender.setUrl("http://127.0.0.1:1/notifier_api/v2/notices");
+		if (filter.equals("logger")) appender.setDenyLoggers(RejectedErrorBenchmark.class.getName());
+		if (filter.equals("class")) appender.setDenyErrorClasses(RuntimeException.class.getName());
+		if (filter.equals("topFrame")) appender.setTopFrameLimit(1);
+		appender.activateOptions();
+
+		final Logger logger = Logger.getLogger(RejectedErrorBenchmark.class);
+		event = new LoggingEvent(Logger.class.getName(), logger, org.apache.log4j.Level.ERROR, "request failed", Throwables.newThrowable(150, 4));
+		appender.doAppend(event);
+	}
+
+	@TearDown
+	public void tearDown() {
+		appender.close();
+	}
+
+	@Benchmark
+	public void append() {
+		appender.doAppend(event);
+	}
+}
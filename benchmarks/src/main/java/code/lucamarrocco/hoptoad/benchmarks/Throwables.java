@@ -0,0 +1,72 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad.benchmarks;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Throwables with stacks taken from a real Cocoon, Spring and Jetty
+ * backtrace, so ignore rules and formatting see production-like frames.
+ */
+public class Throwables {
+
+	private static final List<StackTraceElement> FRAMES = frames();
+
+	private static List<StackTraceElement> frames() {
+		final List<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(Throwables.class.getResourceAsStream("/frames.txt")));
+		try {
+			for (String line; (line = reader.readLine()) != null;) {
+				if (line.trim().length() > 0) frames.add(frame(line.trim()));
+			}
+			reader.close();
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		return frames;
+	}
+
+	/** Parses {@code package.Class.method(File.java:42)}. */
+	static StackTraceElement frame(final String line) {
+		final int open = line.indexOf('(');
+		final String classAndMethod = line.substring(0, open);
+		final int dot = classAndMethod.lastIndexOf('.');
+		final String location = line.substring(open + 1, line.length() - 1);
+		final int colon = location.indexOf(':');
+		final String fileName = colon == -1 ? location : location.substring(0, colon);
+		int lineNumber = -1;
+		if (colon != -1) {
+			try {
+				lineNumber = Integer.parseInt(location.substring(colon + 1).replace(",", ""));
+			} catch (final NumberFormatException e) {}
+		}
+		return new StackTraceElement(classAndMethod.substring(0, dot), classAndMethod.substring(dot + 1), fileName, lineNumber);
+	}
+
+	/**
+	 * A root cause whose stack is {@code depth} frames deep, wrapped in
+	 * {@code causes - 1} enclosing exceptions. As with real wrapping, each
+	 * enclosing exception was thrown a few frames further up and shares the
+	 * bottom of its stack with its cause.
+	 */
+	public static Throwable newThrowable(final int depth, final int causes) {
+		Throwable throwable = null;
+		for (int i = causes - 1; i >= 0; i--) {
+			final Throwable enclosing = throwable == null ? new IllegalStateException("root cause " + i) : new RuntimeException("wrapped " + i, throwable);
+			enclosing.setStackTrace(stack(depth, (causes - 1 - i) * 3));
+			throwable = enclosing;
+		}
+		return throwable;
+	}
+
+	private static StackTraceElement[] stack(final int depth, final int skip) {
+		final StackTraceElement[] stack = new StackTraceElement[depth - Math.min(skip, depth - 1)];
+		for (int i = 0; i < stack.length; i++) {
+			stack[i] = FRAMES.get((FRAMES.size() - stack.length + i) % FRAMES.size());
+		}
+		return stack;
+	}
+}
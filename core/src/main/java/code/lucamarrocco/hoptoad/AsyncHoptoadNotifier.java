@@ -0,0 +1,186 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Delivers notices from a bounded in-memory queue drained by a small pool of
+ * sender threads, so {@link #notify(HoptoadNotice)} never waits for the HTTP
+ * round-trip. What happens when the queue is full is decided by the
+ * {@link OverflowPolicy}.
+ */
+public class AsyncHoptoadNotifier extends HoptoadNotifier {
+
+	public enum OverflowPolicy {
+		/** Discard the notice being offered. */
+		DROP_NEWEST,
+		/** Discard the oldest queued notice to make room. */
+		DROP_OLDEST,
+		/** Wait up to the block timeout for room, then discard the notice being offered. */
+		BLOCK
+	}
+
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	public static final int DEFAULT_SENDER_THREADS = 2;
+
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 100;
+
+	private static final long POLL_MILLIS = 100;
+
+	private final HoptoadNotifier delegate;
+
+	private final BlockingQueue<HoptoadNotice> queue;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final long blockTimeoutMillis;
+
+	private final List<Thread> senders = new ArrayList<Thread>();
+
+	private final AtomicLong enqueued = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile boolean closed;
+
+	public AsyncHoptoadNotifier(final HoptoadNotifier delegate) {
+		this(delegate, DEFAULT_CAPACITY, DEFAULT_SENDER_THREADS, OverflowPolicy.DROP_NEWEST, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+	}
+
+	public AsyncHoptoadNotifier(final HoptoadNotifier delegate, final int capacity, final int senderThreads, final OverflowPolicy overflowPolicy, final long blockTimeoutMillis) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		if (senderThreads < 1) throw new IllegalArgumentException("senderThreads must be positive: " + senderThreads);
+
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<HoptoadNotice>(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutMillis = blockTimeoutMillis;
+
+		for (int i = 0; i < senderThreads; i++) {
+			final Thread sender = new Thread(new Sender(), "hoptoad-sender-" + i);
+			sender.setDaemon(true);
+			senders.add(sender);
+			sender.start();
+		}
+	}
+
+	/**
+	 * Stops accepting notices and gives the sender threads up to
+	 * {@code timeoutMillis} to deliver what is still queued.
+	 */
+	public void close(final long timeoutMillis) {
+		closed = true;
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (final Thread sender : senders) {
+			final long remaining = deadline - System.currentTimeMillis();
+			try {
+				if (remaining > 0) sender.join(remaining);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			sender.interrupt();
+		}
+		dropped.addAndGet(queue.size());
+		queue.clear();
+		delegate.close();
+	}
+
+	@Override
+	public void close() {
+		close(DEFAULT_BLOCK_TIMEOUT_MILLIS * 10);
+	}
+
+	/** Notices handed to the delegate by the sender threads. */
+	public long delivered() {
+		return delivered.get();
+	}
+
+	/** Notices discarded because the queue was full or the notifier was closed. */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/** Notices accepted into the queue. */
+	public long enqueued() {
+		return enqueued.get();
+	}
+
+	/** Notices the delegate threw on; the sender threads keep going. */
+	public long failed() {
+		return failed.get();
+	}
+
+	/**
+	 * Queues the notice for delivery and returns immediately. No status code is
+	 * known at this point, so the result is always 0; use {@link #dropped()} to
+	 * find out whether notices are being shed.
+	 */
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		if (closed || !offer(notice)) {
+			dropped.incrementAndGet();
+		} else {
+			enqueued.incrementAndGet();
+		}
+		return 0;
+	}
+
+	private boolean offer(final HoptoadNotice notice) {
+		switch (overflowPolicy) {
+		case DROP_OLDEST:
+			while (!queue.offer(notice)) {
+				if (queue.poll() != null) dropped.incrementAndGet();
+			}
+			return true;
+		case BLOCK:
+			try {
+				return queue.offer(notice, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		default:
+			return queue.offer(notice);
+		}
+	}
+
+	public OverflowPolicy overflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/** Notices waiting for a sender thread. */
+	public int queueDepth() {
+		return queue.size();
+	}
+
+	private class Sender implements Runnable {
+		public void run() {
+			while (!closed || !queue.isEmpty()) {
+				final HoptoadNotice notice;
+				try {
+					notice = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				if (notice == null) continue;
+
+				try {
+					delegate.notify(notice);
+					delivered.incrementAndGet();
+				} catch (final RuntimeException e) {
+					failed.incrementAndGet();
+				}
+			}
+		}
+	}
+}
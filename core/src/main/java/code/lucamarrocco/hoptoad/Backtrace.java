@@ -0,0 +1,401 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * The lines of a backtrace that are not matched by an ignore rule. A backtrace
+ * captured from a throwable keeps the stack trace elements and filters them
+ * the first time its lines are read. Each frame is formatted as text and XML
+ * and matched against the rules once, and then taken from a {@link FrameCache}
+ * shared by the backtraces of the same class and rules, so only the rule made
+ * from the exception message is matched again for every notice; this requires
+ * {@link #appendBacktrace(StringBuilder, String, String, int, String)} to
+ * depend on nothing but its arguments. {@link #lines()} gives the class,
+ * method, file and line of kept frames without going through the text.
+ * <p>
+ * As in {@link Throwable#printStackTrace()}, the frames a cause shares with
+ * the trace enclosing it are left out and stand as one "... N more" line.
+ */
+public class Backtrace implements Iterable<String> {
+
+	private static final ConcurrentMap<Class<?>, Boolean> overridingToBacktrace = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private final List<String> backtrace = new LinkedList<String>();
+
+	private final List<String> ignoreRules = new LinkedList<String>();
+
+	private final List<Frame> filteredBacktrace = new ArrayList<Frame>();
+
+	private IgnoreRules compiledIgnoreRules;
+
+	private Throwable throwable;
+
+	private String messageRule;
+
+	private boolean filtered;
+
+	protected Backtrace() {}
+
+	public Backtrace(final List<String> backtrace) {
+		this.backtrace.addAll(backtrace);
+		ignore();
+	}
+
+	public Backtrace(final Throwable throwable) {
+		this.throwable = throwable;
+		this.messageRule = ".*" + Pattern.quote(messageIn(throwable)) + ".*";
+		ignore(messageRule);
+		ignore();
+	}
+
+	/**
+	 * Formats a frame as a backtrace line; this is the text ignore rules are
+	 * matched against. Subclasses override it to change the format.
+	 */
+	protected void appendBacktrace(final StringBuilder out, final String className, final String fileName, final int lineNumber, final String methodName) {
+		out.append("at ").append(className).append('.').append(methodName).append('(').append(fileName).append(':').append(lineNumber).append(')');
+	}
+
+	private void appendBacktrace(final StringBuilder out, final StackTraceElement element) {
+		if (overridesToBacktrace(getClass())) {
+			out.append(toBacktrace(element.getClassName(), element.getFileName(), element.getLineNumber(), element.getMethodName()));
+		} else {
+			appendBacktrace(out, element.getClassName(), element.getFileName(), element.getLineNumber(), element.getMethodName());
+		}
+	}
+
+	private String causedBy(final Throwable throwable) {
+		return "Caused by " + messageIn(throwable);
+	}
+
+	/** Applies the ignore rules; only the first call does any work. */
+	protected synchronized void filter() {
+		if (filtered) return;
+		filtered = true;
+		if (throwable == null) {
+			filter(backtrace);
+		} else {
+			filter(throwable, new StringBuilder(128));
+			throwable = null;
+		}
+	}
+
+	private void filter(final List<String> backtrace) {
+		for (final String string : backtrace) {
+			if (!mustBeIgnored(string)) {
+				filteredBacktrace.add(new Frame(string));
+			}
+		}
+	}
+
+	private void filter(final Throwable throwable, final StringBuilder line) {
+		final List<String> sharedRules = new ArrayList<String>(ignoreRules);
+		sharedRules.remove(messageRule);
+		final FrameCache cache = FrameCache.of(getClass(), sharedRules);
+		final IgnoreRules compiledSharedRules = IgnoreRules.compile(sharedRules);
+		// compiled here rather than through IgnoreRules, whose cache would fill up with one rule per message
+		final Pattern messagePattern = Pattern.compile(messageRule);
+		StackTraceElement[] enclosing = null;
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+			final String causedBy = causedBy(cause);
+			if (!compiledSharedRules.matches(causedBy) && !messagePattern.matcher(causedBy).matches()) {
+				filteredBacktrace.add(new Frame(causedBy));
+			}
+			final StackTraceElement[] trace = cause.getStackTrace();
+			final int inCommon = enclosing == null ? 0 : framesInCommon(trace, enclosing);
+			for (int i = 0; i < trace.length - inCommon; i++) {
+				FrameCache.Rendered frame = cache.get(trace[i]);
+				if (frame == null) {
+					frame = cache.put(render(trace[i], line, compiledSharedRules));
+				}
+				if (!frame.ignored && !messagePattern.matcher(frame.line).matches()) {
+					filteredBacktrace.add(new Frame(frame));
+				}
+			}
+			if (inCommon > 0) {
+				filteredBacktrace.add(new Frame(inCommon));
+			}
+			enclosing = trace;
+		}
+	}
+
+	/** The number of frames at the bottom of {@code trace} that are the same as those of the enclosing trace. */
+	private static int framesInCommon(final StackTraceElement[] trace, final StackTraceElement[] enclosing) {
+		int m = trace.length - 1;
+		int n = enclosing.length - 1;
+		while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+			m--;
+			n--;
+		}
+		return trace.length - 1 - m;
+	}
+
+	protected void ignore() {
+		ignoreEmptyCause();
+	}
+
+	protected void ignore(final String ignoreRule) {
+		ignoreRules.add(ignoreRule);
+		compiledIgnoreRules = null;
+	}
+
+	protected void ignoreCocoon() {
+		ignore(".*org.apache.cocoon.components.expression.*");
+		ignore(".*org.apache.cocoon.template.script.*");
+		ignore(".*org.apache.cocoon.template.instruction.*");
+		ignore(".*org.apache.cocoon.template.JXTemplateGenerator.*");
+		ignore(".*org.apache.cocoon.components.pipeline.AbstractProcessingPipeline.*");
+		ignore(".*org.apache.cocoon.components.treeprocessor.*");
+		ignore(".*org.apache.cocoon.environment.ForwardRedirector.*");
+		ignore(".*org.apache.cocoon.components.flow.AbstractInterpreter.*");
+		ignore(".*org.apache.cocoon.components.flow.javascript.fom.FOM_JavaScriptInterpreter.*");
+		ignore(".*org.apache.cocoon.components.flow.javascript.fom.FOM_Cocoon.*");
+		ignore(".*org.apache.commons.jexl.util.introspection.*");
+		ignore(".*org.apache.commons.jexl.parser.ASTMethod.*");
+		ignore(".*org.apache.commons.jexl.parser.ASTReference.*");
+		ignore(".*org.apache.commons.jexl.ExpressionImpl.*");
+		ignore(".*org.apache.cocoon.template.expression.*");
+		ignore(".*org.apache.cocoon.Cocoon.*");
+		ignore(".*org.apache.cocoon.servlet.*");
+	}
+
+	protected void ignoreEclipse() {
+		ignore(".*org.eclipse.jdt.internal.junit4.runner.*");
+		ignore(".*org.eclipse.jdt.internal.junit.runner.*");
+	}
+
+	private void ignoreEmptyCause() {
+		ignore("^Caused by $");
+	}
+
+	protected void ignoreJunit() {
+		ignore(".*.*org.junit.internal.runners.*");
+	}
+
+	protected void ignoreMortbayJetty() {
+		ignore(".*org.mortbay.jetty.handler.ContextHandlerCollection.*");
+		ignore(".*org.mortbay.jetty.handler.ContextHandler.*");
+		ignore(".*org.mortbay.jetty.handler.HandlerCollection.*");
+		ignore(".*org.mortbay.jetty.handler.HandlerWrapper.*");
+		ignore(".*org.mortbay.jetty.HttpConnection.*");
+		ignore(".*org.mortbay.jetty.HttpParser.*");
+		ignore(".*org.mortbay.jetty.security.SecurityHandler.*");
+		ignore(".*org.mortbay.jetty.Server.*");
+		ignore(".*org.mortbay.jetty.servlet.ServletHandler.*");
+		ignore(".*org.mortbay.jetty.servlet.ServletHolder.*");
+		ignore(".*org.mortbay.jetty.servlet.SessionHandler.*");
+		ignore(".*org.mortbay.jetty.webapp.WebAppContext.*");
+		ignore(".*org.mortbay.io.nio.*");
+		ignore(".*org.mortbay.thread.*");
+	}
+
+	protected void ignoreMozilla() {
+		ignore(".*org.mozilla.javascript.FunctionObject.*");
+		ignore(".*org.mozilla.javascript.ScriptRuntime.*");
+		ignore(".*org.mozilla.javascript.continuations.*");
+		ignore(".*org.mozilla.javascript.ScriptRuntime.*");
+		ignore(".*org.mozilla.javascript.ScriptableObject.*");
+		ignore(".*org.mozilla.javascript.FunctionObject.*");
+	}
+
+	protected void ignoreNoise() {
+		ignore(".*inv1.invoke.*");
+		ignore(".*javax.servlet.http.HttpServlet.*");
+		ignore(".*sun.reflect.*");
+		ignore(".*java.lang.reflect.Method.*");
+	}
+
+	protected void ignoreSpringSecurity() {
+		ignore(".*org.springframework.security.context.HttpSessionContextIntegrationFilter.*");
+		ignore(".*org.springframework.security.intercept.web.FilterSecurityInterceptor.*");
+		ignore(".*org.springframework.security.providers.anonymous.AnonymousProcessingFilter.*");
+		ignore(".*org.springframework.security.ui.AbstractProcessingFilter.*");
+		ignore(".*org.springframework.security.ui.basicauth.BasicProcessingFilter.*");
+		ignore(".*org.springframework.security.ui.ExceptionTranslationFilter.*");
+		ignore(".*org.springframework.security.ui.logout.LogoutFilter.*");
+		ignore(".*org.springframework.security.ui.rememberme.RememberMeProcessingFilter.*");
+		ignore(".*org.springframework.security.ui.SessionFixationProtectionFilter.*");
+		ignore(".*org.springframework.security.ui.SpringSecurityFilter.*");
+		ignore(".*org.springframework.security.util.FilterChainProxy.*");
+		ignore(".*org.springframework.security.wrapper.SecurityContextHolderAwareRequestFilter.*");
+		ignore(".*org.springframework.web.filter.DelegatingFilterProxy.*");
+	}
+
+	public Iterator<String> iterator() {
+		filter();
+		final Iterator<Frame> frames = filteredBacktrace.iterator();
+		return new Iterator<String>() {
+			public boolean hasNext() {
+				return frames.hasNext();
+			}
+
+			public String next() {
+				return frames.next().text();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** The kept lines as they are sent to Hoptoad. */
+	public List<BacktraceLine> lines() {
+		filter();
+		final List<BacktraceLine> lines = new ArrayList<BacktraceLine>(filteredBacktrace.size());
+		for (final Frame frame : filteredBacktrace) {
+			lines.add(frame.line());
+		}
+		return lines;
+	}
+
+	private String messageIn(final Throwable throwable) {
+		String message = throwable.getMessage();
+		if (message == null) {
+			message = throwable.getClass().getName();
+		}
+		return message;
+	}
+
+	// exposed for unit testing
+	List<String> ignoreRules() {
+		return ignoreRules;
+	}
+
+	private boolean mustBeIgnored(final CharSequence string) {
+		if (compiledIgnoreRules == null) {
+			compiledIgnoreRules = IgnoreRules.compile(ignoreRules);
+		}
+		return compiledIgnoreRules.matches(string);
+	}
+
+	public Backtrace newBacktrace(final Throwable throwable) {
+		return new Backtrace(throwable);
+	}
+
+	/** Formats a frame and matches it against {@code rules}; a frame they ignore is not formatted any further. */
+	private FrameCache.Rendered render(final StackTraceElement element, final StringBuilder out, final IgnoreRules rules) {
+		out.setLength(0);
+		appendBacktrace(out, element);
+		final String line = out.toString();
+		if (rules.matches(line)) return new FrameCache.Rendered(element, line, null, null, true);
+
+		final XmlWriter xml = new XmlWriter(128);
+		try {
+			BacktraceLine.writeXml(xml, element.getClassName(), element.getFileName(), element.getLineNumber(), element.getMethodName());
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new FrameCache.Rendered(element, line, valid(line), xml.toByteArray(), false);
+	}
+
+	/** Whether {@code type} formats frames by overriding {@link #toBacktrace(String, String, int, String)}, as subclasses did before {@link #appendBacktrace(StringBuilder, String, String, int, String)}. */
+	private static boolean overridesToBacktrace(final Class<?> type) {
+		Boolean overrides = overridingToBacktrace.get(type);
+		if (overrides == null) {
+			overrides = Boolean.FALSE;
+			for (Class<?> declaring = type; declaring != Backtrace.class; declaring = declaring.getSuperclass()) {
+				try {
+					declaring.getDeclaredMethod("toBacktrace", String.class, String.class, int.class, String.class);
+					overrides = Boolean.TRUE;
+					break;
+				} catch (final NoSuchMethodException e) {
+					// not overridden at this level
+				}
+			}
+			overridingToBacktrace.put(type, overrides);
+		}
+		return overrides;
+	}
+
+	private String removeDobuleDot(final String string) {
+		return string.replaceAll(":", "");
+	}
+
+	/**
+	 * Formats a frame as a backtrace line.
+	 *
+	 * @deprecated override {@link #appendBacktrace(StringBuilder, String, String, int, String)};
+	 *             an override of this method is still used in its place.
+	 */
+	@Deprecated
+	protected String toBacktrace(final String className, final String fileName, final int lineNumber, final String methodName) {
+		final StringBuilder out = new StringBuilder(128);
+		appendBacktrace(out, className, fileName, lineNumber, methodName);
+		return out.toString();
+	}
+
+	/** Writes the kept lines as {@code <line>} elements. */
+	void writeXml(final XmlWriter xml) throws IOException {
+		filter();
+		for (final Frame frame : filteredBacktrace) {
+			frame.writeXml(xml);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder stringBuilder = new StringBuilder();
+		for (final String string : this) {
+			stringBuilder.append(string).append("\n");
+		}
+		return stringBuilder.toString();
+	}
+
+	private String valid(final String string) {
+		return ValidBacktrace.matches(string) ? string : removeDobuleDot(string);
+	}
+
+	/** A kept line: either text, or a stack trace element formatted by {@link #render}. */
+	private class Frame {
+		private final FrameCache.Rendered rendered;
+
+		private final String text;
+
+		private BacktraceLine line;
+
+		Frame(final FrameCache.Rendered rendered) {
+			this.rendered = rendered;
+			this.text = rendered.text;
+		}
+
+		Frame(final String text) {
+			this.rendered = null;
+			this.text = valid(text);
+		}
+
+		/** The line standing for frames left out because the enclosing trace has them. */
+		Frame(final int inCommon) {
+			this.rendered = null;
+			this.line = BacktraceLine.more(inCommon);
+			this.text = line.toString();
+		}
+
+		BacktraceLine line() {
+			if (line == null) {
+				final StackTraceElement element = rendered == null ? null : rendered.element;
+				line = element == null ? new BacktraceLine(text) : new BacktraceLine(element.getClassName(), element.getFileName(), element.getLineNumber(), element.getMethodName());
+			}
+			return line;
+		}
+
+		String text() {
+			return text;
+		}
+
+		void writeXml(final XmlWriter xml) throws IOException {
+			if (rendered == null) {
+				line().writeXml(xml);
+			} else {
+				xml.raw(rendered.xml);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.IOException;
+
+public class BacktraceLine {
+
+	private static final byte[] LINE_METHOD = XmlWriter.ascii("<line method=\"");
+
+	private static final byte[] FILE = XmlWriter.ascii("\" file=\"");
+
+	private static final byte[] NUMBER = XmlWriter.ascii("\" number=\"");
+
+	private static final byte[] LINE_END = XmlWriter.ascii("\"/>");
+
+	private static final byte[] DOT = XmlWriter.ascii(".");
+
+	private final String className;
+
+	private final String fileName;
+
+	private final int lineNumber;
+
+	private final String methodName;
+
+	public BacktraceLine(String line) {
+		String classAndMethodName = line.replaceAll("\\(.*", "").replaceAll("^at ", "");
+
+        int periodSepIndex = classAndMethodName.lastIndexOf(".");
+        if(periodSepIndex > 0) {
+    		className = classAndMethodName.substring(0, classAndMethodName.lastIndexOf("."));
+        }
+        else {
+            className = classAndMethodName;
+        }
+		fileName = line.replaceAll("^.*\\(", "").replaceAll(":.*", "");
+		lineNumber = lineNumber(line);
+		methodName =  classAndMethodName.substring(classAndMethodName.lastIndexOf(".") + 1);
+	}
+
+	public BacktraceLine(String className, String fileName, int lineNumber, String methodName) {
+		this.className = className;
+		this.fileName = fileName;
+		this.lineNumber = lineNumber;
+		this.methodName = methodName;
+	}
+
+	/** A line that only says something about other lines; it has no class, file or line number. */
+	private static BacktraceLine marker(final String text) {
+		return new BacktraceLine(null, "", -1, text);
+	}
+
+	/** The "... N more" line for frames a cause shares with its enclosing trace. */
+	static BacktraceLine more(final int frames) {
+		return marker("... " + frames + " more");
+	}
+
+	/** The line standing for frames cut to keep a notice within its size limit. */
+	static BacktraceLine omitted(final int frames) {
+		return marker("... " + frames + " frames omitted");
+	}
+
+	// exposed for unit testing
+	String className() {
+		return className;
+	}
+
+	String fileName() {
+		return fileName;
+	}
+
+	int lineNumber() {
+		return lineNumber;
+	}
+
+	private int lineNumber(String line) {
+		try {
+			return Integer.parseInt(line.replaceAll("^.*:", "").replaceAll("\\)", ""));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public String methodName() {
+		return methodName;
+	}
+
+	private String toBacktrace(final String className, final String fileName, final int lineNumber, final String methodName) {
+		return new StringBuilder(128).append("at ").append(className).append('.').append(methodName).append('(').append(fileName).append(':').append(lineNumber).append(')').toString();
+	}
+
+	@Override
+	public String toString() {
+		if (className == null) return methodName;
+		return toBacktrace(className, fileName, lineNumber, methodName);
+	}
+
+	public String toXml() {
+		final XmlWriter xml = new XmlWriter(128);
+		try {
+			writeXml(xml);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return xml.toString();
+	}
+
+	/** The number of bytes {@link #writeXml(XmlWriter)} writes. */
+	int xmlLength() {
+		final int classLength = className == null ? 0 : XmlWriter.escapedLength(className) + DOT.length;
+		return LINE_METHOD.length + classLength + XmlWriter.escapedLength(methodName) + FILE.length + XmlWriter.escapedLength(fileName) + NUMBER.length + XmlWriter.numberLength(lineNumber) + LINE_END.length;
+	}
+
+	void writeXml(XmlWriter xml) throws IOException {
+		writeXml(xml, className, fileName, lineNumber, methodName);
+	}
+
+	/** Writes a {@code <line>} element without creating a line first. */
+	static void writeXml(XmlWriter xml, String className, String fileName, int lineNumber, String methodName) throws IOException {
+		xml.raw(LINE_METHOD);
+		if (className != null) xml.escaped(className).raw(DOT);
+		xml.escaped(methodName);
+		xml.raw(FILE).escaped(fileName);
+		xml.raw(NUMBER).number(lineNumber).raw(LINE_END);
+	}
+}
\ No newline at end of file
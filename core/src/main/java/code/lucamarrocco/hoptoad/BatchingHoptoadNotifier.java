@@ -0,0 +1,267 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Collects serialized notices and flushes them when a number of notices, a
+ * number of bytes or a delay is reached, whichever comes first. A flush goes
+ * out as pipelined posts over one connection, or, when a batch url is set, as
+ * a single {@code <notices>} document holding every notice of the batch.
+ * Notices handed over with a {@link Deadline} keep it while they wait; those
+ * past it at the flush are dropped, and the batch is posted with the earliest
+ * deadline of the rest.
+ */
+public class BatchingHoptoadNotifier extends HoptoadNotifier {
+
+	public static final int DEFAULT_MAX_NOTICES = 50;
+
+	public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+	private static final byte[] NOTICES_START = bytes("<?xml version=\"1.0\"?><notices>");
+
+	private static final byte[] NOTICES_END = bytes("</notices>");
+
+	private final HoptoadNotifier delegate;
+
+	private final int maxNotices;
+
+	private final int maxBytes;
+
+	private final long maxDelayMillis;
+
+	private final URL batchUrl;
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "hoptoad-batch-flusher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final AtomicLong flushes = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong expired = new AtomicLong();
+
+	private List<Pending> batch = new ArrayList<Pending>();
+
+	private int batchBytes;
+
+	private ScheduledFuture<?> scheduledFlush;
+
+	public BatchingHoptoadNotifier(final HoptoadNotifier delegate) {
+		this(delegate, DEFAULT_MAX_NOTICES, DEFAULT_MAX_BYTES, DEFAULT_MAX_DELAY_MILLIS, null);
+	}
+
+	/**
+	 * @param batchUrl endpoint that accepts a multi-notice document, or null to
+	 *            pipeline the notices to the delegate's notices url
+	 */
+	public BatchingHoptoadNotifier(final HoptoadNotifier delegate, final int maxNotices, final int maxBytes, final long maxDelayMillis, final String batchUrl) {
+		if (maxNotices < 1) throw new IllegalArgumentException("maxNotices must be positive: " + maxNotices);
+
+		this.delegate = delegate;
+		this.maxNotices = maxNotices;
+		this.maxBytes = maxBytes;
+		this.maxDelayMillis = maxDelayMillis;
+		try {
+			this.batchUrl = batchUrl == null ? null : new URL(batchUrl);
+		} catch (final MalformedURLException e) {
+			throw new IllegalArgumentException("not a valid batch url: " + batchUrl, e);
+		}
+	}
+
+	private static byte[] bytes(final String string) {
+		try {
+			return string.getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Flushes what is pending and waits for it to be posted before closing the delegate. */
+	@Override
+	public void close() {
+		flush();
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(DEFAULT_MAX_DELAY_MILLIS * 10, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		delegate.close();
+	}
+
+	/** Notices dropped at a flush because they were past their deadline. */
+	public long expired() {
+		return expired.get();
+	}
+
+	/** Notices whose post did not come back with a 2xx status. */
+	public long failed() {
+		return failed.get();
+	}
+
+	/** Hands the pending batch to the flusher thread. */
+	public void flush() {
+		final List<Pending> full;
+		synchronized (this) {
+			full = takeBatch();
+		}
+		if (full != null) submit(full);
+	}
+
+	/** Batches flushed so far. */
+	public long flushes() {
+		return flushes.get();
+	}
+
+	/**
+	 * Serializes the notice on the calling thread and adds it to the pending
+	 * batch; posting always happens on the flusher thread. Returns 0 as no status
+	 * code is known yet.
+	 */
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		final byte[] xml;
+		try {
+			xml = delegate.toXml(notice);
+		} catch (final IOException e) {
+			failed.incrementAndGet();
+			return 0;
+		}
+
+		List<Pending> full = null;
+		synchronized (this) {
+			batch.add(new Pending(xml, Deadline.current()));
+			batchBytes += xml.length;
+			if (batch.size() >= maxNotices || batchBytes >= maxBytes) {
+				full = takeBatch();
+			} else if (scheduledFlush == null) {
+				scheduledFlush = flusher.schedule(new Runnable() {
+					public void run() {
+						flush();
+					}
+				}, maxDelayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full != null) submit(full);
+		return 0;
+	}
+
+	/** Notices waiting for the next flush. */
+	public synchronized int pending() {
+		return batch.size();
+	}
+
+	private void post(final List<Pending> pending) {
+		final long now = System.currentTimeMillis();
+		final List<byte[]> notices = new ArrayList<byte[]>(pending.size());
+		long deliverBy = Deadline.NONE;
+		for (final Pending notice : pending) {
+			if (Deadline.passed(notice.deliverBy, now)) {
+				expired.incrementAndGet();
+			} else {
+				notices.add(notice.xml);
+				deliverBy = Math.min(deliverBy, notice.deliverBy);
+			}
+		}
+		if (notices.isEmpty()) return;
+
+		flushes.incrementAndGet();
+		final long previous = Deadline.set(deliverBy);
+		try {
+			if (batchUrl == null) {
+				for (final int statusCode : delegate.transport().post(delegate.url(), notices)) {
+					if (statusCode / 100 != 2) failed.incrementAndGet();
+				}
+			} else {
+				if (delegate.transport().post(batchUrl, toBatchXml(notices)) / 100 != 2) failed.addAndGet(notices.size());
+			}
+		} catch (final PartialPostException e) {
+			for (final int statusCode : e.statusCodes()) {
+				if (statusCode / 100 != 2) failed.incrementAndGet();
+			}
+		} catch (final IOException e) {
+			failed.addAndGet(notices.size());
+		} finally {
+			Deadline.set(previous);
+		}
+	}
+
+	private void submit(final List<Pending> notices) {
+		try {
+			flusher.execute(new Runnable() {
+				public void run() {
+					post(notices);
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			post(notices);
+		}
+	}
+
+	private List<Pending> takeBatch() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		if (batch.isEmpty()) return null;
+
+		final List<Pending> full = batch;
+		batch = new ArrayList<Pending>();
+		batchBytes = 0;
+		return full;
+	}
+
+	/** Wraps the notices, minus their xml declarations, in one {@code <notices>} document. */
+	byte[] toBatchXml(final List<byte[]> notices) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(NOTICES_START.length + batchBytes(notices) + NOTICES_END.length);
+		out.write(NOTICES_START, 0, NOTICES_START.length);
+		for (final byte[] notice : notices) {
+			final int start = withoutDeclaration(notice);
+			out.write(notice, start, notice.length - start);
+		}
+		out.write(NOTICES_END, 0, NOTICES_END.length);
+		return out.toByteArray();
+	}
+
+	private int batchBytes(final List<byte[]> notices) {
+		int bytes = 0;
+		for (final byte[] notice : notices) {
+			bytes += notice.length;
+		}
+		return bytes;
+	}
+
+	private int withoutDeclaration(final byte[] notice) {
+		if (notice.length < 5 || notice[0] != '<' || notice[1] != '?') return 0;
+		for (int i = 2; i + 1 < notice.length; i++) {
+			if (notice[i] == '?' && notice[i + 1] == '>') return i + 2;
+		}
+		return 0;
+	}
+
+	private static class Pending {
+		final byte[] xml;
+
+		final long deliverBy;
+
+		Pending(final byte[] xml, final long deliverBy) {
+			this.xml = xml;
+			this.deliverBy = deliverBy;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+
+/**
+ * Writes an HTTP/1.1 chunked body through a fixed buffer. {@link #close()}
+ * writes the last chunk but leaves the connection open for the next request.
+ */
+class ChunkedOutputStream extends OutputStream {
+
+	static final int CHUNK_SIZE = 4096;
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+	private final OutputStream out;
+
+	private final byte[] buffer = new byte[CHUNK_SIZE];
+
+	private int count;
+
+	private boolean closed;
+
+	ChunkedOutputStream(final OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		writeChunk();
+		out.write(LAST_CHUNK);
+		out.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeChunk();
+		out.flush();
+	}
+
+	@Override
+	public void write(final byte[] bytes, int offset, int length) throws IOException {
+		if (closed) throw new IOException("chunked body already closed");
+		while (length > 0) {
+			if (count == buffer.length) writeChunk();
+			final int n = Math.min(length, buffer.length - count);
+			System.arraycopy(bytes, offset, buffer, count, n);
+			count += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (closed) throw new IOException("chunked body already closed");
+		if (count == buffer.length) writeChunk();
+		buffer[count++] = (byte) b;
+	}
+
+	private void writeChunk() throws IOException {
+		if (count == 0) return;
+		out.write(Integer.toHexString(count).getBytes("US-ASCII"));
+		out.write(CRLF);
+		out.write(buffer, 0, count);
+		out.write(CRLF);
+		count = 0;
+	}
+}
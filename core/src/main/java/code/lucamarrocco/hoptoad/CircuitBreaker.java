@@ -0,0 +1,86 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Stops posting to a collector that keeps failing. After
+ * {@code failureThreshold} failures in a row the breaker opens and every
+ * request is refused on the spot; once {@code resetMillis} have passed a
+ * single request is let through, and its outcome closes the breaker or opens
+ * it for another period. The state is two atomics, so refusing costs a read
+ * and never a lock.
+ */
+public class CircuitBreaker {
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	public static final long DEFAULT_RESET_MILLIS = 30 * 1000;
+
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	private static final long HALF_OPEN = Long.MAX_VALUE;
+
+	private final int failureThreshold;
+
+	private final long resetMillis;
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/** {@link #CLOSED}, {@link #HALF_OPEN} or the time the breaker opened. */
+	private final AtomicLong openedAt = new AtomicLong(CLOSED);
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_RESET_MILLIS);
+	}
+
+	public CircuitBreaker(final int failureThreshold, final long resetMillis) {
+		if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+		if (resetMillis < 1) throw new IllegalArgumentException("resetMillis must be positive: " + resetMillis);
+
+		this.failureThreshold = failureThreshold;
+		this.resetMillis = resetMillis;
+	}
+
+	/** Whether a request may go out now; false while open, and for everyone but the trial request while half open. */
+	public boolean allowRequest() {
+		return allowRequest(System.currentTimeMillis());
+	}
+
+	boolean allowRequest(final long now) {
+		final long state = openedAt.get();
+		if (state == CLOSED) return true;
+		if (state != HALF_OPEN && now - state >= resetMillis && openedAt.compareAndSet(state, HALF_OPEN)) return true;
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	public boolean isOpen() {
+		return openedAt.get() != CLOSED;
+	}
+
+	public void onFailure() {
+		onFailure(System.currentTimeMillis());
+	}
+
+	void onFailure(final long now) {
+		if (failures.incrementAndGet() >= failureThreshold || openedAt.get() == HALF_OPEN) {
+			openedAt.set(now);
+		}
+	}
+
+	public void onSuccess() {
+		failures.set(0);
+		openedAt.set(CLOSED);
+	}
+
+	/** Requests refused while the breaker was open. */
+	public long rejected() {
+		return rejected.get();
+	}
+}
@@ -0,0 +1,17 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+
+/** Thrown instead of posting while a {@link CircuitBreaker} is open. */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(final String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,40 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * The time by which whatever is being posted on the current thread has to be
+ * delivered. {@link DeadlineHoptoadNotifier} sets it while it hands a notice
+ * on; the stages that hold notices back keep it with them and set it again
+ * when they post, and {@link RetryingTransport} does not retry past it.
+ */
+class Deadline {
+
+	static final long NONE = Long.MAX_VALUE;
+
+	private static final ThreadLocal<Long> CURRENT = new ThreadLocal<Long>();
+
+	/** The deadline of the current thread, in milliseconds since the epoch, or {@link #NONE}. */
+	static long current() {
+		final Long deliverBy = CURRENT.get();
+		return deliverBy == null ? NONE : deliverBy;
+	}
+
+	/** Whether {@code deliverBy} has passed at {@code now}. */
+	static boolean passed(final long deliverBy, final long now) {
+		return now > deliverBy;
+	}
+
+	/** Sets the deadline of the current thread and returns the one it replaces, to be set back afterwards. */
+	static long set(final long deliverBy) {
+		final long previous = current();
+		if (deliverBy == NONE) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(deliverBy);
+		}
+		return previous;
+	}
+}
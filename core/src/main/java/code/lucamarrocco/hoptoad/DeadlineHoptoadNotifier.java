@@ -0,0 +1,60 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Drops notices that are older than the deadline by the time they reach it,
+ * instead of delivering them late. Placed in front of the stages that
+ * serialize and post, it catches the time spent waiting in queues, and hands
+ * the deadline on to them: a {@link RetryingTransport} does not retry past
+ * it, and batched or spooled notices that outlive it while held back are
+ * dropped when they are flushed or replayed. A single post is bounded by the
+ * transport's connect and read timeouts.
+ */
+public class DeadlineHoptoadNotifier extends HoptoadNotifier {
+
+	private final HoptoadNotifier delegate;
+
+	private final long deadlineMillis;
+
+	private final AtomicLong expired = new AtomicLong();
+
+	public DeadlineHoptoadNotifier(final HoptoadNotifier delegate, final long deadlineMillis) {
+		if (deadlineMillis < 1) throw new IllegalArgumentException("deadlineMillis must be positive: " + deadlineMillis);
+
+		this.delegate = delegate;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	/** Notices dropped because they were past the deadline. */
+	public long expired() {
+		return expired.get();
+	}
+
+	boolean isExpired(final HoptoadNotice notice, final long now) {
+		return now - notice.createdAt() > deadlineMillis;
+	}
+
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		if (isExpired(notice, System.currentTimeMillis())) {
+			expired.incrementAndGet();
+			return 0;
+		}
+		final long previous = Deadline.set(notice.createdAt() + deadlineMillis);
+		try {
+			return delegate.notify(notice);
+		} finally {
+			Deadline.set(previous);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Sends the first notice of every {@link Fingerprint} and, for the rest of a
+ * time window, only counts further notices with the same fingerprint. The
+ * count goes out as the {@value #OCCURRENCES} annotation, either on the first
+ * notice after the window or, if none comes, on the last counted notice when
+ * the window is flushed.
+ * <p>
+ * Fingerprints live in a {@link ConcurrentHashMap} bounded by
+ * {@code maxFingerprints}. Counting a duplicate is one lookup and one atomic
+ * increment; entries leave the table when their window expires, or, when the
+ * table is full, the least recently seen of a small sample is evicted.
+ */
+public class DeduplicatingHoptoadNotifier extends HoptoadNotifier {
+
+	public static final String OCCURRENCES = "hoptoad.occurrences";
+
+	public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000;
+
+	public static final int DEFAULT_MAX_FINGERPRINTS = 1000;
+
+	private static final int EVICTION_SAMPLE = 16;
+
+	private final HoptoadNotifier delegate;
+
+	private final long windowMillis;
+
+	private final int frames;
+
+	private final int maxFingerprints;
+
+	private final ConcurrentMap<Long, Window> windows = new ConcurrentHashMap<Long, Window>();
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "hoptoad-dedup-flusher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final AtomicLong suppressed = new AtomicLong();
+
+	public DeduplicatingHoptoadNotifier(final HoptoadNotifier delegate) {
+		this(delegate, DEFAULT_WINDOW_MILLIS, Fingerprint.DEFAULT_FRAMES, DEFAULT_MAX_FINGERPRINTS);
+	}
+
+	public DeduplicatingHoptoadNotifier(final HoptoadNotifier delegate, final long windowMillis, final int frames, final int maxFingerprints) {
+		if (windowMillis < 1) throw new IllegalArgumentException("windowMillis must be positive: " + windowMillis);
+		if (maxFingerprints < 1) throw new IllegalArgumentException("maxFingerprints must be positive: " + maxFingerprints);
+
+		this.delegate = delegate;
+		this.windowMillis = windowMillis;
+		this.frames = frames;
+		this.maxFingerprints = maxFingerprints;
+
+		final long period = Math.max(windowMillis / 2, 10);
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				flushExpired(System.currentTimeMillis());
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sends the counts of every open window before closing the delegate. */
+	@Override
+	public void close() {
+		flusher.shutdownNow();
+		for (final Map.Entry<Long, Window> entry : windows.entrySet()) {
+			expire(entry.getKey(), entry.getValue());
+		}
+		delegate.close();
+	}
+
+	private void evict() {
+		Long oldestKey = null;
+		Window oldest = null;
+		int sampled = 0;
+		for (final Map.Entry<Long, Window> entry : windows.entrySet()) {
+			if (oldest == null || entry.getValue().lastSeen < oldest.lastSeen) {
+				oldestKey = entry.getKey();
+				oldest = entry.getValue();
+			}
+			if (++sampled == EVICTION_SAMPLE) break;
+		}
+		if (oldest != null) expire(oldestKey, oldest);
+	}
+
+	/** Closes the window, sending its count if notices were suppressed in it. */
+	private void expire(final Long fingerprint, final Window window) {
+		final long count = window.close();
+		windows.remove(fingerprint, window);
+		if (count > 0) delegate.notify(window.last.annotate(OCCURRENCES, count));
+	}
+
+	/** Fingerprints currently inside their window. */
+	public int fingerprints() {
+		return windows.size();
+	}
+
+	void flushExpired(final long now) {
+		for (final Map.Entry<Long, Window> entry : windows.entrySet()) {
+			if (now - entry.getValue().start >= windowMillis) {
+				expire(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Passes the notice on if its fingerprint was not seen within the window,
+	 * otherwise counts it and returns 0.
+	 */
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		final Long fingerprint = Fingerprint.of(notice, frames);
+		final long now = System.currentTimeMillis();
+		while (true) {
+			final Window window = windows.get(fingerprint);
+			if (window == null) {
+				if (windows.size() >= maxFingerprints) evict();
+				if (windows.putIfAbsent(fingerprint, new Window(now, notice)) == null) return delegate.notify(notice);
+			} else if (now - window.start >= windowMillis) {
+				final long carried = window.close();
+				if (carried >= 0) {
+					windows.remove(fingerprint, window);
+					if (windows.putIfAbsent(fingerprint, new Window(now, notice)) == null) {
+						if (carried > 0) notice.annotate(OCCURRENCES, carried + 1);
+						return delegate.notify(notice);
+					}
+					if (carried > 0) delegate.notify(window.last.annotate(OCCURRENCES, carried));
+				}
+			} else if (window.count(notice, now)) {
+				suppressed.incrementAndGet();
+				return 0;
+			}
+		}
+	}
+
+	/** Notices that were only counted, not sent on their own. */
+	public long suppressed() {
+		return suppressed.get();
+	}
+
+	/**
+	 * Duplicates seen since a fingerprint's first notice. Closing swaps the count
+	 * for a negative value, so exactly one thread takes it and later increments
+	 * see the window is gone.
+	 */
+	private static class Window {
+		private static final long CLOSED = Long.MIN_VALUE;
+
+		final long start;
+
+		final AtomicLong count = new AtomicLong();
+
+		volatile long lastSeen;
+
+		volatile HoptoadNotice last;
+
+		Window(final long start, final HoptoadNotice first) {
+			this.start = start;
+			this.lastSeen = start;
+			this.last = first;
+		}
+
+		/** The count of duplicates, or a negative value if already closed. */
+		long close() {
+			final long taken = count.getAndSet(CLOSED);
+			return taken < 0 ? -1 : taken;
+		}
+
+		boolean count(final HoptoadNotice notice, final long now) {
+			if (count.incrementAndGet() < 0) return false;
+			last = notice;
+			lastSeen = now;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Rejects errors by class. An error is rejected when its class, one of its
+ * superclasses or one of the interfaces they implement is denied, and, when
+ * any class is allowed, unless one of them is allowed. The answer is worked
+ * out once per class of throwable and kept, so afterwards deciding on an
+ * error is a single lookup.
+ */
+public class ErrorClassFilter implements ErrorFilter {
+
+	private static final int CACHE_LIMIT = 1024;
+
+	private final Set<String> allowed;
+
+	private final Set<String> denied;
+
+	private final ConcurrentMap<Class<?>, Boolean> decisions = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	public ErrorClassFilter(final Collection<String> allowed, final Collection<String> denied) {
+		this.allowed = new HashSet<String>(allowed);
+		this.denied = new HashSet<String>(denied);
+	}
+
+	public boolean accept(final String logger, final Throwable throwable) {
+		final Class<?> type = throwable.getClass();
+		Boolean accepted = decisions.get(type);
+		if (accepted == null) {
+			accepted = decide(type);
+			if (decisions.size() >= CACHE_LIMIT) decisions.clear();
+			decisions.put(type, accepted);
+		}
+		return accepted;
+	}
+
+	private Boolean decide(final Class<?> type) {
+		final Set<String> hierarchy = new HashSet<String>();
+		for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+			hierarchy.add(superclass.getName());
+			addInterfaces(superclass, hierarchy);
+		}
+		if (!Collections.disjoint(hierarchy, denied)) return Boolean.FALSE;
+		return allowed.isEmpty() || !Collections.disjoint(hierarchy, allowed);
+	}
+
+	private static void addInterfaces(final Class<?> type, final Set<String> hierarchy) {
+		for (final Class<?> implemented : type.getInterfaces()) {
+			if (hierarchy.add(implemented.getName())) addInterfaces(implemented, hierarchy);
+		}
+	}
+}
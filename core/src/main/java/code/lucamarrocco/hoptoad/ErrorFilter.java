@@ -0,0 +1,18 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * Decides on an error from what the logging call already has, the name of
+ * the logger and the throwable, before the appender captures anything of it:
+ * no MDC is copied, no backtrace is filtered and no notice is built for an
+ * error a filter rejects. Filters run on the logging thread, so they should
+ * cost no more than a lookup or two.
+ */
+public interface ErrorFilter {
+
+	/** Whether the error {@code throwable}, logged by {@code logger}, is to be notified. */
+	boolean accept(String logger, Throwable throwable);
+}
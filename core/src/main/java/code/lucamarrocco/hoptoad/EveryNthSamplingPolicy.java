@@ -0,0 +1,44 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * Keeps the first {@code first} errors of every error class in a window, then
+ * one in every {@code n}, with a weight of {@code n}. Only the class of the
+ * throwable is looked at, so sampling an error out does not even fill in
+ * its stack trace.
+ */
+public class EveryNthSamplingPolicy extends WindowedSamplingPolicy {
+
+	public static final int DEFAULT_FIRST = 10;
+
+	private final int first;
+
+	private final int n;
+
+	public EveryNthSamplingPolicy(final int first, final int n) {
+		this(first, n, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_KEYS);
+	}
+
+	public EveryNthSamplingPolicy(final int first, final int n, final long windowMillis, final int maxKeys) {
+		super(windowMillis, maxKeys);
+		if (first < 0) throw new IllegalArgumentException("first must not be negative: " + first);
+		if (n < 1) throw new IllegalArgumentException("n must be positive: " + n);
+
+		this.first = first;
+		this.n = n;
+	}
+
+	@Override
+	protected Object key(final Throwable throwable) {
+		return throwable.getClass().getName();
+	}
+
+	@Override
+	protected double weigh(final long seen) {
+		if (seen <= first) return 1;
+		return (seen - first) % n == 0 ? n : 0;
+	}
+}
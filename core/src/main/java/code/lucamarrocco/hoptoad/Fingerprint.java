@@ -0,0 +1,96 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * Identifies notices raised by the same bug: a 64-bit FNV-1a hash of the error
+ * class and the first frames of the backtrace. Messages and "Caused by" lines
+ * are left out, as they usually carry ids or values that differ between
+ * occurrences, and so are the generated parts of class names, such as
+ * {@code $$EnhancerByCGLIB$$1a2b3c}, {@code $$Lambda$14/0x0000000801234} or
+ * {@code GeneratedMethodAccessor12}, which differ between runs of the same
+ * code.
+ */
+public class Fingerprint {
+
+	public static final int DEFAULT_FRAMES = 5;
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fingerprint() {}
+
+	private static long hash(long hash, final CharSequence string) {
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	private static long hash(final long hash, final char c) {
+		return (hash ^ c) * PRIME;
+	}
+
+	public static long of(final HoptoadNotice notice) {
+		return of(notice, DEFAULT_FRAMES);
+	}
+
+	public static long of(final HoptoadNotice notice, final int frames) {
+		long hash = hash(OFFSET_BASIS, String.valueOf(notice.errorClass()));
+		int hashed = 0;
+		for (final String line : notice.backtrace()) {
+			if (hashed == frames) break;
+			if (line.startsWith("Caused by")) continue;
+			hash = hash(hash, '\n');
+			hash = hashNormalized(hash, line);
+			hashed++;
+		}
+		return hash;
+	}
+
+	/**
+	 * The fingerprint of an error that has no notice yet, from the class and
+	 * the first frames of the throwable itself. It differs from the
+	 * fingerprint of the notice, whose frames went through a backtrace.
+	 */
+	public static long of(final Throwable throwable, final int frames) {
+		long hash = hash(OFFSET_BASIS, throwable.getClass().getName());
+		final StackTraceElement[] stackTrace = throwable.getStackTrace();
+		for (int i = 0; i < Math.min(frames, stackTrace.length); i++) {
+			hash = hash(hash, '\n');
+			hash = hashNormalized(hash, stackTrace[i].getClassName());
+			hash = hash(hash, '.');
+			hash = hashNormalized(hash, stackTrace[i].getMethodName());
+			hash = hash(hash, ':');
+			hash = hash(hash, stackTrace[i].getLineNumber());
+		}
+		return hash;
+	}
+
+	private static long hash(final long hash, final int number) {
+		return hash(hash(hash(hash(hash, (char) (number >>> 24)), (char) (number >>> 16 & 0xff)), (char) (number >>> 8 & 0xff)), (char) (number & 0xff));
+	}
+
+	/** Hashes the line, skipping the generated id that follows a generated-name marker. */
+	private static long hashNormalized(long hash, final String line) {
+		boolean generated = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (generated && isGeneratedId(c)) continue;
+			generated = false;
+			hash = hash(hash, c);
+			if (c == '$' && (line.startsWith("$$", i - 1) || line.startsWith("Lambda$", i - 6)) || c == 'y' && line.startsWith("Proxy", i - 4) || c == 'r' && line.startsWith("Accessor", i - 7)) {
+				generated = true;
+			}
+		}
+		return hash;
+	}
+
+	private static boolean isGeneratedId(final char c) {
+		return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c == 'x' || c == '/';
+	}
+}
@@ -0,0 +1,124 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Stack trace elements already formatted as backtrace lines and as XML,
+ * together with whether the ignore rules drop them, so frames that show up in
+ * notice after notice are only formatted and matched once. A cache holds the
+ * frames of one backtrace format and one set of ignore rules; see
+ * {@link #of(Class, List)}.
+ * <p>
+ * The cache is bounded: once it holds more than {@code maxFrames} frames, the
+ * half that were least recently used are evicted. Recency is approximate, as
+ * a hit stamps the frame with the number of frames added so far rather than
+ * advancing a shared clock.
+ */
+class FrameCache {
+
+	static final int DEFAULT_MAX_FRAMES = 4096;
+
+	private static final int MAX_CACHES = 64;
+
+	private static final ConcurrentMap<List<Object>, FrameCache> caches = new ConcurrentHashMap<List<Object>, FrameCache>();
+
+	private final ConcurrentMap<StackTraceElement, Rendered> frames = new ConcurrentHashMap<StackTraceElement, Rendered>();
+
+	private final int maxFrames;
+
+	private final AtomicLong added = new AtomicLong();
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	FrameCache(final int maxFrames) {
+		if (maxFrames < 2) throw new IllegalArgumentException("maxFrames must be at least 2: " + maxFrames);
+		this.maxFrames = maxFrames;
+	}
+
+	/** The cache for backtraces of {@code type} that ignore lines matching {@code ignoreRules}. */
+	static FrameCache of(final Class<?> type, final List<String> ignoreRules) {
+		final List<Object> key = new ArrayList<Object>(ignoreRules.size() + 1);
+		key.add(type);
+		key.addAll(ignoreRules);
+		FrameCache cache = caches.get(key);
+		if (cache == null) {
+			if (caches.size() >= MAX_CACHES) caches.clear();
+			final FrameCache created = new FrameCache(DEFAULT_MAX_FRAMES);
+			cache = caches.putIfAbsent(key, created);
+			if (cache == null) cache = created;
+		}
+		return cache;
+	}
+
+	/** Drops the least recently used half of the frames; only one thread does it at a time. */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) return;
+		try {
+			final List<Rendered> rendered = new ArrayList<Rendered>(frames.values());
+			if (rendered.size() <= maxFrames) return;
+			final long[] used = new long[rendered.size()];
+			for (int i = 0; i < used.length; i++) {
+				used[i] = rendered.get(i).used;
+			}
+			Arrays.sort(used);
+			final long oldestKept = used[used.length - maxFrames / 2];
+			for (final Rendered frame : rendered) {
+				if (frame.used < oldestKept) frames.remove(frame.element, frame);
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	/** The frame as it was formatted before, or null. */
+	Rendered get(final StackTraceElement element) {
+		final Rendered frame = frames.get(element);
+		if (frame != null) {
+			final long now = added.get();
+			if (frame.used != now) frame.used = now;
+		}
+		return frame;
+	}
+
+	/** Adds a newly formatted frame, or returns the one another thread added first. */
+	Rendered put(final Rendered frame) {
+		final Rendered cached = frames.putIfAbsent(frame.element, frame);
+		if (cached != null) return cached;
+		frame.used = added.incrementAndGet();
+		if (frames.size() > maxFrames) evict();
+		return frame;
+	}
+
+	int size() {
+		return frames.size();
+	}
+
+	/** A frame formatted once: the line ignore rules are matched against, its text as iterated, and its {@code <line>} element. */
+	static class Rendered {
+		final StackTraceElement element;
+
+		final String line;
+
+		final String text;
+
+		final byte[] xml;
+
+		final boolean ignored;
+
+		volatile long used;
+
+		Rendered(final StackTraceElement element, final String line, final String text, final byte[] xml, final boolean ignored) {
+			this.element = element;
+			this.line = line;
+			this.text = text;
+			this.xml = xml;
+			this.ignored = ignored;
+		}
+	}
+}
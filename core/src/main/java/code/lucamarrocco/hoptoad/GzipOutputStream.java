@@ -0,0 +1,112 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Writes the gzip format around a {@link Deflater} borrowed from a small
+ * shared pool, instead of {@link GZIPOutputStream}'s new deflater and native
+ * zlib state per notice. The deflater is reset and handed back on
+ * {@link #close()}, which also closes the underlying stream.
+ */
+class GzipOutputStream extends OutputStream {
+
+	private static final int MAX_POOLED = 16;
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private static final BlockingQueue<Compressor> POOL = new ArrayBlockingQueue<Compressor>(MAX_POOLED);
+
+	private final OutputStream out;
+
+	private Compressor compressor;
+
+	GzipOutputStream(final OutputStream out) throws IOException {
+		this.out = out;
+		final Compressor pooled = POOL.poll();
+		this.compressor = pooled != null ? pooled : new Compressor();
+		out.write(HEADER);
+	}
+
+	/** The document gzipped in one go, for transports that send a Content-Length. */
+	static byte[] gzip(final byte[] xml) throws IOException {
+		final ByteArrayOutputStream gzipped = new ByteArrayOutputStream(xml.length / 4 + 64);
+		final GzipOutputStream out = new GzipOutputStream(gzipped);
+		out.write(xml);
+		out.close();
+		return gzipped.toByteArray();
+	}
+
+	private static void writeIntLE(final OutputStream out, final long value) throws IOException {
+		out.write((int) value & 0xff);
+		out.write((int) (value >> 8) & 0xff);
+		out.write((int) (value >> 16) & 0xff);
+		out.write((int) (value >> 24) & 0xff);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (compressor == null) return;
+		final Compressor finished = compressor;
+		compressor = null;
+		try {
+			finished.deflater.finish();
+			while (!finished.deflater.finished()) {
+				deflate(finished);
+			}
+			writeIntLE(out, finished.crc.getValue());
+			writeIntLE(out, finished.deflater.getBytesRead());
+		} finally {
+			finished.reset();
+			if (!POOL.offer(finished)) finished.deflater.end();
+		}
+		out.close();
+	}
+
+	private void deflate(final Compressor compressor) throws IOException {
+		final int length = compressor.deflater.deflate(compressor.buffer, 0, compressor.buffer.length);
+		if (length > 0) out.write(compressor.buffer, 0, length);
+	}
+
+	/** Compressed bytes are written as zlib produces them; flushing does not force out a partial block. */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+		if (compressor == null) throw new IOException("gzip stream already closed");
+		if (length == 0) return;
+		compressor.crc.update(bytes, offset, length);
+		compressor.deflater.setInput(bytes, offset, length);
+		while (!compressor.deflater.needsInput()) {
+			deflate(compressor);
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	private static class Compressor {
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+		final CRC32 crc = new CRC32();
+
+		final byte[] buffer = new byte[BUFFER_SIZE];
+
+		void reset() {
+			deflater.reset();
+			crc.reset();
+		}
+	}
+}
@@ -6,6 +6,7 @@ package code.lucamarrocco.hoptoad;
 
 import static java.util.Arrays.asList;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -22,7 +23,7 @@ public class HoptoadNotice {
 	
 	private String environmentName;
 	
-	private final Map<String, Object> environment = new TreeMap<String, Object>();
+	private final Map<String, Object> environment;
 
 	private Map<String, Object> request = new TreeMap<String, Object>();
 
@@ -35,6 +36,10 @@ public class HoptoadNotice {
   private final String url;
 
   private final String component;
+
+	private final Map<String, Object> annotations = new TreeMap<String, Object>();
+
+	private volatile long createdAt = System.currentTimeMillis();
   
   public HoptoadNotice(final String apiKey, String projectRoot, String environmentName, final String errorMessage, String errorClass, final Backtrace backtrace, final Map<String, Object> request, final Map<String, Object> session, final Map<String, Object> environment, final List<String> environmentFilters, boolean hasRequest, String url, String component) {
 		this.apiKey = apiKey;
@@ -48,9 +53,44 @@ public class HoptoadNotice {
     this.hasRequest = hasRequest;
     this.url = url;
     this.component = component;
+    this.environment = new TreeMap<String, Object>();
     filter(environment, environmentFilters);
 	}
 
+	/** Takes an environment that was filtered already, such as a shared system properties snapshot, as it is. */
+	HoptoadNotice(final String apiKey, String projectRoot, String environmentName, final String errorMessage, String errorClass, final Backtrace backtrace, final Map<String, Object> request, final Map<String, Object> session, final Map<String, Object> filteredEnvironment, boolean hasRequest, String url, String component) {
+		this.apiKey = apiKey;
+		this.projectRoot = projectRoot;
+		this.environmentName = environmentName;
+		this.errorClass = errorClass;
+		this.errorMessage = errorMessage;
+		this.backtrace = backtrace;
+		this.request = request;
+		this.session = session;
+		this.hasRequest = hasRequest;
+		this.url = url;
+		this.component = component;
+		this.environment = filteredEnvironment;
+	}
+
+	/**
+	 * Attaches a value the notifier itself worked out, such as how many times an
+	 * error occurred; annotations are sent along with the cgi-data.
+	 */
+	public HoptoadNotice annotate(final String key, final Object value) {
+		synchronized (annotations) {
+			annotations.put(key, value);
+		}
+		return this;
+	}
+
+	public Map<String, Object> annotations() {
+		synchronized (annotations) {
+			if (annotations.isEmpty()) return Collections.emptyMap();
+			return new TreeMap<String, Object>(annotations);
+		}
+	}
+
 	public String apiKey() {
 		return apiKey;
 	}
@@ -59,6 +99,17 @@ public class HoptoadNotice {
 		return backtrace;
 	}
 
+	/** When the notice was built, or the error it reports occurred, in milliseconds since the epoch. */
+	public long createdAt() {
+		return createdAt;
+	}
+
+	/** Dates the notice from when the error was logged rather than from when it was built. */
+	HoptoadNotice occurredAt(final long millis) {
+		createdAt = millis;
+		return this;
+	}
+
 	public String env() {
 		return environmentName;
 	}
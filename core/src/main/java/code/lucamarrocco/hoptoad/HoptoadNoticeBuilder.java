@@ -43,6 +43,8 @@ public class HoptoadNoticeBuilder {
 
   private String component;
 
+	private SystemPropertiesSnapshot systemProperties;
+
   public HoptoadNoticeBuilder(final String apiKey, final Backtrace backtraceBuilder, final Throwable throwable, final String env) {
 		this(apiKey, throwable.getMessage(), env);
 		this.backtraceBuilder = backtraceBuilder;
@@ -155,13 +157,26 @@ public class HoptoadNoticeBuilder {
         }
 	}
 
+	/**
+	 * The system properties without the standard and EC2 filtered keys. They are
+	 * taken from a snapshot shared between notices rather than copied and
+	 * filtered for each notice.
+	 */
 	protected void filteredSystemProperties() {
-		environment(System.getProperties());
 		standardEnvironmentFilters();
 		ec2EnvironmentFilters();
+		systemProperties = SystemPropertiesSnapshot.of(environmentFilters);
 	}
 
     public HoptoadNotice newNotice() {
+		if (systemProperties == null) {
+			return new HoptoadNotice(apiKey, projectRoot, environmentName, errorMessage, errorClass, backtrace, request, session, environment, environmentFilters, hasRequest, url, component);
+		}
+		if (environment.isEmpty() && systemProperties.isFilteredBy(environmentFilters)) {
+			return new HoptoadNotice(apiKey, projectRoot, environmentName, errorMessage, errorClass, backtrace, request, session, systemProperties.environment(), hasRequest, url, component);
+		}
+		final Map<String, Object> environment = new TreeMap<String, Object>(systemProperties.environment());
+		environment.putAll(this.environment);
 		return new HoptoadNotice(apiKey, projectRoot, environmentName, errorMessage, errorClass, backtrace, request, session, environment, environmentFilters, hasRequest, url, component);
 	}
 
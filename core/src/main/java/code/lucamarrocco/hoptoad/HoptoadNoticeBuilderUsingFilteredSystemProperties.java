@@ -0,0 +1,32 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+public class HoptoadNoticeBuilderUsingFilteredSystemProperties extends HoptoadNoticeBuilder {
+
+  public HoptoadNoticeBuilderUsingFilteredSystemProperties(final String apiKey, final Backtrace backtraceBuilder, final Throwable throwable, final String env) {
+    this(apiKey, backtraceBuilder, throwable, env, null);
+  }
+
+  /**
+   * Puts {@code mdc}, the MDC of the thread that logged the throwable, in the
+   * session; it may be a map or, from a logging framework that keeps its MDC
+   * in a structure of its own, that structure written out as a string.
+   */
+  public HoptoadNoticeBuilderUsingFilteredSystemProperties(final String apiKey, final Backtrace backtraceBuilder, final Throwable throwable, final String env, final Object mdc) {
+    super(apiKey, backtraceBuilder, throwable, env);
+
+    filteredSystemProperties();
+
+    addMDCToSession(mdc);
+  }
+
+private void addMDCToSession(final Object mdc) {
+    if (mdc != null) {
+      addSessionKey(":key", Integer.toString(mdc.hashCode()));
+      addSessionKey(":data", mdc);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+
+public class HoptoadNotifier {
+
+	public static final String NOTICES_URL = "http://hoptoadapp.com/notifier_api/v2/notices";
+
+	private final URL url;
+
+	private final HoptoadTransport transport;
+
+	private final int maxNoticeBytes;
+
+	private final NotifierMetrics metrics;
+
+	public HoptoadNotifier() {
+		this(new HttpURLConnectionTransport());
+	}
+
+	public HoptoadNotifier(final HoptoadTransport transport) {
+		this(NOTICES_URL, transport);
+	}
+
+	public HoptoadNotifier(final String url, final HoptoadTransport transport) {
+		this(url, transport, NoticeApi2.UNBOUNDED);
+	}
+
+	/** Cuts notices down to {@code maxNoticeBytes} as they are written; see {@link NoticeApi2}. */
+	public HoptoadNotifier(final String url, final HoptoadTransport transport, final int maxNoticeBytes) {
+		this(url, transport, maxNoticeBytes, null);
+	}
+
+	/** Counts and times what is serialized and posted, including posts made through {@link #transport()}, in {@code metrics} unless it is null. */
+	public HoptoadNotifier(final String url, final HoptoadTransport transport, final int maxNoticeBytes, final NotifierMetrics metrics) {
+		try {
+			this.url = new URL(url);
+		} catch (final MalformedURLException e) {
+			throw new IllegalArgumentException("not a valid notices url: " + url, e);
+		}
+		this.transport = metrics == null ? transport : new MeteredTransport(transport, metrics);
+		this.maxNoticeBytes = NoticeApi2.checkMaxBytes(maxNoticeBytes);
+		this.metrics = metrics;
+	}
+
+	/** Releases whatever the transport holds on to. */
+	public void close() {
+		transport.close();
+	}
+
+	private void err(final HoptoadNotice notice, final Exception e) {
+		System.out.println(notice.toString());
+		e.printStackTrace();
+	}
+
+	public int notify(final HoptoadNotice notice) {
+		try {
+			return transport.post(url, new HoptoadTransport.Body() {
+				public void writeTo(final OutputStream out) throws IOException {
+					final long start = System.nanoTime();
+					new NoticeApi2(notice, out, maxNoticeBytes);
+					if (metrics != null) metrics.serialized(System.nanoTime() - start);
+				}
+			});
+		} catch (final CircuitOpenException e) {
+			// the collector is known to be down; say nothing until it is back
+		} catch (final Exception e) {
+			err(notice, e);
+		}
+		return 0;
+	}
+
+	/** The notice as the UTF-8 document that is posted to Hoptoad. */
+	public byte[] toXml(final HoptoadNotice notice) throws IOException {
+		final long start = System.nanoTime();
+		final byte[] xml = new NoticeApi2(notice, maxNoticeBytes).toByteArray();
+		if (metrics != null) metrics.serialized(System.nanoTime() - start);
+		return xml;
+	}
+
+	/** The size notices are cut down to, or {@link NoticeApi2#UNBOUNDED}. */
+	public int maxNoticeBytes() {
+		return maxNoticeBytes;
+	}
+
+	/** The metrics sends are counted in, or null. */
+	public NotifierMetrics metrics() {
+		return metrics;
+	}
+
+	public HoptoadTransport transport() {
+		return transport;
+	}
+
+	public URL url() {
+		return url;
+	}
+}
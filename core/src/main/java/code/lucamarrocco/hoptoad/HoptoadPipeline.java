@@ -0,0 +1,587 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+import code.lucamarrocco.hoptoad.AsyncHoptoadNotifier.OverflowPolicy;
+
+/**
+ * What the appenders share, whichever logging framework they are for: the
+ * options, how notices are built from a throwable and the logging thread's
+ * MDC, and the notifier chain the options describe, built on first use.
+ * An appender turns its framework's events into calls to
+ * {@link #accepts(String, Throwable)}, which filters the error before
+ * anything is captured of it, and {@link #notify(Throwable, Object, long)},
+ * which samples it before building its notice, and closes the pipeline when
+ * it is closed.
+ */
+public class HoptoadPipeline {
+
+	private volatile HoptoadNotifier notifier;
+
+	private volatile NotifierMetrics metrics;
+
+	private volatile ErrorFilter[] filters = new ErrorFilter[0];
+
+	private final List<ErrorFilter> errorFilters = new CopyOnWriteArrayList<ErrorFilter>();
+
+	private volatile List<SamplingPolicy> sampling = Collections.emptyList();
+
+	private final List<SamplingPolicy> samplingPolicies = new CopyOnWriteArrayList<SamplingPolicy>();
+
+	private String name = "hoptoad";
+
+	private String apiKey;
+
+	private String env;
+
+	private volatile boolean enabled;
+
+	private Backtrace backtrace = new QuietRubyBacktrace();
+
+	private boolean async;
+
+	private int queueCapacity = AsyncHoptoadNotifier.DEFAULT_CAPACITY;
+
+	private int senderThreads = AsyncHoptoadNotifier.DEFAULT_SENDER_THREADS;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+	private long blockTimeout = AsyncHoptoadNotifier.DEFAULT_BLOCK_TIMEOUT_MILLIS;
+
+	private boolean threadPerNotice;
+
+	private int maxConcurrentSends = ThreadPerNoticeHoptoadNotifier.DEFAULT_MAX_CONCURRENT_SENDS;
+
+	private boolean batch;
+
+	private int batchSize = BatchingHoptoadNotifier.DEFAULT_MAX_NOTICES;
+
+	private int batchBytes = BatchingHoptoadNotifier.DEFAULT_MAX_BYTES;
+
+	private long batchDelay = BatchingHoptoadNotifier.DEFAULT_MAX_DELAY_MILLIS;
+
+	private String batchUrl;
+
+	private boolean dedup;
+
+	private long dedupWindow = DeduplicatingHoptoadNotifier.DEFAULT_WINDOW_MILLIS;
+
+	private int dedupFrames = Fingerprint.DEFAULT_FRAMES;
+
+	private int dedupMaxFingerprints = DeduplicatingHoptoadNotifier.DEFAULT_MAX_FINGERPRINTS;
+
+	private double rateLimit;
+
+	private int rateBurst = RateLimitingHoptoadNotifier.DEFAULT_BURST;
+
+	private double errorClassRateLimit;
+
+	private int errorClassRateBurst = RateLimitingHoptoadNotifier.DEFAULT_BURST;
+
+	private String spoolDirectory;
+
+	private int spoolSegmentBytes = SpoolingHoptoadNotifier.DEFAULT_SEGMENT_BYTES;
+
+	private int spoolMaxSegments = SpoolingHoptoadNotifier.DEFAULT_MAX_SEGMENTS;
+
+	private int retryAttempts = 1;
+
+	private long retryBaseDelay = RetryPolicy.DEFAULT_BASE_DELAY_MILLIS;
+
+	private long retryMaxDelay = RetryPolicy.DEFAULT_MAX_DELAY_MILLIS;
+
+	private int circuitBreakerThreshold;
+
+	private long circuitBreakerReset = CircuitBreaker.DEFAULT_RESET_MILLIS;
+
+	private int connectTimeout = HoptoadTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+	private int readTimeout = HoptoadTransport.DEFAULT_READ_TIMEOUT_MILLIS;
+
+	private long deliveryDeadline;
+
+	private boolean gzip;
+
+	private int maxNoticeBytes = NoticeApi2.UNBOUNDED;
+
+	private boolean jmx;
+
+	private int sampleFirst = EveryNthSamplingPolicy.DEFAULT_FIRST;
+
+	private int sampleEvery;
+
+	private int sampleReservoir;
+
+	private long sampleWindow = WindowedSamplingPolicy.DEFAULT_WINDOW_MILLIS;
+
+	private String allowErrorClasses;
+
+	private String denyErrorClasses;
+
+	private String denyLoggers;
+
+	private int topFrameLimit;
+
+	private long topFrameWindow = WindowedSamplingPolicy.DEFAULT_WINDOW_MILLIS;
+
+	private String url = HoptoadNotifier.NOTICES_URL;
+
+	private String transport = "urlconnection";
+
+	private int maxConnectionsPerHost = PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+	private long idleConnectionTimeout = PooledHttpTransport.DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+	/**
+	 * Whether the error {@code throwable}, logged by {@code logger}, gets past
+	 * the error filters; appenders ask before capturing anything of it.
+	 */
+	public boolean accepts(final String logger, final Throwable throwable) {
+		notifier();
+		for (final ErrorFilter filter : filters) {
+			if (!filter.accept(logger, throwable)) {
+				metrics.filtered();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Filters errors with {@code filter} too, after the filters the options describe. */
+	public void addErrorFilter(final ErrorFilter filter) {
+		errorFilters.add(filter);
+	}
+
+	/** Samples errors with {@code policy} too, after the policies the options describe. */
+	public void addSamplingPolicy(final SamplingPolicy policy) {
+		samplingPolicies.add(policy);
+	}
+
+	/** Closes the notifier and unregisters its metrics; the next notice builds a new one. */
+	public synchronized void close() {
+		if (notifier != null) {
+			notifier.close();
+			notifier = null;
+		}
+		if (metrics != null) {
+			try {
+				metrics.unregister();
+			} catch (final JMException e) {
+				System.err.println("cannot unregister hoptoad metrics: " + e);
+			}
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/** What the notifier has been doing, once it is built. */
+	public NotifierMetrics metrics() {
+		notifier();
+		return metrics;
+	}
+
+	/** The names in a comma separated list. */
+	private static List<String> names(final String list) {
+		final List<String> names = new ArrayList<String>();
+		if (list == null) return names;
+		for (final String name : list.split(",")) {
+			if (name.trim().length() > 0) names.add(name.trim());
+		}
+		return names;
+	}
+
+	/** The filters the options describe, cheapest first, then those added. */
+	protected List<ErrorFilter> newErrorFilters() {
+		final List<ErrorFilter> filters = new ArrayList<ErrorFilter>();
+		if (denyLoggers != null) filters.add(new LoggerNameFilter(names(denyLoggers)));
+		if (allowErrorClasses != null || denyErrorClasses != null) filters.add(new ErrorClassFilter(names(allowErrorClasses), names(denyErrorClasses)));
+		if (topFrameLimit > 0) filters.add(new TopFrameRateLimitFilter(topFrameLimit, topFrameWindow, WindowedSamplingPolicy.DEFAULT_MAX_KEYS));
+		filters.addAll(errorFilters);
+		return filters;
+	}
+
+	/** A notice for {@code throwable} with {@code mdc}, the MDC of the thread that logged it, in its session. */
+	public HoptoadNotice newNoticeFor(final Throwable throwable, final Object mdc) {
+		final long start = System.nanoTime();
+		final HoptoadNotice notice = new HoptoadNoticeBuilderUsingFilteredSystemProperties(apiKey, backtrace, throwable, env, mdc).newNotice();
+		final NotifierMetrics metrics = this.metrics;
+		if (metrics != null) metrics.built(System.nanoTime() - start);
+		return notice;
+	}
+
+	/** The policies the options describe, then those added. */
+	protected List<SamplingPolicy> newSamplingPolicies() {
+		final List<SamplingPolicy> policies = new ArrayList<SamplingPolicy>();
+		if (sampleEvery > 1) policies.add(new EveryNthSamplingPolicy(sampleFirst, sampleEvery, sampleWindow, WindowedSamplingPolicy.DEFAULT_MAX_KEYS));
+		if (sampleReservoir > 0) policies.add(new ReservoirSamplingPolicy(sampleReservoir, sampleWindow, WindowedSamplingPolicy.DEFAULT_MAX_KEYS, Fingerprint.DEFAULT_FRAMES, new Random()));
+		policies.addAll(samplingPolicies);
+		return policies;
+	}
+
+	/** The notifier chain the options describe, counting what it does in {@code metrics}. */
+	protected HoptoadNotifier newNotifier(final NotifierMetrics metrics) {
+		HoptoadNotifier notifier = new HoptoadNotifier(url, newRetryingTransport(), maxNoticeBytes, metrics);
+		if (spoolDirectory != null) {
+			if (batch) {
+				System.err.println("hoptoad spoolDirectory is ignored when batch is enabled");
+			} else {
+				try {
+					notifier = metrics.watch(new SpoolingHoptoadNotifier(notifier, new File(spoolDirectory), spoolSegmentBytes, spoolMaxSegments, SpoolingHoptoadNotifier.DEFAULT_RETRY_MILLIS));
+				} catch (final IOException e) {
+					System.err.println("cannot open hoptoad spool in " + spoolDirectory + ", notices will not be spooled: " + e);
+				}
+			}
+		}
+		if (batch) notifier = metrics.watch(new BatchingHoptoadNotifier(notifier, batchSize, batchBytes, batchDelay, batchUrl));
+		if (deliveryDeadline > 0) notifier = metrics.watch(new DeadlineHoptoadNotifier(notifier, deliveryDeadline));
+		if (async && threadPerNotice) {
+			notifier = metrics.watch(new ThreadPerNoticeHoptoadNotifier(notifier, maxConcurrentSends, overflowPolicy == OverflowPolicy.BLOCK ? blockTimeout : 0));
+		} else if (async) {
+			notifier = metrics.watch(new AsyncHoptoadNotifier(notifier, queueCapacity, senderThreads, overflowPolicy, blockTimeout));
+		}
+		if (rateLimit > 0 || errorClassRateLimit > 0) notifier = metrics.watch(new RateLimitingHoptoadNotifier(notifier, rateLimit, rateBurst, errorClassRateLimit, errorClassRateBurst));
+		if (dedup) notifier = metrics.watch(new DeduplicatingHoptoadNotifier(notifier, dedupWindow, dedupFrames, dedupMaxFingerprints));
+		return notifier;
+	}
+
+	/** The transport, behind retries and a circuit breaker when either is configured. */
+	private HoptoadTransport newRetryingTransport() {
+		if (retryAttempts <= 1 && circuitBreakerThreshold <= 0) return newTransport();
+		final CircuitBreaker breaker = new CircuitBreaker(circuitBreakerThreshold > 0 ? circuitBreakerThreshold : Integer.MAX_VALUE, circuitBreakerReset);
+		return new RetryingTransport(newTransport(), new RetryPolicy(Math.max(retryAttempts, 1), retryBaseDelay, retryMaxDelay), breaker);
+	}
+
+	protected HoptoadTransport newTransport() {
+		if ("urlconnection".equalsIgnoreCase(transport)) return new HttpURLConnectionTransport(connectTimeout, readTimeout, gzip);
+		if ("pooled".equalsIgnoreCase(transport)) return new PooledHttpTransport(maxConnectionsPerHost, idleConnectionTimeout, connectTimeout, readTimeout, gzip);
+		if ("nio".equalsIgnoreCase(transport)) {
+			try {
+				return new NioHttpTransport(maxConnectionsPerHost, connectTimeout, readTimeout, idleConnectionTimeout, gzip);
+			} catch (final IOException e) {
+				System.err.println("cannot open a selector for the nio hoptoad transport, using urlconnection: " + e);
+				return new HttpURLConnectionTransport(connectTimeout, readTimeout, gzip);
+			}
+		}
+		try {
+			return (HoptoadTransport) Class.forName(transport).newInstance();
+		} catch (final Exception e) {
+			throw new IllegalArgumentException("cannot create hoptoad transport " + transport, e);
+		}
+	}
+
+	/**
+	 * Notifies Hoptoad of {@code throwable}, logged at {@code occurredAt} by a
+	 * thread with {@code mdc}, unless the sampling policies drop it. The notice
+	 * is built only once the error is kept, and carries the product of the
+	 * policies' weights. Returns the status code, or 0 for an error sampled out.
+	 */
+	public int notify(final Throwable throwable, final Object mdc, final long occurredAt) {
+		final HoptoadNotifier notifier = notifier();
+		final List<SamplingPolicy> sampling = this.sampling;
+		double weight = 1;
+		for (final SamplingPolicy policy : sampling) {
+			weight *= policy.sample(throwable, occurredAt);
+			if (weight == 0) break;
+		}
+		if (!sampling.isEmpty()) metrics.sampled(weight);
+		if (weight == 0) return 0;
+
+		final HoptoadNotice notice = newNoticeFor(throwable, mdc).occurredAt(occurredAt);
+		if (!sampling.isEmpty()) notice.annotate(SamplingPolicy.WEIGHT, weight == Math.rint(weight) ? (Object) Long.valueOf((long) weight) : Double.valueOf(weight));
+		return notifier.notify(notice);
+	}
+
+	/** The notifier notices are handed to, built from the options on first use. */
+	public HoptoadNotifier notifier() {
+		final HoptoadNotifier notifier = this.notifier;
+		if (notifier != null) return notifier;
+		synchronized (this) {
+			if (this.notifier == null) {
+				final NotifierMetrics metrics = new NotifierMetrics();
+				final HoptoadNotifier built = newNotifier(metrics);
+				if (jmx) {
+					try {
+						metrics.register(name);
+					} catch (final JMException e) {
+						System.err.println("cannot register hoptoad metrics with JMX: " + e);
+					}
+				}
+				this.metrics = metrics;
+				final List<ErrorFilter> filters = newErrorFilters();
+				this.filters = filters.toArray(new ErrorFilter[filters.size()]);
+				this.sampling = newSamplingPolicies();
+				this.notifier = built;
+			}
+			return this.notifier;
+		}
+	}
+
+	/** Comma separated classes of the errors to notify, with their subclasses; all of them when unset. */
+	public void setAllowErrorClasses(final String allowErrorClasses) {
+		this.allowErrorClasses = allowErrorClasses;
+	}
+
+	public void setApi_key(final String apiKey) {
+		this.apiKey = apiKey;
+	}
+
+	/** Deliver notices from a bounded queue on background threads instead of on the logging thread. */
+	public void setAsync(final boolean async) {
+		this.async = async;
+	}
+
+	public void setBacktrace(final Backtrace backtrace) {
+		this.backtrace = backtrace;
+	}
+
+	/** Collect notices and post them in batches instead of one by one. */
+	public void setBatch(final boolean batch) {
+		this.batch = batch;
+	}
+
+	/** Flush a batch once its notices add up to this many bytes. */
+	public void setBatchBytes(final int batchBytes) {
+		this.batchBytes = batchBytes;
+	}
+
+	/** Flush a batch at the latest this many milliseconds after its first notice. */
+	public void setBatchDelay(final long batchDelay) {
+		this.batchDelay = batchDelay;
+	}
+
+	/** Flush a batch once it holds this many notices. */
+	public void setBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/** Endpoint accepting one multi-notice document per batch; without it batches are pipelined to the notices url. */
+	public void setBatchUrl(final String batchUrl) {
+		this.batchUrl = batchUrl.trim();
+	}
+
+	/** Milliseconds to wait for room in the queue when the overflow policy is BLOCK. */
+	public void setBlockTimeout(final long blockTimeout) {
+		this.blockTimeout = blockTimeout;
+	}
+
+	/** Milliseconds an open circuit breaker waits before letting a trial notice through. */
+	public void setCircuitBreakerReset(final long circuitBreakerReset) {
+		this.circuitBreakerReset = circuitBreakerReset;
+	}
+
+	/** Failed posts in a row after which notices stop being posted for a while; 0, the default, never stops. */
+	public void setCircuitBreakerThreshold(final int circuitBreakerThreshold) {
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	/** Milliseconds to wait for a connection to Hoptoad. */
+	public void setConnectTimeout(final int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/** Send an error once per window and count its repeats instead of sending each of them. */
+	public void setDedup(final boolean dedup) {
+		this.dedup = dedup;
+	}
+
+	/** Number of backtrace frames, after the error class, that make up an error's fingerprint. */
+	public void setDedupFrames(final int dedupFrames) {
+		this.dedupFrames = dedupFrames;
+	}
+
+	public void setDedupMaxFingerprints(final int dedupMaxFingerprints) {
+		this.dedupMaxFingerprints = dedupMaxFingerprints;
+	}
+
+	/** Milliseconds during which repeats of an error are only counted. */
+	public void setDedupWindow(final long dedupWindow) {
+		this.dedupWindow = dedupWindow;
+	}
+
+	/** Comma separated classes of the errors not to notify, with their subclasses. */
+	public void setDenyErrorClasses(final String denyErrorClasses) {
+		this.denyErrorClasses = denyErrorClasses;
+	}
+
+	/** Comma separated names of the loggers, with those below them, whose errors are not notified. */
+	public void setDenyLoggers(final String denyLoggers) {
+		this.denyLoggers = denyLoggers;
+	}
+
+	/** Milliseconds after which a notice still waiting to be sent is dropped; 0, the default, never drops. */
+	public void setDeliveryDeadline(final long deliveryDeadline) {
+		this.deliveryDeadline = deliveryDeadline;
+	}
+
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setEnv(final String env) {
+		this.env = env;
+	}
+
+	public void setErrorClassRateBurst(final int errorClassRateBurst) {
+		this.errorClassRateBurst = errorClassRateBurst;
+	}
+
+	/** Notices per second sent for any one error class; 0, the default, sets no limit. */
+	public void setErrorClassRateLimit(final double errorClassRateLimit) {
+		this.errorClassRateLimit = errorClassRateLimit;
+	}
+
+	/** Send notices gzipped; the built-in transports only, a custom transport decides for itself. */
+	public void setGzip(final boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/** Milliseconds a pooled connection may stay idle before it is closed. */
+	public void setIdleConnectionTimeout(final long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/** Register the notifier's {@link NotifierMetrics} as an MBean under the pipeline's name. */
+	public void setJmx(final boolean jmx) {
+		this.jmx = jmx;
+	}
+
+	/** Sends in progress at once when {@link #setThreadPerNotice(boolean)} is on; notices beyond it are dropped. */
+	public void setMaxConcurrentSends(final int maxConcurrentSends) {
+		this.maxConcurrentSends = maxConcurrentSends;
+	}
+
+	public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * The size in bytes notices are cut down to, or 0, the default, for no
+	 * limit; {@link NoticeApi2#DEFAULT_MAX_BYTES} suits most collectors.
+	 */
+	public void setMaxNoticeBytes(final int maxNoticeBytes) {
+		this.maxNoticeBytes = maxNoticeBytes;
+	}
+
+	/** The name the metrics are registered under, usually the appender's. */
+	public void setName(final String name) {
+		if (name != null) this.name = name;
+	}
+
+	/** One of DROP_NEWEST, DROP_OLDEST or BLOCK. */
+	public void setOverflowPolicy(final String overflowPolicy) {
+		this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+	}
+
+	public void setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/** Notices that may be sent at once before {@link #setRateLimit(double)} applies. */
+	public void setRateBurst(final int rateBurst) {
+		this.rateBurst = rateBurst;
+	}
+
+	/** Notices per second sent overall; 0, the default, sets no limit. */
+	public void setRateLimit(final double rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	/** Milliseconds to wait for Hoptoad's response once a notice is sent. */
+	public void setReadTimeout(final int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/** Times a notice is posted before giving up on a connection failure, 5xx, 408 or 429; 1, the default, never retries. */
+	public void setRetryAttempts(final int retryAttempts) {
+		this.retryAttempts = retryAttempts;
+	}
+
+	public void setRetryBaseDelay(final long retryBaseDelay) {
+		this.retryBaseDelay = retryBaseDelay;
+	}
+
+	/** Longest wait between attempts in milliseconds; a longer Retry-After from Hoptoad ends the retries. */
+	public void setRetryMaxDelay(final long retryMaxDelay) {
+		this.retryMaxDelay = retryMaxDelay;
+	}
+
+	/** Keep one in this many errors of an error class once {@link #setSampleFirst(int)} were kept in a window; 0, the default, keeps all. */
+	public void setSampleEvery(final int sampleEvery) {
+		this.sampleEvery = sampleEvery;
+	}
+
+	/** Errors of an error class kept in a window before {@link #setSampleEvery(int)} applies. */
+	public void setSampleFirst(final int sampleFirst) {
+		this.sampleFirst = sampleFirst;
+	}
+
+	/** Sample the errors of each fingerprint as a reservoir of this size would; 0, the default, keeps all. */
+	public void setSampleReservoir(final int sampleReservoir) {
+		this.sampleReservoir = sampleReservoir;
+	}
+
+	/** Milliseconds sampling counts errors for before starting over. */
+	public void setSampleWindow(final long sampleWindow) {
+		this.sampleWindow = sampleWindow;
+	}
+
+	public void setSenderThreads(final int senderThreads) {
+		this.senderThreads = senderThreads;
+	}
+
+	/** Directory where notices that cannot be delivered are kept until Hoptoad is reachable again. */
+	public void setSpoolDirectory(final String spoolDirectory) {
+		this.spoolDirectory = spoolDirectory.trim();
+	}
+
+	/** The spool uses at most this many segment files. */
+	public void setSpoolMaxSegments(final int spoolMaxSegments) {
+		this.spoolMaxSegments = spoolMaxSegments;
+	}
+
+	public void setSpoolSegmentBytes(final int spoolSegmentBytes) {
+		this.spoolSegmentBytes = spoolSegmentBytes;
+	}
+
+	/**
+	 * With async on, send each notice on a thread of its own, virtual where the
+	 * JVM has virtual threads, instead of queueing it for the sender threads.
+	 */
+	public void setThreadPerNotice(final boolean threadPerNotice) {
+		this.threadPerNotice = threadPerNotice;
+	}
+
+	/** Notify at most this many errors thrown from the same place in a window; 0, the default, notifies all. */
+	public void setTopFrameLimit(final int topFrameLimit) {
+		this.topFrameLimit = topFrameLimit;
+	}
+
+	/** Milliseconds {@link #setTopFrameLimit(int)} counts errors for before starting over. */
+	public void setTopFrameWindow(final long topFrameWindow) {
+		this.topFrameWindow = topFrameWindow;
+	}
+
+	/**
+	 * "urlconnection", "pooled", "nio", or the class name of a
+	 * {@link HoptoadTransport} with a public no-argument constructor. The
+	 * pipeline waits on "nio" like on the others, one sender thread per notice
+	 * in flight; see {@link NioHttpTransport}.
+	 */
+	public void setTransport(final String transport) {
+		this.transport = transport.trim();
+	}
+
+	public void setUrl(final String url) {
+		this.url = url.trim();
+	}
+}
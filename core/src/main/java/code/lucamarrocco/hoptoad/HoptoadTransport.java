@@ -0,0 +1,42 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/** Posts serialized notices to a Hoptoad endpoint. */
+public interface HoptoadTransport {
+
+	int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+	int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+	/** Posts the XML document and returns the HTTP status code of the response. */
+	int post(URL url, byte[] xml) throws IOException;
+
+	/**
+	 * Posts a document that is written straight into the connection, using
+	 * chunked transfer encoding, and returns the HTTP status code.
+	 */
+	int post(URL url, Body xml) throws IOException;
+
+	/**
+	 * Posts each document in order, as one pipelined write over a single
+	 * connection where the transport can, and returns their status codes. If
+	 * the post fails after some documents were answered, a
+	 * {@link PartialPostException} says which.
+	 */
+	int[] post(URL url, List<byte[]> xml) throws IOException;
+
+	/** Releases connections and threads held by the transport. */
+	void close();
+
+	/** A request body produced while it is sent. It is written again if the post is retried. */
+	interface Body {
+		void writeTo(OutputStream out) throws IOException;
+	}
+}
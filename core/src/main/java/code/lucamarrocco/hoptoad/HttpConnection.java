@@ -0,0 +1,344 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.security.cert.*;
+import java.util.*;
+
+import javax.naming.*;
+import javax.naming.ldap.*;
+import javax.net.ssl.*;
+
+/**
+ * A persistent HTTP/1.1 connection to one host. Only what a notifier needs is
+ * implemented: POST a document, read the status code and drain the response
+ * so the socket can carry the next request.
+ */
+class HttpConnection {
+
+	private final String route;
+
+	private final Socket socket;
+
+	private final InputStream in;
+
+	private final OutputStream out;
+
+	private final boolean gzip;
+
+	private boolean reusable = true;
+
+	private boolean responseStarted;
+
+	private long lastUsed = System.currentTimeMillis();
+
+	HttpConnection(final URL url, final int connectTimeoutMillis, final int readTimeoutMillis, final boolean gzip) throws IOException {
+		this(url, connectTimeoutMillis, readTimeoutMillis, gzip, (SSLSocketFactory) SSLSocketFactory.getDefault());
+	}
+
+	HttpConnection(final URL url, final int connectTimeoutMillis, final int readTimeoutMillis, final boolean gzip, final SSLSocketFactory sslSocketFactory) throws IOException {
+		this.route = route(url);
+		this.gzip = gzip;
+		this.socket = connect(url, connectTimeoutMillis, sslSocketFactory);
+		this.socket.setTcpNoDelay(true);
+		this.socket.setSoTimeout(readTimeoutMillis);
+		this.in = new BufferedInputStream(socket.getInputStream());
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	/**
+	 * Connects within the timeout, and layers TLS over the connected socket for
+	 * https. The server's certificate must name the host, as it must for
+	 * {@link HttpsURLConnection}.
+	 */
+	private static Socket connect(final URL url, final int connectTimeoutMillis, final SSLSocketFactory sslSocketFactory) throws IOException {
+		final Socket plain = new Socket();
+		try {
+			plain.connect(new InetSocketAddress(url.getHost(), port(url)), connectTimeoutMillis);
+			if (!"https".equalsIgnoreCase(url.getProtocol())) return plain;
+			final SSLSocket secure = (SSLSocket) sslSocketFactory.createSocket(plain, url.getHost(), port(url), true);
+			secure.startHandshake();
+			verifyHostname(url.getHost(), secure.getSession());
+			return secure;
+		} catch (final IOException e) {
+			plain.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks that the certificate names {@code host}: an IP address must be
+	 * among its IP addresses, and a host name must match one of its DNS names
+	 * or, when it has none, its most specific common name. A certificate that
+	 * does not is left to the default {@link HostnameVerifier}, as
+	 * {@link HttpsURLConnection} does.
+	 */
+	private static void verifyHostname(final String host, final SSLSession session) throws IOException {
+		final Certificate[] certificates = session.getPeerCertificates();
+		if (certificates.length > 0 && certificates[0] instanceof X509Certificate && names((X509Certificate) certificates[0], host)) return;
+		if (HttpsURLConnection.getDefaultHostnameVerifier().verify(host, session)) return;
+		throw new SSLPeerUnverifiedException("the certificate of the server does not name " + host);
+	}
+
+	static boolean names(final X509Certificate certificate, final String host) throws IOException {
+		final String name = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host.toLowerCase(Locale.ENGLISH);
+		final boolean address = name.indexOf(':') != -1 || name.matches("[0-9.]+");
+		final Collection<List<?>> alternatives;
+		try {
+			alternatives = certificate.getSubjectAlternativeNames();
+		} catch (final CertificateParsingException e) {
+			throw new SSLPeerUnverifiedException("cannot read the names in the certificate: " + e.getMessage());
+		}
+		boolean dnsNames = false;
+		if (alternatives != null) {
+			for (final List<?> alternative : alternatives) {
+				final int type = ((Integer) alternative.get(0)).intValue();
+				if (address && type == 7 && sameAddress(name, (String) alternative.get(1))) return true;
+				if (!address && type == 2) {
+					dnsNames = true;
+					if (matches(name, (String) alternative.get(1))) return true;
+				}
+			}
+		}
+		if (address || dnsNames) return false;
+		final String commonName = commonName(certificate);
+		return commonName != null && matches(name, commonName);
+	}
+
+	private static String commonName(final X509Certificate certificate) throws IOException {
+		try {
+			String commonName = null;
+			for (final Rdn rdn : new LdapName(certificate.getSubjectX500Principal().getName()).getRdns()) {
+				if (rdn.getType().equalsIgnoreCase("CN")) commonName = rdn.getValue().toString();
+			}
+			return commonName;
+		} catch (final InvalidNameException e) {
+			throw new SSLPeerUnverifiedException("cannot read the subject of the certificate: " + e.getMessage());
+		}
+	}
+
+	/** Whether a DNS name in a certificate, possibly starting with a wildcard label, matches the lower case host name. */
+	private static boolean matches(final String host, final String pattern) {
+		final String lower = pattern.toLowerCase(Locale.ENGLISH);
+		if (!lower.startsWith("*.")) return host.equals(lower);
+		final int dot = host.indexOf('.');
+		return dot > 0 && host.substring(dot).equals(lower.substring(1)) && lower.indexOf('.', 2) != -1;
+	}
+
+	private static boolean sameAddress(final String host, final String address) {
+		try {
+			return InetAddress.getByName(host).equals(InetAddress.getByName(address));
+		} catch (final UnknownHostException e) {
+			return false;
+		}
+	}
+
+	static String route(final URL url) {
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port(url);
+	}
+
+	private static int port(final URL url) {
+		return url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+	}
+
+	void close() {
+		reusable = false;
+		try {
+			socket.close();
+		} catch (final IOException e) {}
+	}
+
+	/**
+	 * Whether a request that failed with {@code failure} can be sent again
+	 * without the server seeing it twice: nothing of its response had arrived,
+	 * and the server was not merely slow to answer a request it had been sent.
+	 */
+	boolean canResend(final IOException failure) {
+		return !responseStarted && !(failure instanceof SocketTimeoutException);
+	}
+
+	private void drain(final long length) throws IOException {
+		for (long remaining = length; remaining > 0;) {
+			final long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() == -1) throw new EOFException("response body ended " + remaining + " bytes early");
+				remaining--;
+			} else {
+				remaining -= skipped;
+			}
+		}
+	}
+
+	private void drainChunked() throws IOException {
+		while (true) {
+			final String line = readLine();
+			final int extension = line.indexOf(';');
+			final long size = Long.parseLong((extension == -1 ? line : line.substring(0, extension)).trim(), 16);
+			if (size == 0) break;
+			drain(size);
+			readLine();
+		}
+		while (readLine().length() > 0) {}
+	}
+
+	private void drainToEof() throws IOException {
+		reusable = false;
+		final byte[] buffer = new byte[512];
+		while (in.read(buffer) != -1) {}
+	}
+
+	long idleMillis(final long now) {
+		return now - lastUsed;
+	}
+
+	boolean isReusable() {
+		return reusable && !socket.isClosed();
+	}
+
+	/**
+	 * Writes all requests before reading any response and returns the status
+	 * codes of the requests that were answered, which is fewer than were sent if
+	 * the server closes the connection part way before answering the next one.
+	 * If the next one may have reached the server, a
+	 * {@link PartialPostException} reports those answered instead. Responses are small, so a batch
+	 * of a few hundred requests fits in the socket buffers without the two sides
+	 * blocking on each other.
+	 */
+	int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final int[] statusCodes = new int[xml.size()];
+		int answered = 0;
+		try {
+			for (final byte[] document : xml) {
+				writeRequest(url, document);
+			}
+			out.flush();
+			while (answered < statusCodes.length) {
+				statusCodes[answered] = readResponse();
+				answered++;
+				if (!reusable) break;
+			}
+		} catch (final IOException e) {
+			close();
+			if (answered == 0) throw e;
+			if (!canResend(e)) throw PartialPostException.of(statusCodes, e);
+		} finally {
+			lastUsed = System.currentTimeMillis();
+		}
+
+		if (answered == statusCodes.length) return statusCodes;
+		reusable = false;
+		final int[] partial = new int[answered];
+		System.arraycopy(statusCodes, 0, partial, 0, answered);
+		return partial;
+	}
+
+	/** Streams the body with chunked transfer encoding and returns the status code. */
+	int post(final URL url, final HoptoadTransport.Body xml) throws IOException {
+		boolean completed = false;
+		try {
+			writeHead(url, -1);
+			final ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+			final OutputStream body = gzip ? new GzipOutputStream(chunked) : chunked;
+			xml.writeTo(body);
+			body.close();
+			final int statusCode = readResponse();
+			completed = true;
+			return statusCode;
+		} finally {
+			lastUsed = System.currentTimeMillis();
+			if (!completed) close();
+		}
+	}
+
+	private String readLine() throws IOException {
+		final StringBuilder line = new StringBuilder();
+		for (int c; (c = in.read()) != '\n';) {
+			if (c == -1) throw new EOFException("connection closed by " + route);
+			responseStarted = true;
+			if (c != '\r') line.append((char) c);
+		}
+		return line.toString();
+	}
+
+	private int readResponse() throws IOException {
+		responseStarted = false;
+		while (true) {
+			final String statusLine = readLine();
+			final String[] parts = statusLine.split(" ", 3);
+			if (parts.length < 2 || !parts[0].startsWith("HTTP/")) throw new IOException("malformed status line from " + route + ": " + statusLine);
+
+			final int statusCode = Integer.parseInt(parts[1]);
+			boolean keepAlive = "HTTP/1.1".equals(parts[0]);
+			boolean chunked = false;
+			long contentLength = -1;
+			String retryAfter = null;
+
+			for (String header; (header = readLine()).length() > 0;) {
+				final int colon = header.indexOf(':');
+				if (colon == -1) continue;
+				final String name = header.substring(0, colon).trim();
+				final String value = header.substring(colon + 1).trim();
+				if ("Content-Length".equalsIgnoreCase(name)) {
+					contentLength = Long.parseLong(value);
+				} else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+					chunked = value.toLowerCase().indexOf("chunked") != -1;
+				} else if ("Connection".equalsIgnoreCase(name)) {
+					if ("close".equalsIgnoreCase(value)) keepAlive = false;
+					if ("keep-alive".equalsIgnoreCase(value)) keepAlive = true;
+				} else if ("Retry-After".equalsIgnoreCase(name)) {
+					retryAfter = value;
+				}
+			}
+
+			if (statusCode >= 100 && statusCode < 200) continue;
+
+			if (statusCode == 204 || statusCode == 304) {
+				// no body
+			} else if (chunked) {
+				drainChunked();
+			} else if (contentLength >= 0) {
+				drain(contentLength);
+			} else {
+				drainToEof();
+			}
+
+			if (!keepAlive) reusable = false;
+			RetryAfter.record(retryAfter);
+			return statusCode;
+		}
+	}
+
+	String route() {
+		return route;
+	}
+
+	/** Writes the request line and headers; a negative length announces a chunked body. */
+	private void writeHead(final URL url, final long contentLength) throws IOException {
+		final String file = url.getFile().length() == 0 ? "/" : url.getFile();
+		final String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+		final StringBuilder head = new StringBuilder();
+		head.append("POST ").append(file).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(host).append("\r\n");
+		head.append("Content-Type: text/xml\r\n");
+		head.append("Accept: text/xml, application/xml\r\n");
+		if (gzip) head.append("Content-Encoding: gzip\r\n");
+		if (contentLength < 0) {
+			head.append("Transfer-Encoding: chunked\r\n");
+		} else {
+			head.append("Content-Length: ").append(contentLength).append("\r\n");
+		}
+		head.append("Connection: keep-alive\r\n");
+		head.append("\r\n");
+		out.write(head.toString().getBytes("US-ASCII"));
+	}
+
+	private void writeRequest(final URL url, final byte[] xml) throws IOException {
+		final byte[] body = gzip ? GzipOutputStream.gzip(xml) : xml;
+		writeHead(url, body.length);
+		out.write(body);
+	}
+}
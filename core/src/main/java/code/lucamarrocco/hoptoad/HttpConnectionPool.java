@@ -0,0 +1,184 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps idle keep-alive connections per host, caps how many connections a host
+ * may have open at once and closes connections that stay idle for too long.
+ */
+class HttpConnectionPool {
+
+	private final int maxConnectionsPerHost;
+
+	private final long idleTimeoutMillis;
+
+	private final long leaseTimeoutMillis;
+
+	private final int connectTimeoutMillis;
+
+	private final int readTimeoutMillis;
+
+	private final boolean gzip;
+
+	private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+
+	private final Timer evictor = new Timer("hoptoad-connection-evictor", true);
+
+	private volatile boolean closed;
+
+	HttpConnectionPool(final int maxConnectionsPerHost, final long idleTimeoutMillis, final long leaseTimeoutMillis, final int connectTimeoutMillis, final int readTimeoutMillis, final boolean gzip) {
+		if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("maxConnectionsPerHost must be positive: " + maxConnectionsPerHost);
+
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leaseTimeoutMillis = leaseTimeoutMillis;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.gzip = gzip;
+
+		final long period = Math.max(idleTimeoutMillis / 2, 100);
+		evictor.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, period, period);
+	}
+
+	void close() {
+		closed = true;
+		evictor.cancel();
+		for (final Route route : routes.values()) {
+			route.closeIdle(Long.MAX_VALUE, -1);
+		}
+	}
+
+	/** Closes connections that have been idle longer than the idle timeout. */
+	void evictIdle() {
+		final long now = System.currentTimeMillis();
+		for (final Route route : routes.values()) {
+			route.closeIdle(now, idleTimeoutMillis);
+		}
+	}
+
+	int idleConnections() {
+		int idle = 0;
+		for (final Route route : routes.values()) {
+			idle += route.idleCount();
+		}
+		return idle;
+	}
+
+	/**
+	 * Hands out an idle connection to the host of {@code url}, or opens a new one
+	 * if the host is below its connection limit. Every leased connection must be
+	 * given back through {@link #release(HttpConnection)}. With {@code reuse} set
+	 * to false a new connection is always opened.
+	 */
+	Lease lease(final URL url, final boolean reuse) throws IOException {
+		if (closed) throw new IOException("connection pool is closed");
+
+		final Route route = route(HttpConnection.route(url));
+		try {
+			if (!route.permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new IOException("timed out waiting for a connection to " + route.name);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for a connection to " + route.name);
+		}
+
+		final HttpConnection idle = reuse ? route.pollIdle() : null;
+		if (idle != null) return new Lease(idle, true);
+
+		try {
+			return new Lease(new HttpConnection(url, connectTimeoutMillis, readTimeoutMillis, gzip), false);
+		} catch (final IOException e) {
+			route.permits.release();
+			throw e;
+		} catch (final RuntimeException e) {
+			route.permits.release();
+			throw e;
+		}
+	}
+
+	/** Returns the connection to the pool, or closes it if it cannot carry another request. */
+	void release(final HttpConnection connection) {
+		final Route route = route(connection.route());
+		if (closed || !connection.isReusable()) {
+			connection.close();
+		} else {
+			route.pushIdle(connection);
+		}
+		route.permits.release();
+	}
+
+	private Route route(final String name) {
+		Route route = routes.get(name);
+		if (route == null) {
+			final Route created = new Route(name, maxConnectionsPerHost);
+			route = routes.putIfAbsent(name, created);
+			if (route == null) route = created;
+		}
+		return route;
+	}
+
+	static class Lease {
+		final HttpConnection connection;
+
+		final boolean reused;
+
+		Lease(final HttpConnection connection, final boolean reused) {
+			this.connection = connection;
+			this.reused = reused;
+		}
+	}
+
+	private static class Route {
+		final String name;
+
+		final Semaphore permits;
+
+		private final LinkedList<HttpConnection> idle = new LinkedList<HttpConnection>();
+
+		Route(final String name, final int maxConnections) {
+			this.name = name;
+			this.permits = new Semaphore(maxConnections);
+		}
+
+		synchronized void closeIdle(final long now, final long idleTimeoutMillis) {
+			for (final Iterator<HttpConnection> iterator = idle.iterator(); iterator.hasNext();) {
+				final HttpConnection connection = iterator.next();
+				if (connection.idleMillis(now) > idleTimeoutMillis) {
+					iterator.remove();
+					connection.close();
+				}
+			}
+		}
+
+		synchronized int idleCount() {
+			return idle.size();
+		}
+
+		/** Most recently used first, so surplus connections age out. */
+		synchronized HttpConnection pollIdle() {
+			while (!idle.isEmpty()) {
+				final HttpConnection connection = idle.removeFirst();
+				if (connection.isReusable()) return connection;
+				connection.close();
+			}
+			return null;
+		}
+
+		synchronized void pushIdle(final HttpConnection connection) {
+			idle.addFirst(connection);
+		}
+	}
+}
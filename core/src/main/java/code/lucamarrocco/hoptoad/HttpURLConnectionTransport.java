@@ -0,0 +1,116 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Transport over {@link HttpURLConnection}. The response body is always read
+ * to the end and closed so the JDK keep-alive cache can hand the socket to
+ * the next notice. Connecting and waiting for the response are bounded by
+ * timeouts, so a collector that stops answering cannot hold a thread forever.
+ * With gzip on, documents are sent with {@code Content-Encoding: gzip}.
+ */
+public class HttpURLConnectionTransport implements HoptoadTransport {
+
+	private final int connectTimeoutMillis;
+
+	private final int readTimeoutMillis;
+
+	private final boolean gzip;
+
+	public HttpURLConnectionTransport() {
+		this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	public HttpURLConnectionTransport(final int connectTimeoutMillis, final int readTimeoutMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, false);
+	}
+
+	public HttpURLConnectionTransport(final int connectTimeoutMillis, final int readTimeoutMillis, final boolean gzip) {
+		if (connectTimeoutMillis < 1) throw new IllegalArgumentException("connectTimeoutMillis must be positive: " + connectTimeoutMillis);
+		if (readTimeoutMillis < 1) throw new IllegalArgumentException("readTimeoutMillis must be positive: " + readTimeoutMillis);
+
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.gzip = gzip;
+	}
+
+	private void addingProperties(final HttpURLConnection connection) throws ProtocolException {
+		connection.setDoOutput(true);
+		connection.setConnectTimeout(connectTimeoutMillis);
+		connection.setReadTimeout(readTimeoutMillis);
+		connection.setRequestProperty("Content-type", "text/xml");
+		connection.setRequestProperty("Accept", "text/xml, application/xml");
+		if (gzip) connection.setRequestProperty("Content-Encoding", "gzip");
+		connection.setRequestMethod("POST");
+	}
+
+	public void close() {}
+
+	private void drain(final InputStream stream) throws IOException {
+		if (stream == null) return;
+		try {
+			final byte[] buffer = new byte[512];
+			while (stream.read(buffer) != -1) {}
+		} finally {
+			stream.close();
+		}
+	}
+
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final int[] statusCodes = new int[xml.size()];
+		for (int i = 0; i < statusCodes.length; i++) {
+			try {
+				statusCodes[i] = post(url, xml.get(i));
+			} catch (final IOException e) {
+				throw PartialPostException.of(statusCodes, e);
+			}
+		}
+		return statusCodes;
+	}
+
+	public int post(final URL url, final byte[] xml) throws IOException {
+		final byte[] body = gzip ? GzipOutputStream.gzip(xml) : xml;
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		addingProperties(connection);
+		connection.setFixedLengthStreamingMode(body.length);
+
+		final OutputStream out = connection.getOutputStream();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+		return response(connection);
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		addingProperties(connection);
+		connection.setChunkedStreamingMode(ChunkedOutputStream.CHUNK_SIZE);
+
+		final OutputStream out = gzip ? new GzipOutputStream(connection.getOutputStream()) : connection.getOutputStream();
+		try {
+			xml.writeTo(out);
+		} finally {
+			out.close();
+		}
+		return response(connection);
+	}
+
+	private int response(final HttpURLConnection connection) throws IOException {
+		final int statusCode = connection.getResponseCode();
+		RetryAfter.record(connection.getHeaderField("Retry-After"));
+		try {
+			drain(connection.getInputStream());
+		} catch (final IOException e) {
+			drain(connection.getErrorStream());
+		}
+		return statusCode;
+	}
+}
@@ -0,0 +1,181 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+/**
+ * Backtrace ignore rules compiled into one matcher that gives the same answer
+ * as trying {@code line.matches(rule)} for every rule.
+ * <p>
+ * Most rules have the form {@code .*org.mortbay.jetty.Server.*}: identifier
+ * characters and unescaped dots between a leading and a trailing {@code .*}.
+ * Those are merged into a trie in which a dot is a wildcard and walked once
+ * from every position of the line. Any other rule is matched with a
+ * {@link Pattern} compiled once and cached. Lines containing line terminators
+ * or surrogate characters, where {@code .} behaves specially, are left to the
+ * regular expressions.
+ */
+public class IgnoreRules {
+
+	private static final int CACHE_LIMIT = 1024;
+
+	private static final ConcurrentMap<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+
+	private static final ConcurrentMap<List<String>, Node> tries = new ConcurrentHashMap<List<String>, Node>();
+
+	private final List<String> wildcardRules;
+
+	private final Node trie;
+
+	private final Pattern[] regexRules;
+
+	private IgnoreRules(final List<String> wildcardRules, final Node trie, final List<Pattern> regexRules) {
+		this.wildcardRules = wildcardRules;
+		this.trie = trie;
+		this.regexRules = regexRules.toArray(new Pattern[regexRules.size()]);
+	}
+
+	public static IgnoreRules compile(final Collection<String> rules) {
+		final List<String> wildcardRules = new ArrayList<String>();
+		final List<Pattern> regexRules = new ArrayList<Pattern>();
+		for (final String rule : rules) {
+			if (isWildcardRule(rule)) {
+				wildcardRules.add(rule);
+			} else {
+				regexRules.add(pattern(rule));
+			}
+		}
+		return new IgnoreRules(wildcardRules, trie(wildcardRules), regexRules);
+	}
+
+	private static <K, V> void cache(final ConcurrentMap<K, V> cache, final K key, final V value) {
+		if (cache.size() >= CACHE_LIMIT) cache.clear();
+		cache.putIfAbsent(key, value);
+	}
+
+	/** The number of rules compiled as regular expressions and kept. */
+	static int cachedPatterns() {
+		return patterns.size();
+	}
+
+	private static boolean isIdentifierChar(final char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	private static boolean isSpecial(final char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029' || Character.isHighSurrogate(c) || Character.isLowSurrogate(c);
+	}
+
+	/** {@code (.*)+ X .*} where X is identifier characters and dots, starting with an identifier character. */
+	static boolean isWildcardRule(final String rule) {
+		final int start = middleStart(rule);
+		final int end = rule.length() - 2;
+		if (start >= end || !rule.startsWith(".*", end)) return false;
+		if (!isIdentifierChar(rule.charAt(start))) return false;
+		for (int i = start; i < end; i++) {
+			final char c = rule.charAt(i);
+			if (c != '.' && !isIdentifierChar(c)) return false;
+		}
+		return start > 0;
+	}
+
+	private static int middleStart(final String rule) {
+		int start = 0;
+		while (rule.startsWith(".*", start)) {
+			start += 2;
+		}
+		return start;
+	}
+
+	private static Pattern pattern(final String rule) {
+		Pattern pattern = patterns.get(rule);
+		if (pattern == null) {
+			pattern = Pattern.compile(rule);
+			cache(patterns, rule, pattern);
+		}
+		return pattern;
+	}
+
+	private static Node trie(final List<String> wildcardRules) {
+		Node trie = tries.get(wildcardRules);
+		if (trie == null) {
+			trie = new Node();
+			for (final String rule : wildcardRules) {
+				trie.add(rule, middleStart(rule), rule.length() - 2);
+			}
+			cache(tries, new ArrayList<String>(wildcardRules), trie);
+		}
+		return trie;
+	}
+
+	public boolean matches(final CharSequence line) {
+		if (!wildcardRules.isEmpty()) {
+			if (!hasSpecialChars(line)) {
+				if (trie.find(line)) return true;
+			} else {
+				for (final String rule : wildcardRules) {
+					if (pattern(rule).matcher(line).matches()) return true;
+				}
+			}
+		}
+		for (final Pattern pattern : regexRules) {
+			if (pattern.matcher(line).matches()) return true;
+		}
+		return false;
+	}
+
+	private boolean hasSpecialChars(final CharSequence line) {
+		for (int i = 0; i < line.length(); i++) {
+			if (isSpecial(line.charAt(i))) return true;
+		}
+		return false;
+	}
+
+	private static class Node {
+		private Node[] children;
+
+		private Node wildcard;
+
+		private boolean terminal;
+
+		void add(final String rule, final int from, final int to) {
+			if (from == to) {
+				terminal = true;
+				return;
+			}
+			final char c = rule.charAt(from);
+			final Node next;
+			if (c == '.') {
+				if (wildcard == null) wildcard = new Node();
+				next = wildcard;
+			} else {
+				if (children == null) children = new Node[128];
+				if (children[c] == null) children[c] = new Node();
+				next = children[c];
+			}
+			next.add(rule, from + 1, to);
+		}
+
+		boolean find(final CharSequence line) {
+			if (terminal) return true;
+			for (int start = 0; start < line.length(); start++) {
+				if (matchesAt(line, start)) return true;
+			}
+			return false;
+		}
+
+		private boolean matchesAt(final CharSequence line, final int position) {
+			if (terminal) return true;
+			if (position == line.length()) return false;
+
+			final char c = line.charAt(position);
+			if (children != null && c < 128 && children[c] != null && children[c].matchesAt(line, position + 1)) return true;
+			return wildcard != null && wildcard.matchesAt(line, position + 1);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Durations in nanoseconds counted in logarithmic buckets: every power of two
+ * is split into four buckets, so a percentile is off by at most a quarter.
+ * Recording increments one bucket and adds to the total without any lock;
+ * the count is the sum of the buckets, worked out when it is read.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 4;
+
+	private static final int BUCKETS = 62 * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	static int bucket(final long nanos) {
+		if (nanos < SUB_BUCKETS) return (int) Math.max(nanos, 0);
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return (exponent - 1) * SUB_BUCKETS + sub;
+	}
+
+	/** The largest duration that falls into {@code bucket}. */
+	static long upperBound(final int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		final int exponent = bucket / SUB_BUCKETS + 1;
+		final long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+	}
+
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	public long maxNanos() {
+		return maxNanos.get();
+	}
+
+	public double meanNanos() {
+		final long count = count();
+		return count == 0 ? 0 : (double) totalNanos.get() / count;
+	}
+
+	/** The duration {@code fraction} of the recorded durations do not exceed, rounded up to its bucket's bound. */
+	public long percentileNanos(final double fraction) {
+		final long count = count();
+		if (count == 0) return 0;
+		final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) return Math.min(upperBound(i), maxNanos.get());
+		}
+		return maxNanos.get();
+	}
+
+	/** Records a duration; a negative one, from a clock that went back, counts as zero. */
+	public void record(final long duration) {
+		final long nanos = Math.max(duration, 0);
+		buckets.incrementAndGet(bucket(nanos));
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+
+/**
+ * Rejects the errors logged by the loggers under the given names: a name
+ * covers the logger of that name and those below it, so {@code org.hibernate}
+ * covers {@code org.hibernate.SQL} but not {@code org.hibernatex}.
+ */
+public class LoggerNameFilter implements ErrorFilter {
+
+	private final String[] denied;
+
+	public LoggerNameFilter(final Collection<String> denied) {
+		this.denied = denied.toArray(new String[denied.size()]);
+	}
+
+	public boolean accept(final String logger, final Throwable throwable) {
+		if (logger == null) return true;
+		for (final String name : denied) {
+			if (logger.startsWith(name) && (logger.length() == name.length() || logger.charAt(name.length()) == '.')) return false;
+		}
+		return true;
+	}
+}
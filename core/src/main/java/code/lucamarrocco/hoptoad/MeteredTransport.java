@@ -0,0 +1,96 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/** Counts and times the posts made through another transport, retries included, in {@link NotifierMetrics}. */
+class MeteredTransport implements HoptoadTransport {
+
+	private final HoptoadTransport delegate;
+
+	private final NotifierMetrics metrics;
+
+	MeteredTransport(final HoptoadTransport delegate, final NotifierMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	public void close() {
+		delegate.close();
+	}
+
+	public int post(final URL url, final byte[] xml) throws IOException {
+		final long start = System.nanoTime();
+		metrics.sending();
+		try {
+			final int statusCode = delegate.post(url, xml);
+			metrics.sent(statusCode, System.nanoTime() - start);
+			return statusCode;
+		} catch (final IOException e) {
+			metrics.failed(System.nanoTime() - start);
+			throw e;
+		} catch (final RuntimeException e) {
+			metrics.failed(System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		final long start = System.nanoTime();
+		metrics.sending();
+		try {
+			final int statusCode = delegate.post(url, xml);
+			metrics.sent(statusCode, System.nanoTime() - start);
+			return statusCode;
+		} catch (final IOException e) {
+			metrics.failed(System.nanoTime() - start);
+			throw e;
+		} catch (final RuntimeException e) {
+			metrics.failed(System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	/** Every document counts as a post of its own, each taking the time the whole pipeline took. */
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final long start = System.nanoTime();
+		for (int i = 0; i < xml.size(); i++) {
+			metrics.sending();
+		}
+		try {
+			final int[] statusCodes = delegate.post(url, xml);
+			final long nanos = System.nanoTime() - start;
+			for (final int statusCode : statusCodes) {
+				metrics.sent(statusCode, nanos);
+			}
+			return statusCodes;
+		} catch (final PartialPostException e) {
+			final long nanos = System.nanoTime() - start;
+			for (final int statusCode : e.statusCodes()) {
+				if (statusCode == 0) {
+					metrics.failed(nanos);
+				} else {
+					metrics.sent(statusCode, nanos);
+				}
+			}
+			throw e;
+		} catch (final IOException e) {
+			failed(xml.size(), System.nanoTime() - start);
+			throw e;
+		} catch (final RuntimeException e) {
+			failed(xml.size(), System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	private void failed(final int documents, final long nanos) {
+		for (int i = 0; i < documents; i++) {
+			metrics.failed(nanos);
+		}
+	}
+}
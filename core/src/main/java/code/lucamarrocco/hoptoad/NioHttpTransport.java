@@ -0,0 +1,631 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Transport that drives every upload from one selector thread over
+ * non-blocking {@link SocketChannel}s, so many notices can be in flight at
+ * once without a thread blocked on each. {@link #submit(URL, byte[])} hands
+ * back a {@link Future} straight away; the {@link HoptoadTransport} methods
+ * submit and wait for it.
+ * <p>
+ * A request is a head and a body buffer written with one gathering write.
+ * Only the status line and the headers needed to find the end of the response
+ * are parsed; a response without a Content-Length ends its connection.
+ * Connections are kept alive per host, up to {@code maxConnectionsPerHost},
+ * and requests beyond that wait in line for one; a connection that stalls
+ * fails its request at the read timeout and moves the line on. Streamed
+ * bodies are buffered before they are sent, gzipped if asked for. https is
+ * posted through an
+ * {@link HttpURLConnectionTransport}.
+ * <p>
+ * The stages of {@link HoptoadPipeline} only use the blocking methods: a
+ * single post parks its caller until the response, and a list post overlaps
+ * its documents but waits for all of them. With the "nio" transport the
+ * notices in flight are therefore still bounded by the sender threads of the
+ * async stage, or by the size of a batch; only callers of {@link #submit} get
+ * uploads that do not hold a thread.
+ */
+public class NioHttpTransport implements HoptoadTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+	private final int maxConnectionsPerHost;
+
+	private final int connectTimeoutMillis;
+
+	private final int readTimeoutMillis;
+
+	private final long idleTimeoutMillis;
+
+	private final boolean gzip;
+
+	private final Selector selector;
+
+	private final Thread selectorThread;
+
+	private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<Exchange>();
+
+	private final HoptoadTransport https;
+
+	private final AtomicInteger openConnections = new AtomicInteger();
+
+	private volatile boolean closed;
+
+	// the fields below belong to the selector thread
+
+	private final Map<String, Route> routes = new HashMap<String, Route>();
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+	public NioHttpTransport() throws IOException {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	public NioHttpTransport(final int maxConnectionsPerHost, final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+		this(maxConnectionsPerHost, connectTimeoutMillis, readTimeoutMillis, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	public NioHttpTransport(final int maxConnectionsPerHost, final int connectTimeoutMillis, final int readTimeoutMillis, final long idleTimeoutMillis) throws IOException {
+		this(maxConnectionsPerHost, connectTimeoutMillis, readTimeoutMillis, idleTimeoutMillis, false);
+	}
+
+	/** @param gzip send documents with {@code Content-Encoding: gzip} */
+	public NioHttpTransport(final int maxConnectionsPerHost, final int connectTimeoutMillis, final int readTimeoutMillis, final long idleTimeoutMillis, final boolean gzip) throws IOException {
+		if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("maxConnectionsPerHost must be positive: " + maxConnectionsPerHost);
+		if (connectTimeoutMillis < 1) throw new IllegalArgumentException("connectTimeoutMillis must be positive: " + connectTimeoutMillis);
+		if (readTimeoutMillis < 1) throw new IllegalArgumentException("readTimeoutMillis must be positive: " + readTimeoutMillis);
+
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.gzip = gzip;
+		this.https = new HttpURLConnectionTransport(connectTimeoutMillis, readTimeoutMillis, gzip);
+		this.selector = Selector.open();
+
+		selectorThread = new Thread(new Loop(), "hoptoad-nio-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	private ByteBuffer head(final URL url, final int contentLength) throws UnsupportedEncodingException {
+		final String file = url.getFile().length() == 0 ? "/" : url.getFile();
+		final String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+		final StringBuilder head = new StringBuilder();
+		head.append("POST ").append(file).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(host).append("\r\n");
+		head.append("Content-Type: text/xml\r\n");
+		head.append("Accept: text/xml, application/xml\r\n");
+		if (gzip) head.append("Content-Encoding: gzip\r\n");
+		head.append("Content-Length: ").append(contentLength).append("\r\n");
+		head.append("Connection: keep-alive\r\n");
+		head.append("\r\n");
+		return ByteBuffer.wrap(head.toString().getBytes("US-ASCII"));
+	}
+
+	private static boolean isHttps(final URL url) {
+		return "https".equalsIgnoreCase(url.getProtocol());
+	}
+
+	/** Stops the selector thread; requests still in flight fail. */
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		try {
+			selectorThread.join(readTimeoutMillis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		failSubmitted();
+		https.close();
+	}
+
+	private void failSubmitted() {
+		for (Exchange exchange; (exchange = submitted.poll()) != null;) {
+			exchange.fail(new IOException("transport is closed"));
+		}
+	}
+
+	/** Connections currently open, busy or idle. */
+	public int openConnections() {
+		return openConnections.get();
+	}
+
+	public int post(final URL url, final byte[] xml) throws IOException {
+		if (isHttps(url)) return https.post(url, xml);
+		return submit(url, xml).await();
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		if (isHttps(url)) return https.post(url, xml);
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		xml.writeTo(buffer);
+		return post(url, buffer.toByteArray());
+	}
+
+	/** Submits every document before waiting for any, so they are sent over as many connections as the host allows. */
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		if (isHttps(url)) return https.post(url, xml);
+		final List<Exchange> exchanges = new ArrayList<Exchange>(xml.size());
+		for (final byte[] document : xml) {
+			exchanges.add(submit(url, document));
+		}
+		final int[] statusCodes = new int[exchanges.size()];
+		IOException failure = null;
+		for (int i = 0; i < statusCodes.length; i++) {
+			try {
+				statusCodes[i] = exchanges.get(i).await();
+			} catch (final IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw PartialPostException.of(statusCodes, failure);
+		return statusCodes;
+	}
+
+	/**
+	 * Queues the document for the selector thread and returns at once. The
+	 * future yields the status code, or fails with the {@link IOException} that
+	 * ended the request. Only http URLs can be submitted.
+	 */
+	public Exchange submit(final URL url, final byte[] xml) throws IOException {
+		if (isHttps(url)) throw new IOException("cannot submit to " + url + ", only http is posted without blocking");
+		if (closed) throw new IOException("transport is closed");
+
+		final byte[] body = gzip ? GzipOutputStream.gzip(xml) : xml;
+		final Exchange exchange = new Exchange(url, new ByteBuffer[] { head(url, body.length), ByteBuffer.wrap(body) });
+		submitted.add(exchange);
+		selector.wakeup();
+		if (closed) failSubmitted();
+		return exchange;
+	}
+
+	// selector thread from here on
+
+	/** Hands a connection that finished its response to the next waiting request, or parks it. */
+	private void release(final Connection connection, final long now) {
+		final Route route = connection.route;
+		connection.key.interestOps(0);
+		connection.lastUsed = now;
+		final Exchange next = route.waiting.poll();
+		if (next != null) {
+			send(connection, next, now);
+		} else {
+			route.idle.addFirst(connection);
+		}
+	}
+
+	private void close(final Connection connection) {
+		if (connection.closed) return;
+		connection.closed = true;
+		connection.key.cancel();
+		try {
+			connection.channel.close();
+		} catch (final IOException e) {}
+		connection.route.open--;
+		connection.route.idle.remove(connection);
+		openConnections.decrementAndGet();
+	}
+
+	private void closeAll() {
+		for (final SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+			final Connection connection = (Connection) key.attachment();
+			if (connection.exchange != null) connection.exchange.fail(new IOException("transport is closed"));
+			close(connection);
+		}
+		for (final Route route : routes.values()) {
+			for (Exchange exchange; (exchange = route.waiting.poll()) != null;) {
+				exchange.fail(new IOException("transport is closed"));
+			}
+		}
+		try {
+			selector.close();
+		} catch (final IOException e) {}
+	}
+
+	/** Ends the connection and fails its request, or replays the request once if a reused connection turned out to be stale. */
+	private void fail(final Connection connection, final IOException failure, final long now) {
+		final Exchange exchange = connection.exchange;
+		close(connection);
+		if (exchange == null) return;
+		if (connection.reused && !connection.responseStarted && !(failure instanceof SocketTimeoutException) && !exchange.replayed) {
+			exchange.replayed = true;
+			exchange.rewind();
+			start(exchange, now);
+		} else {
+			exchange.fail(failure);
+		}
+		startWaiting(connection.route, now);
+	}
+
+	private void handle(final SelectionKey key, final long now) {
+		final Connection connection = (Connection) key.attachment();
+		try {
+			if (key.isConnectable()) {
+				if (!connection.channel.finishConnect()) return;
+				connection.deadline = now + readTimeoutMillis;
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+			if (key.isValid() && key.isWritable()) write(connection, now);
+			if (key.isValid() && key.isReadable()) read(connection, now);
+		} catch (final IOException e) {
+			fail(connection, e, now);
+		}
+	}
+
+	private void open(final Route route, final Exchange exchange, final long now) {
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			final boolean connected = channel.connect(exchange.address);
+			final Connection connection = new Connection(route, channel);
+			connection.key = channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, connection);
+			route.open++;
+			openConnections.incrementAndGet();
+			connection.assign(exchange, false);
+			connection.deadline = now + (connected ? readTimeoutMillis : connectTimeoutMillis);
+		} catch (final IOException e) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (final IOException ignored) {}
+			}
+			exchange.fail(e);
+		} catch (final UnresolvedAddressException e) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (final IOException ignored) {}
+			}
+			exchange.fail(new UnknownHostException(exchange.address.getHostName()));
+		}
+	}
+
+	private void read(final Connection connection, final long now) throws IOException {
+		readBuffer.clear();
+		final int read = connection.channel.read(readBuffer);
+		if (read == -1) throw new EOFException("connection closed by " + connection.route.name);
+		readBuffer.flip();
+		connection.deadline = now + readTimeoutMillis;
+		if (!connection.consume(readBuffer)) return;
+
+		final Exchange exchange = connection.exchange;
+		connection.exchange = null;
+		exchange.complete(connection.statusCode, connection.retryAfter);
+		if (connection.keepAlive) {
+			release(connection, now);
+		} else {
+			close(connection);
+			startWaiting(connection.route, now);
+		}
+	}
+
+	private Route route(final Exchange exchange) {
+		Route route = routes.get(exchange.route);
+		if (route == null) {
+			route = new Route(exchange.route);
+			routes.put(exchange.route, route);
+		}
+		return route;
+	}
+
+	/** Milliseconds until the nearest timeout, or 0 to wait until woken up. */
+	private long selectTimeout(final long now) {
+		long nearest = Long.MAX_VALUE;
+		for (final SelectionKey key : selector.keys()) {
+			final Connection connection = (Connection) key.attachment();
+			nearest = Math.min(nearest, connection.exchange != null ? connection.deadline : connection.lastUsed + idleTimeoutMillis);
+		}
+		if (nearest == Long.MAX_VALUE) return 0;
+		return Math.max(nearest - now, 1);
+	}
+
+	private void send(final Connection connection, final Exchange exchange, final long now) {
+		connection.assign(exchange, true);
+		connection.deadline = now + readTimeoutMillis;
+		connection.key.interestOps(SelectionKey.OP_WRITE);
+	}
+
+	private void start(final Exchange exchange, final long now) {
+		final Route route = route(exchange);
+		final Connection idle = route.idle.poll();
+		if (idle != null) {
+			send(idle, exchange, now);
+		} else if (route.open < maxConnectionsPerHost) {
+			open(route, exchange, now);
+		} else {
+			route.waiting.add(exchange);
+		}
+	}
+
+	private void startWaiting(final Route route, final long now) {
+		while (route.open < maxConnectionsPerHost && !route.waiting.isEmpty()) {
+			start(route.waiting.poll(), now);
+		}
+	}
+
+	private void timeouts(final long now) {
+		for (final SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+			final Connection connection = (Connection) key.attachment();
+			if (!key.isValid()) continue;
+			if (connection.exchange != null && now >= connection.deadline) {
+				fail(connection, new SocketTimeoutException("no answer from " + connection.route.name + " in time"), now);
+			} else if (connection.exchange == null && now - connection.lastUsed >= idleTimeoutMillis) {
+				close(connection);
+			}
+		}
+	}
+
+	private void write(final Connection connection, final long now) throws IOException {
+		final ByteBuffer[] buffers = connection.exchange.buffers;
+		if (connection.channel.write(buffers) > 0) connection.deadline = now + readTimeoutMillis;
+		if (!buffers[buffers.length - 1].hasRemaining()) connection.key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/** One connection and the state of the response being read from it. */
+	private static class Connection {
+		final Route route;
+
+		final SocketChannel channel;
+
+		SelectionKey key;
+
+		Exchange exchange;
+
+		boolean closed;
+
+		boolean reused;
+
+		long deadline;
+
+		long lastUsed = System.currentTimeMillis();
+
+		final StringBuilder head = new StringBuilder();
+
+		boolean responseStarted;
+
+		int statusCode;
+
+		/** Body bytes still to skip, or -1 while the head is being read. */
+		long bodyRemaining;
+
+		boolean keepAlive;
+
+		String retryAfter;
+
+		Connection(final Route route, final SocketChannel channel) {
+			this.route = route;
+			this.channel = channel;
+		}
+
+		void assign(final Exchange exchange, final boolean reused) {
+			this.exchange = exchange;
+			this.reused = reused;
+			head.setLength(0);
+			responseStarted = false;
+			bodyRemaining = -1;
+			retryAfter = null;
+		}
+
+		/** Reads response bytes and returns true once the whole response has been read. */
+		boolean consume(final ByteBuffer in) throws IOException {
+			while (in.hasRemaining()) {
+				if (bodyRemaining < 0) {
+					responseStarted = true;
+					head.append((char) (in.get() & 0xff));
+					final int length = head.length();
+					if (length >= 4 && head.charAt(length - 1) == '\n' && head.charAt(length - 2) == '\r' && head.charAt(length - 3) == '\n' && head.charAt(length - 4) == '\r') {
+						parseHead();
+					}
+				} else {
+					final int skip = (int) Math.min(bodyRemaining, in.remaining());
+					in.position(in.position() + skip);
+					bodyRemaining -= skip;
+				}
+				if (bodyRemaining == 0) return true;
+			}
+			return bodyRemaining == 0;
+		}
+
+		private void parseHead() throws IOException {
+			final String[] lines = head.toString().split("\r\n");
+			final String[] status = lines[0].split(" ", 3);
+			if (status.length < 2 || !status[0].startsWith("HTTP/")) throw new IOException("malformed status line from " + route.name + ": " + lines[0]);
+
+			final int code;
+			try {
+				code = Integer.parseInt(status[1]);
+			} catch (final NumberFormatException e) {
+				throw new IOException("malformed status line from " + route.name + ": " + lines[0]);
+			}
+			if (code >= 100 && code < 200) {
+				head.setLength(0);
+				return;
+			}
+
+			boolean alive = "HTTP/1.1".equals(status[0]);
+			boolean chunked = false;
+			long contentLength = -1;
+			for (int i = 1; i < lines.length; i++) {
+				final int colon = lines[i].indexOf(':');
+				if (colon == -1) continue;
+				final String name = lines[i].substring(0, colon).trim();
+				final String value = lines[i].substring(colon + 1).trim();
+				if ("Content-Length".equalsIgnoreCase(name)) {
+					try {
+						contentLength = Long.parseLong(value);
+					} catch (final NumberFormatException e) {
+						throw new IOException("malformed Content-Length from " + route.name + ": " + value);
+					}
+				} else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+					chunked = value.toLowerCase().indexOf("chunked") != -1;
+				} else if ("Connection".equalsIgnoreCase(name)) {
+					if ("close".equalsIgnoreCase(value)) alive = false;
+					if ("keep-alive".equalsIgnoreCase(value)) alive = true;
+				} else if ("Retry-After".equalsIgnoreCase(name)) {
+					retryAfter = value;
+				}
+			}
+
+			statusCode = code;
+			if (code == 204 || code == 304) {
+				bodyRemaining = 0;
+			} else if (chunked || contentLength < 0) {
+				// the end of the body is not worth finding; give up the connection instead
+				bodyRemaining = 0;
+				alive = false;
+			} else {
+				bodyRemaining = contentLength;
+			}
+			keepAlive = alive;
+		}
+	}
+
+	/** A request submitted to the selector thread, and its outcome. */
+	public static class Exchange implements Future<Integer> {
+		final String route;
+
+		final InetSocketAddress address;
+
+		final ByteBuffer[] buffers;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private final AtomicBoolean finished = new AtomicBoolean();
+
+		private volatile int statusCode;
+
+		private volatile String retryAfter;
+
+		private volatile IOException failure;
+
+		boolean replayed;
+
+		Exchange(final URL url, final ByteBuffer[] buffers) {
+			final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+			this.route = HttpConnection.route(url);
+			this.address = new InetSocketAddress(url.getHost(), port);
+			this.buffers = buffers;
+		}
+
+		/**
+		 * Waits for the response and returns its status code, recording its
+		 * {@code Retry-After} for {@link RetryingTransport} on the calling thread.
+		 */
+		public int await() throws IOException {
+			try {
+				done.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for a response");
+			}
+			if (failure != null) throw failure;
+			RetryAfter.record(retryAfter);
+			return statusCode;
+		}
+
+		/** Not supported: a request cannot be taken back once submitted. */
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		void complete(final int statusCode, final String retryAfter) {
+			if (!finished.compareAndSet(false, true)) return;
+			this.statusCode = statusCode;
+			this.retryAfter = retryAfter;
+			done.countDown();
+		}
+
+		void fail(final IOException failure) {
+			if (!finished.compareAndSet(false, true)) return;
+			this.failure = failure;
+			done.countDown();
+		}
+
+		public Integer get() throws InterruptedException, ExecutionException {
+			done.await();
+			if (failure != null) throw new ExecutionException(failure);
+			return statusCode;
+		}
+
+		public Integer get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) throw new TimeoutException();
+			if (failure != null) throw new ExecutionException(failure);
+			return statusCode;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		void rewind() {
+			for (final ByteBuffer buffer : buffers) {
+				buffer.rewind();
+			}
+		}
+	}
+
+	private class Loop implements Runnable {
+		public void run() {
+			try {
+				while (!closed) {
+					selector.select(selectTimeout(System.currentTimeMillis()));
+					final long now = System.currentTimeMillis();
+					for (Exchange exchange; (exchange = submitted.poll()) != null;) {
+						start(exchange, now);
+					}
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+						keys.remove();
+						if (key.isValid()) handle(key, now);
+					}
+					timeouts(now);
+				}
+			} catch (final IOException e) {
+				System.err.println("hoptoad nio transport stopped, notices can no longer be posted through it: " + e);
+			} catch (final RuntimeException e) {
+				System.err.println("hoptoad nio transport stopped, notices can no longer be posted through it: " + e);
+			} finally {
+				closed = true;
+				closeAll();
+				failSubmitted();
+			}
+		}
+	}
+
+	private static class Route {
+		final String name;
+
+		final LinkedList<Connection> idle = new LinkedList<Connection>();
+
+		final LinkedList<Exchange> waiting = new LinkedList<Exchange>();
+
+		int open;
+
+		Route(final String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,361 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Serializes a notice as a version 2.0 notice document. A notice can be given
+ * a size limit, which is enforced as the document is written out: the error
+ * message is cut to an eighth of the limit, the backtrace keeps its first and
+ * last frames within half of what is left, and every var value is cut to a
+ * sixteenth of the limit. Vars are written in order of priority, params first,
+ * then session, then the notifier's own annotations and the environment, and
+ * those that no longer fit are dropped. What was cut is recorded in a
+ * {@value #TRUNCATED} var of the cgi-data.
+ */
+public class NoticeApi2 {
+
+	/** Bytes buffered before they are written to a stream. */
+	static final int BUFFER_SIZE = 4096;
+
+	/** No limit on the size of a notice. */
+	public static final int UNBOUNDED = 0;
+
+	/** The smallest size limit that leaves room for the parts of a notice that are never cut. */
+	public static final int MIN_MAX_BYTES = 4096;
+
+	/** A limit that suits most collectors, for those who turn the limit on; notices are not cut unless asked. */
+	public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+	/** The cgi-data var saying what was cut to keep a notice within its size limit. */
+	public static final String TRUNCATED = "hoptoad.truncated";
+
+	/** Room kept for closing markup and the {@value #TRUNCATED} var. */
+	private static final int RESERVE = 512;
+
+	/** A var value is dropped rather than cut shorter than this. */
+	private static final int MIN_VALUE_BYTES = 16;
+
+	private static final byte[] ELLIPSIS = XmlWriter.ascii("...");
+
+	private static final byte[] NOTICE_START = XmlWriter.ascii("<?xml version=\"1.0\"?><notice version=\"2.0.0\">");
+
+	private static final byte[] VAR_START = XmlWriter.ascii("<var key=\"");
+
+	private static final byte[] VAR_KEY_END = XmlWriter.ascii("\">");
+
+	private static final byte[] VAR_END = XmlWriter.ascii("</var>");
+
+	private static final Tag NOTICE = new Tag("notice");
+
+	private static final Tag API_KEY = new Tag("api-key");
+
+	private static final Tag NOTIFIER = new Tag("notifier");
+
+	private static final Tag NAME = new Tag("name");
+
+	private static final Tag VERSION = new Tag("version");
+
+	private static final Tag URL = new Tag("url");
+
+	private static final Tag ERROR = new Tag("error");
+
+	private static final Tag CLASS = new Tag("class");
+
+	private static final Tag MESSAGE = new Tag("message");
+
+	private static final Tag BACKTRACE = new Tag("backtrace");
+
+	private static final Tag REQUEST = new Tag("request");
+
+	private static final Tag COMPONENT = new Tag("component");
+
+	private static final Tag PARAMS = new Tag("params");
+
+	private static final Tag SESSION = new Tag("session");
+
+	private static final Tag CGI_DATA = new Tag("cgi-data");
+
+	private static final Tag SERVER_ENVIRONMENT = new Tag("server-environment");
+
+	private static final Tag PROJECT_ROOT = new Tag("project-root");
+
+	private static final Tag ENVIRONMENT_NAME = new Tag("environment-name");
+
+	private final XmlWriter out;
+
+	private final int maxBytes;
+
+	private long reserved;
+
+	private int messageCharsCut;
+
+	private int framesCut;
+
+	private int valuesCut;
+
+	private int varsDropped;
+
+	public NoticeApi2(HoptoadNotice notice) {
+		this(notice, UNBOUNDED);
+	}
+
+	public NoticeApi2(HoptoadNotice notice, int maxBytes) {
+		this.out = new XmlWriter(BUFFER_SIZE);
+		this.maxBytes = checkMaxBytes(maxBytes);
+		try {
+			write(notice);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Streams the notice into {@code stream} while it is being serialized, so
+	 * only a small fixed buffer is held in memory. The document is ASCII, with
+	 * everything else written as character references, and so also UTF-8. The
+	 * stream is flushed but not closed.
+	 */
+	public NoticeApi2(HoptoadNotice notice, OutputStream stream) throws IOException {
+		this(notice, stream, UNBOUNDED);
+	}
+
+	public NoticeApi2(HoptoadNotice notice, OutputStream stream, int maxBytes) throws IOException {
+		this.out = new XmlWriter(stream, BUFFER_SIZE);
+		this.maxBytes = checkMaxBytes(maxBytes);
+		write(notice);
+		out.flush();
+	}
+
+	public NoticeApi2(HoptoadNotice notice, WritableByteChannel channel) throws IOException {
+		this(notice, Channels.newOutputStream(channel));
+	}
+
+	static int checkMaxBytes(int maxBytes) {
+		if (maxBytes != UNBOUNDED && maxBytes < MIN_MAX_BYTES) throw new IllegalArgumentException("maxBytes must be " + UNBOUNDED + " or at least " + MIN_MAX_BYTES + ": " + maxBytes);
+		return maxBytes;
+	}
+
+	/** Writes the backtrace, leaving out frames from the middle if it does not fit in {@code allowance} bytes. */
+	private void backtrace(List<BacktraceLine> lines, long allowance) throws IOException {
+		final int[] sizes = new int[lines.size()];
+		long total = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = lines.get(i).xmlLength();
+			total += sizes[i];
+		}
+		if (total <= allowance) {
+			for (final BacktraceLine line : lines) {
+				line.writeXml(out);
+			}
+			return;
+		}
+
+		final long frames = allowance - BacktraceLine.omitted(sizes.length).xmlLength();
+		int head = 0;
+		long used = 0;
+		while (head < sizes.length && used + sizes[head] <= frames / 2) {
+			used += sizes[head++];
+		}
+		int tail = sizes.length;
+		while (tail > head && used + sizes[tail - 1] <= frames) {
+			used += sizes[--tail];
+		}
+		for (int i = 0; i < head; i++) {
+			lines.get(i).writeXml(out);
+		}
+		framesCut = tail - head;
+		BacktraceLine.omitted(framesCut).writeXml(out);
+		for (int i = tail; i < sizes.length; i++) {
+			lines.get(i).writeXml(out);
+		}
+	}
+
+	private boolean cut() {
+		return messageCharsCut + framesCut + valuesCut + varsDropped > 0;
+	}
+
+	/** What was cut, as the value of the {@value #TRUNCATED} var. */
+	private String cuts() {
+		final StringBuilder cuts = new StringBuilder(128);
+		if (messageCharsCut > 0) cuts.append(", ").append(messageCharsCut).append(" message chars");
+		if (framesCut > 0) cuts.append(", ").append(framesCut).append(" frames");
+		if (valuesCut > 0) cuts.append(", ").append(valuesCut).append(" values cut short");
+		if (varsDropped > 0) cuts.append(", ").append(varsDropped).append(" vars");
+		return cuts.substring(2);
+	}
+
+	/** Bytes left for the parts that can be cut, once what is still to come has been set aside. */
+	private long remaining() {
+		return maxBytes - reserved - out.written();
+	}
+
+	private void write(HoptoadNotice notice) throws IOException {
+		out.raw(NOTICE_START);
+		{
+			tag(API_KEY, notice.apiKey());
+
+			out.raw(NOTIFIER.open);
+			{
+				tag(NAME, "hoptoad");
+				tag(VERSION, "1.7-socrata-SNAPSHOT");
+				tag(URL, "http://hoptoad.googlecode.com");
+			}
+			out.raw(NOTIFIER.close);
+
+			out.raw(ERROR.open);
+			{
+				tag(CLASS, notice.errorClass());
+				if (maxBytes == UNBOUNDED) {
+					tag(MESSAGE, notice.errorMessage());
+
+					out.raw(BACKTRACE.open);
+					notice.backtrace().writeXml(out);
+					out.raw(BACKTRACE.close);
+				} else {
+					reserved = RESERVE + XmlWriter.escapedLength(notice.url()) + XmlWriter.escapedLength(notice.component()) + XmlWriter.escapedLength(notice.projectRoot()) + XmlWriter.escapedLength(notice.env());
+
+					out.raw(MESSAGE.open);
+					messageCharsCut = truncated(String.valueOf(notice.errorMessage()), Math.min(maxBytes / 8, remaining()));
+					out.raw(MESSAGE.close);
+
+					out.raw(BACKTRACE.open);
+					backtrace(notice.backtrace().lines(), remaining() / 2);
+					out.raw(BACKTRACE.close);
+				}
+			}
+			out.raw(ERROR.close);
+
+			final Map<String, Object> annotations = notice.annotations();
+			if (notice.hasRequest()) {
+				addRequest(notice, annotations);
+			} else if (!annotations.isEmpty() || cut()) {
+				out.raw(REQUEST.open);
+				{
+					tag(URL, "");
+					tag(COMPONENT, "");
+					vars(CGI_DATA, annotations);
+				}
+				out.raw(REQUEST.close);
+			}
+
+			out.raw(SERVER_ENVIRONMENT.open);
+			{
+				tag(PROJECT_ROOT, notice.projectRoot());
+				tag(ENVIRONMENT_NAME, notice.env());
+			}
+			out.raw(SERVER_ENVIRONMENT.close);
+		}
+		out.raw(NOTICE.close);
+	}
+
+	private void addRequest(HoptoadNotice notice, Map<String, Object> annotations) throws IOException {
+		out.raw(REQUEST.open);
+		{
+			tag(URL, notice.url());
+			tag(COMPONENT, notice.component());
+			vars(PARAMS, notice.request());
+			vars(SESSION, notice.session());
+			vars(CGI_DATA, cgiData(notice, annotations));
+		}
+		out.raw(REQUEST.close);
+	}
+
+	private Map<String, Object> cgiData(HoptoadNotice notice, Map<String, Object> annotations) {
+		if (annotations.isEmpty()) {
+			return notice.environment();
+		}
+		if (maxBytes != UNBOUNDED) {
+			final Map<String, Object> cgiData = new LinkedHashMap<String, Object>(annotations);
+			for (Entry<String, Object> var : notice.environment().entrySet()) {
+				if (!cgiData.containsKey(var.getKey())) cgiData.put(var.getKey(), var.getValue());
+			}
+			return cgiData;
+		}
+		final Map<String, Object> cgiData = new TreeMap<String, Object>(notice.environment());
+		cgiData.putAll(annotations);
+		return cgiData;
+	}
+
+	private void tag(Tag tag, String contents) throws IOException {
+		out.raw(tag.open).escaped(contents).raw(tag.close);
+	}
+
+	/**
+	 * Writes as much of {@code text} as escapes to {@code maxBytes}, ending it
+	 * with "..." if it had to be cut; returns the number of characters cut.
+	 */
+	private int truncated(String text, long maxBytes) throws IOException {
+		if (XmlWriter.escapedLength(text) <= maxBytes) {
+			out.escaped(text);
+			return 0;
+		}
+		final int kept = XmlWriter.fit(text, (int) Math.max(0, maxBytes - ELLIPSIS.length));
+		out.escaped(text.substring(0, kept)).raw(ELLIPSIS);
+		return text.length() - kept;
+	}
+
+	/** The serialized notice as bytes, when it was not streamed. */
+	byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	/** The serialized notice, when it was not streamed. */
+	public String toString() {
+		return out.toString();
+	}
+
+	private void vars(Tag section, Map<String, Object> vars) throws IOException {
+		if (vars.isEmpty() && !(section == CGI_DATA && cut())) {
+			return;
+		}
+
+		out.raw(section.open);
+		for (Entry<String, Object> var : vars.entrySet()) {
+			if (maxBytes == UNBOUNDED) {
+				out.raw(VAR_START).escaped(var.getKey()).raw(VAR_KEY_END);
+				out.escaped(String.valueOf(var.getValue()));
+				out.raw(VAR_END);
+			} else {
+				boundedVar(var.getKey(), String.valueOf(var.getValue()));
+			}
+		}
+		if (section == CGI_DATA && cut()) {
+			out.raw(VAR_START).escaped(TRUNCATED).raw(VAR_KEY_END).escaped(cuts()).raw(VAR_END);
+		}
+		out.raw(section.close);
+	}
+
+	/** Writes a var with its value cut to what is left, or drops it when too little is left. */
+	private void boundedVar(String key, String value) throws IOException {
+		final long room = remaining() - VAR_START.length - XmlWriter.escapedLength(key) - VAR_KEY_END.length - VAR_END.length;
+		if (room < MIN_VALUE_BYTES) {
+			varsDropped++;
+			return;
+		}
+		out.raw(VAR_START).escaped(key).raw(VAR_KEY_END);
+		if (truncated(value, Math.min(room, maxBytes / 16)) > 0) valuesCut++;
+		out.raw(VAR_END);
+	}
+
+	/** Opening and closing markup of an element, encoded once. */
+	private static class Tag {
+		final byte[] open;
+
+		final byte[] close;
+
+		Tag(String name) {
+			open = XmlWriter.ascii("<" + name + ">");
+			close = XmlWriter.ascii("</" + name + ">");
+		}
+	}
+}
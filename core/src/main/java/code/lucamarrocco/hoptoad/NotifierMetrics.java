@@ -0,0 +1,308 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.management.*;
+
+/**
+ * What a notifier has been doing: notices built, sent, failed, dropped and
+ * deduplicated, errors filtered or sampled out, the notices queued and the
+ * posts in flight, responses by status code, and how long building,
+ * serializing and sending took. Sends are counted by a {@link HoptoadNotifier}
+ * given these metrics; drops, deduplications and queued notices are read,
+ * when asked for, from the decorating notifiers passed to
+ * {@link #watch(HoptoadNotifier)}. The metrics can be registered as an MBean
+ * with {@link #register(String)}.
+ * <p>
+ * Serializing is timed while the notice is written out; when it is streamed
+ * into the connection this includes waiting for the connection to take it.
+ */
+public class NotifierMetrics {
+
+	public static final String DOMAIN = "code.lucamarrocco.hoptoad";
+
+	private static final int MAX_STATUS = 600;
+
+	private final AtomicLong built = new AtomicLong();
+
+	private final AtomicLong sent = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong filtered = new AtomicLong();
+
+	private final AtomicLong sampledOut = new AtomicLong();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+
+	private final LatencyHistogram buildLatency = new LatencyHistogram();
+
+	private final LatencyHistogram serializeLatency = new LatencyHistogram();
+
+	private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+	private final List<HoptoadNotifier> watched = new CopyOnWriteArrayList<HoptoadNotifier>();
+
+	private ObjectName registeredAs;
+
+	private static long micros(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	public long built() {
+		return built.get();
+	}
+
+	/** Counts a notice built in {@code nanos}. */
+	public void built(final long nanos) {
+		built.incrementAndGet();
+		buildLatency.record(nanos);
+	}
+
+	public LatencyHistogram buildLatency() {
+		return buildLatency;
+	}
+
+	/** Counts an error rejected by an {@link ErrorFilter}. */
+	void filtered() {
+		filtered.incrementAndGet();
+	}
+
+	/** Errors rejected by an {@link ErrorFilter} before anything was captured of them. */
+	public long filteredOut() {
+		return filtered.get();
+	}
+
+	/** Notices repeating one that was sent a moment before, which were counted instead of sent. */
+	public long deduplicated() {
+		long deduplicated = 0;
+		for (final HoptoadNotifier notifier : watched) {
+			if (notifier instanceof DeduplicatingHoptoadNotifier) deduplicated += ((DeduplicatingHoptoadNotifier) notifier).suppressed();
+		}
+		return deduplicated;
+	}
+
+	/** Notices discarded by a full queue or spool, a rate limit, or a delivery deadline. */
+	public long dropped() {
+		long dropped = 0;
+		for (final HoptoadNotifier notifier : watched) {
+			if (notifier instanceof AsyncHoptoadNotifier) dropped += ((AsyncHoptoadNotifier) notifier).dropped();
+			if (notifier instanceof ThreadPerNoticeHoptoadNotifier) dropped += ((ThreadPerNoticeHoptoadNotifier) notifier).dropped();
+			if (notifier instanceof SpoolingHoptoadNotifier) dropped += ((SpoolingHoptoadNotifier) notifier).dropped();
+			if (notifier instanceof RateLimitingHoptoadNotifier) dropped += ((RateLimitingHoptoadNotifier) notifier).suppressed();
+			if (notifier instanceof DeadlineHoptoadNotifier) dropped += ((DeadlineHoptoadNotifier) notifier).expired();
+			if (notifier instanceof SpoolingHoptoadNotifier) dropped += ((SpoolingHoptoadNotifier) notifier).expired();
+			if (notifier instanceof BatchingHoptoadNotifier) dropped += ((BatchingHoptoadNotifier) notifier).expired();
+		}
+		return dropped;
+	}
+
+	/** Posts that got no response or an error status. */
+	public long failed() {
+		return failed.get();
+	}
+
+	/** Counts a post that got no response after {@code nanos}. */
+	void failed(final long nanos) {
+		inFlight.decrementAndGet();
+		failed.incrementAndGet();
+		sendLatency.record(nanos);
+	}
+
+	public int inFlight() {
+		return inFlight.get();
+	}
+
+	/** Notices waiting in a queue for a sender. */
+	public long queueDepth() {
+		long queued = 0;
+		for (final HoptoadNotifier notifier : watched) {
+			if (notifier instanceof AsyncHoptoadNotifier) queued += ((AsyncHoptoadNotifier) notifier).queueDepth();
+		}
+		return queued;
+	}
+
+	/** Registers the metrics with the platform MBean server under {@code name}. */
+	public synchronized ObjectName register(final String name) throws JMException {
+		unregister();
+		final ObjectName objectName = new ObjectName(DOMAIN + ":type=NotifierMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(new View(), NotifierMetricsMBean.class), objectName);
+		registeredAs = objectName;
+		return objectName;
+	}
+
+	/** Counts a sampling decision, an error sampled out if {@code weight} is 0. */
+	void sampled(final double weight) {
+		if (weight == 0) sampledOut.incrementAndGet();
+	}
+
+	/** Errors dropped by a {@link SamplingPolicy} before their notice was built. */
+	public long sampledOut() {
+		return sampledOut.get();
+	}
+
+	/** Counts a post being started. */
+	void sending() {
+		inFlight.incrementAndGet();
+	}
+
+	/** Posts answered with a 2xx status. */
+	public long sent() {
+		return sent.get();
+	}
+
+	/** Counts a post answered with {@code statusCode} after {@code nanos}. */
+	void sent(final int statusCode, final long nanos) {
+		inFlight.decrementAndGet();
+		if (statusCode / 100 == 2) {
+			sent.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+		if (statusCode >= 0 && statusCode < MAX_STATUS) statuses.incrementAndGet(statusCode);
+		sendLatency.record(nanos);
+	}
+
+	public LatencyHistogram sendLatency() {
+		return sendLatency;
+	}
+
+	void serialized(final long nanos) {
+		serializeLatency.record(nanos);
+	}
+
+	public LatencyHistogram serializeLatency() {
+		return serializeLatency;
+	}
+
+	/** Responses with {@code statusCode}. */
+	public long status(final int statusCode) {
+		return statusCode >= 0 && statusCode < MAX_STATUS ? statuses.get(statusCode) : 0;
+	}
+
+	/** Responses by status code, for the codes seen. */
+	public SortedMap<Integer, Long> statusCounts() {
+		final SortedMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (int statusCode = 0; statusCode < MAX_STATUS; statusCode++) {
+			final long count = statuses.get(statusCode);
+			if (count > 0) counts.put(statusCode, count);
+		}
+		return counts;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (registeredAs == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+		} catch (final InstanceNotFoundException e) {
+			// unregistered by someone else
+		}
+		registeredAs = null;
+	}
+
+	/** Reads drop, deduplication and queue counts from {@code notifier} from now on, if it keeps any; returns the notifier. */
+	public <T extends HoptoadNotifier> T watch(final T notifier) {
+		watched.add(notifier);
+		return notifier;
+	}
+
+	private class View implements NotifierMetricsMBean {
+		public long getBuilt() {
+			return built();
+		}
+
+		public long getSent() {
+			return sent();
+		}
+
+		public long getFailed() {
+			return failed();
+		}
+
+		public long getDropped() {
+			return dropped();
+		}
+
+		public long getDeduplicated() {
+			return deduplicated();
+		}
+
+		public long getFilteredOut() {
+			return filteredOut();
+		}
+
+		public long getSampledOut() {
+			return sampledOut();
+		}
+
+		public long getQueueDepth() {
+			return queueDepth();
+		}
+
+		public int getInFlight() {
+			return inFlight();
+		}
+
+		public String getStatusCounts() {
+			final String counts = statusCounts().toString();
+			return counts.substring(1, counts.length() - 1);
+		}
+
+		public double getBuildMeanMicros() {
+			return buildLatency.meanNanos() / 1000;
+		}
+
+		public long getBuildMedianMicros() {
+			return micros(buildLatency.percentileNanos(0.5));
+		}
+
+		public long getBuild99thPercentileMicros() {
+			return micros(buildLatency.percentileNanos(0.99));
+		}
+
+		public long getBuildMaxMicros() {
+			return micros(buildLatency.maxNanos());
+		}
+
+		public double getSerializeMeanMicros() {
+			return serializeLatency.meanNanos() / 1000;
+		}
+
+		public long getSerializeMedianMicros() {
+			return micros(serializeLatency.percentileNanos(0.5));
+		}
+
+		public long getSerialize99thPercentileMicros() {
+			return micros(serializeLatency.percentileNanos(0.99));
+		}
+
+		public long getSerializeMaxMicros() {
+			return micros(serializeLatency.maxNanos());
+		}
+
+		public double getSendMeanMicros() {
+			return sendLatency.meanNanos() / 1000;
+		}
+
+		public long getSendMedianMicros() {
+			return micros(sendLatency.percentileNanos(0.5));
+		}
+
+		public long getSend99thPercentileMicros() {
+			return micros(sendLatency.percentileNanos(0.99));
+		}
+
+		public long getSendMaxMicros() {
+			return micros(sendLatency.maxNanos());
+		}
+	}
+}
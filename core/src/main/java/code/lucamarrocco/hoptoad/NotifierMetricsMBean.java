@@ -0,0 +1,54 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/** The JMX view of {@link NotifierMetrics}; latencies are in microseconds. */
+public interface NotifierMetricsMBean {
+
+	long getBuilt();
+
+	long getSent();
+
+	long getFailed();
+
+	long getDropped();
+
+	long getDeduplicated();
+
+	long getFilteredOut();
+
+	long getSampledOut();
+
+	long getQueueDepth();
+
+	int getInFlight();
+
+	/** Responses by HTTP status code, as "200=41, 503=2". */
+	String getStatusCounts();
+
+	double getBuildMeanMicros();
+
+	long getBuildMedianMicros();
+
+	long getBuild99thPercentileMicros();
+
+	long getBuildMaxMicros();
+
+	double getSerializeMeanMicros();
+
+	long getSerializeMedianMicros();
+
+	long getSerialize99thPercentileMicros();
+
+	long getSerializeMaxMicros();
+
+	double getSendMeanMicros();
+
+	long getSendMedianMicros();
+
+	long getSend99thPercentileMicros();
+
+	long getSendMaxMicros();
+}
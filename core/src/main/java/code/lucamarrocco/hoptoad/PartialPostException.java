@@ -0,0 +1,40 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+
+/**
+ * Thrown by {@link HoptoadTransport#post(java.net.URL, java.util.List)} when
+ * the post failed after some of the documents were answered. The status codes
+ * of those are kept; a document that got no answer has 0, and whether the
+ * collector saw it is not known.
+ */
+public class PartialPostException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int[] statusCodes;
+
+	public PartialPostException(final int[] statusCodes, final IOException failure) {
+		super(failure.getMessage());
+		initCause(failure);
+		this.statusCodes = statusCodes;
+	}
+
+	/** The exception of a failed post of documents, a {@link PartialPostException} if any of them were answered. */
+	static IOException of(final int[] statusCodes, final IOException failure) {
+		final IOException cause = failure instanceof PartialPostException ? (IOException) failure.getCause() : failure;
+		for (final int statusCode : statusCodes) {
+			if (statusCode != 0) return new PartialPostException(statusCodes, cause);
+		}
+		return cause;
+	}
+
+	/** The status code of each document posted, 0 for those that got no answer. */
+	public int[] statusCodes() {
+		return statusCodes;
+	}
+}
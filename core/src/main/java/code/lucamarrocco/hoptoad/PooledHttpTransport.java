@@ -0,0 +1,110 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import code.lucamarrocco.hoptoad.HttpConnectionPool.Lease;
+
+/**
+ * Transport that keeps HTTP/1.1 connections alive between notices, so a burst
+ * of errors pays for the TCP and TLS handshakes once per connection instead of
+ * once per notice. A post that fails on a pooled connection is sent again on
+ * a new one only if the server cannot have seen it, as when it had closed the
+ * idle connection; not after a read timeout or part of a response.
+ */
+public class PooledHttpTransport implements HoptoadTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+	public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 10000;
+
+	private final HttpConnectionPool pool;
+
+	public PooledHttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	public PooledHttpTransport(final int maxConnectionsPerHost, final long idleTimeoutMillis) {
+		this(maxConnectionsPerHost, idleTimeoutMillis, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	public PooledHttpTransport(final int maxConnectionsPerHost, final long idleTimeoutMillis, final int connectTimeoutMillis, final int readTimeoutMillis) {
+		this(maxConnectionsPerHost, idleTimeoutMillis, connectTimeoutMillis, readTimeoutMillis, false);
+	}
+
+	/** @param gzip send documents with {@code Content-Encoding: gzip} */
+	public PooledHttpTransport(final int maxConnectionsPerHost, final long idleTimeoutMillis, final int connectTimeoutMillis, final int readTimeoutMillis, final boolean gzip) {
+		if (connectTimeoutMillis < 1) throw new IllegalArgumentException("connectTimeoutMillis must be positive: " + connectTimeoutMillis);
+		if (readTimeoutMillis < 1) throw new IllegalArgumentException("readTimeoutMillis must be positive: " + readTimeoutMillis);
+
+		pool = new HttpConnectionPool(maxConnectionsPerHost, idleTimeoutMillis, DEFAULT_LEASE_TIMEOUT_MILLIS, connectTimeoutMillis, readTimeoutMillis, gzip);
+	}
+
+	public void close() {
+		pool.close();
+	}
+
+	/** Connections currently parked in the pool. */
+	public int idleConnections() {
+		return pool.idleConnections();
+	}
+
+	public int post(final URL url, final byte[] xml) throws IOException {
+		return post(url, Collections.singletonList(xml))[0];
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		final Lease lease = pool.lease(url, true);
+		try {
+			return lease.connection.post(url, xml);
+		} catch (final IOException e) {
+			// the server may have closed a connection while it sat in the pool
+			if (!lease.reused || !lease.connection.canResend(e)) throw e;
+		} finally {
+			pool.release(lease.connection);
+		}
+
+		final Lease fresh = pool.lease(url, false);
+		try {
+			return fresh.connection.post(url, xml);
+		} finally {
+			pool.release(fresh.connection);
+		}
+	}
+
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final int[] statusCodes = new int[xml.size()];
+		try {
+			boolean reuse = true;
+			for (int sent = 0; sent < statusCodes.length;) {
+				final Lease lease = pool.lease(url, reuse);
+				final int[] answered;
+				try {
+					answered = lease.connection.post(url, xml.subList(sent, statusCodes.length));
+				} catch (final PartialPostException e) {
+					System.arraycopy(e.statusCodes(), 0, statusCodes, sent, e.statusCodes().length);
+					throw e;
+				} catch (final IOException e) {
+					// the server may have closed a connection while it sat in the pool
+					if (!lease.reused || !lease.connection.canResend(e)) throw e;
+					reuse = false;
+					continue;
+				} finally {
+					pool.release(lease.connection);
+				}
+				System.arraycopy(answered, 0, statusCodes, sent, answered.length);
+				sent += answered.length;
+			}
+		} catch (final IOException e) {
+			throw PartialPostException.of(statusCodes, e);
+		}
+		return statusCodes;
+	}
+}
@@ -0,0 +1,96 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Passes notices on only while both the global {@link TokenBucket} and the
+ * bucket of the notice's error class have a token; either limit is switched
+ * off with a rate of 0. A notice the global bucket refuses gives its error
+ * class's token back, and one its class refuses takes no global token. Refused notices are counted, and the next notice let
+ * through carries the number refused since the previous one as the
+ * {@value #SUPPRESSED} annotation.
+ */
+public class RateLimitingHoptoadNotifier extends HoptoadNotifier {
+
+	public static final String SUPPRESSED = "hoptoad.suppressed";
+
+	public static final int DEFAULT_BURST = 10;
+
+	private static final int MAX_ERROR_CLASSES = 1024;
+
+	private final HoptoadNotifier delegate;
+
+	private final TokenBucket global;
+
+	private final double errorClassPerSecond;
+
+	private final int errorClassBurst;
+
+	private final ConcurrentMap<String, TokenBucket> errorClasses = new ConcurrentHashMap<String, TokenBucket>();
+
+	private final AtomicLong suppressedSinceLastNotice = new AtomicLong();
+
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * @param perSecond global refill rate, or 0 for no global limit
+	 * @param errorClassPerSecond refill rate of each error class, or 0 for no
+	 *            limit per error class
+	 */
+	public RateLimitingHoptoadNotifier(final HoptoadNotifier delegate, final double perSecond, final int burst, final double errorClassPerSecond, final int errorClassBurst) {
+		if (errorClassPerSecond > 0 && errorClassBurst < 1) throw new IllegalArgumentException("errorClassBurst must be positive: " + errorClassBurst);
+
+		this.delegate = delegate;
+		this.global = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+		this.errorClassPerSecond = errorClassPerSecond;
+		this.errorClassBurst = errorClassBurst;
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	private TokenBucket errorClass(final HoptoadNotice notice) {
+		final String errorClass = String.valueOf(notice.errorClass());
+		TokenBucket bucket = errorClasses.get(errorClass);
+		if (bucket == null) {
+			if (errorClasses.size() >= MAX_ERROR_CLASSES) errorClasses.clear();
+			final TokenBucket created = new TokenBucket(errorClassPerSecond, errorClassBurst);
+			bucket = errorClasses.putIfAbsent(errorClass, created);
+			if (bucket == null) bucket = created;
+		}
+		return bucket;
+	}
+
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		final TokenBucket errorClass = errorClassPerSecond > 0 ? errorClass(notice) : null;
+		if (errorClass != null && !errorClass.tryAcquire()) return suppress();
+		if (global != null && !global.tryAcquire()) {
+			// the notice is not sent, so it must not use up its class's budget
+			if (errorClass != null) errorClass.release();
+			return suppress();
+		}
+
+		final long refused = suppressedSinceLastNotice.getAndSet(0);
+		if (refused > 0) notice.annotate(SUPPRESSED, refused);
+		return delegate.notify(notice);
+	}
+
+	private int suppress() {
+		suppressedSinceLastNotice.incrementAndGet();
+		suppressed.incrementAndGet();
+		return 0;
+	}
+
+	/** Notices refused since this notifier was created. */
+	public long suppressed() {
+		return suppressed.get();
+	}
+}
@@ -0,0 +1,49 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+
+/**
+ * Keeps the errors of every {@link Fingerprint} in a window as a reservoir
+ * of {@code size} would admit them: the first {@code size} always, the
+ * {@code i}th after them with probability {@code size/i} and a weight of
+ * {@code i/size}. A reservoir replaces what it admitted earlier, but a notice
+ * cannot be taken back once sent, so every admitted error is sent; the
+ * weights keep the estimated count unbiased, and a window of {@code m}
+ * errors sends about {@code size * (1 + ln(m/size))} notices.
+ */
+public class ReservoirSamplingPolicy extends WindowedSamplingPolicy {
+
+	private final int size;
+
+	private final int frames;
+
+	private final Random random;
+
+	public ReservoirSamplingPolicy(final int size) {
+		this(size, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_KEYS, Fingerprint.DEFAULT_FRAMES, new Random());
+	}
+
+	public ReservoirSamplingPolicy(final int size, final long windowMillis, final int maxKeys, final int frames, final Random random) {
+		super(windowMillis, maxKeys);
+		if (size < 1) throw new IllegalArgumentException("size must be positive: " + size);
+
+		this.size = size;
+		this.frames = frames;
+		this.random = random;
+	}
+
+	@Override
+	protected Object key(final Throwable throwable) {
+		return Fingerprint.of(throwable, frames);
+	}
+
+	@Override
+	protected double weigh(final long seen) {
+		if (seen <= size) return 1;
+		return random.nextDouble() * seen < size ? (double) seen / size : 0;
+	}
+}
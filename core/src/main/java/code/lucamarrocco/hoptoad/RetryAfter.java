@@ -0,0 +1,53 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * The {@code Retry-After} of the last response a transport read on the current
+ * thread. {@link HoptoadTransport} only hands back status codes, so transports
+ * record the header here and {@link RetryingTransport} takes it after each
+ * attempt.
+ */
+class RetryAfter {
+
+	private static final ThreadLocal<Long> LAST = new ThreadLocal<Long>();
+
+	/** Delay in milliseconds asked for by a {@code Retry-After} value, or -1 if it cannot be read. */
+	static long parse(final String value, final long now) {
+		if (value == null) return -1;
+		final String trimmed = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(trimmed) * 1000);
+		} catch (final NumberFormatException e) {}
+
+		final SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			return Math.max(0, httpDate.parse(trimmed).getTime() - now);
+		} catch (final ParseException e) {
+			return -1;
+		}
+	}
+
+	/** Records the header of a response; a null value clears what an earlier response left. */
+	static void record(final String value) {
+		final long millis = parse(value, System.currentTimeMillis());
+		if (millis < 0) {
+			LAST.remove();
+		} else {
+			LAST.set(millis);
+		}
+	}
+
+	/** The recorded delay in milliseconds, or -1 if the last response did not ask for one. */
+	static long take() {
+		final Long millis = LAST.get();
+		LAST.remove();
+		return millis == null ? -1 : millis;
+	}
+}
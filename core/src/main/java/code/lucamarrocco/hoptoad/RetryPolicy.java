@@ -0,0 +1,75 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+
+/**
+ * How often and how long to wait before posting a notice again. The wait
+ * before retry {@code n} is drawn uniformly between 0 and
+ * {@code baseDelayMillis * 2^n}, capped at {@code maxDelayMillis} ("full
+ * jitter"), so clients that failed together do not come back together. A
+ * {@code Retry-After} from the server is waited for instead when it is longer;
+ * when it is longer than {@code maxDelayMillis} the notice is not retried.
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 10 * 1000;
+
+	private final int maxAttempts;
+
+	private final long baseDelayMillis;
+
+	private final long maxDelayMillis;
+
+	private final Random random;
+
+	public RetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis) {
+		this(maxAttempts, baseDelayMillis, maxDelayMillis, new Random());
+	}
+
+	RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis, final Random random) {
+		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+		if (baseDelayMillis < 0) throw new IllegalArgumentException("baseDelayMillis must not be negative: " + baseDelayMillis);
+		if (maxDelayMillis < baseDelayMillis) throw new IllegalArgumentException("maxDelayMillis must not be less than baseDelayMillis: " + maxDelayMillis);
+
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.random = random;
+	}
+
+	/** Connection failures aside, only 5xx, 408 and 429 responses are worth posting again. */
+	public static boolean isRetryable(final int statusCode) {
+		return statusCode / 100 == 5 || statusCode == 408 || statusCode == 429;
+	}
+
+	/**
+	 * Milliseconds to wait before the attempt after {@code attempt} (counted
+	 * from 1), or -1 if there should be none.
+	 *
+	 * @param retryAfterMillis the delay the server asked for, or -1
+	 */
+	public long delayMillis(final int attempt, final long retryAfterMillis) {
+		if (attempt >= maxAttempts || retryAfterMillis > maxDelayMillis) return -1;
+
+		final long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+		final long cap = ceiling < 0 || ceiling > maxDelayMillis ? maxDelayMillis : ceiling;
+		final long jitter = cap == 0 ? 0 : (long) (random.nextDouble() * (cap + 1));
+		return Math.max(jitter, retryAfterMillis);
+	}
+
+	public int maxAttempts() {
+		return maxAttempts;
+	}
+}
@@ -0,0 +1,195 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Posts through another transport, retrying connection failures and
+ * retryable responses as the {@link RetryPolicy} says, behind a
+ * {@link CircuitBreaker}. While the breaker is open nothing is posted or
+ * waited for: a {@link CircuitOpenException} is thrown straight away.
+ * <p>
+ * A response that is not retryable, 4xx included, shows the collector is up
+ * and counts as a success for the breaker; an attempt that throws, whatever
+ * it throws, counts as a failure. No attempt is made after the
+ * {@link Deadline} of the posting thread; the last answer stands instead.
+ */
+public class RetryingTransport implements HoptoadTransport {
+
+	private final HoptoadTransport delegate;
+
+	private final RetryPolicy policy;
+
+	private final CircuitBreaker breaker;
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong abandoned = new AtomicLong();
+
+	public RetryingTransport(final HoptoadTransport delegate) {
+		this(delegate, new RetryPolicy(), new CircuitBreaker());
+	}
+
+	public RetryingTransport(final HoptoadTransport delegate, final RetryPolicy policy, final CircuitBreaker breaker) {
+		this.delegate = delegate;
+		this.policy = policy;
+		this.breaker = breaker;
+	}
+
+	/** Posts that were not retried any further because the next attempt would have come after the deadline. */
+	public long abandoned() {
+		return abandoned.get();
+	}
+
+	private void allowRequest(final URL url) throws CircuitOpenException {
+		if (!breaker.allowRequest()) throw new CircuitOpenException("circuit open, not posting to " + url);
+	}
+
+	public CircuitBreaker breaker() {
+		return breaker;
+	}
+
+	public void close() {
+		delegate.close();
+	}
+
+	/** Whether an attempt made after waiting {@code delay} would start past the posting thread's deadline. */
+	private boolean isPastDeadlineAfter(final long delay) {
+		final long deliverBy = Deadline.current();
+		if (deliverBy == Deadline.NONE || !Deadline.passed(deliverBy, System.currentTimeMillis() + delay)) return false;
+		abandoned.incrementAndGet();
+		return true;
+	}
+
+	public int post(final URL url, final byte[] xml) throws IOException {
+		return post(url, new Attempt() {
+			public int post() throws IOException {
+				return delegate.post(url, xml);
+			}
+		});
+	}
+
+	private int post(final URL url, final Attempt attempt) throws IOException {
+		for (int attempts = 1;; attempts++) {
+			allowRequest(url);
+			RetryAfter.take();
+
+			long delay;
+			try {
+				final int statusCode = attempt.post();
+				if (!RetryPolicy.isRetryable(statusCode)) {
+					breaker.onSuccess();
+					return statusCode;
+				}
+				breaker.onFailure();
+				delay = policy.delayMillis(attempts, RetryAfter.take());
+				if (delay < 0 || isPastDeadlineAfter(delay)) return statusCode;
+			} catch (final IOException e) {
+				breaker.onFailure();
+				delay = policy.delayMillis(attempts, -1);
+				if (delay < 0 || isPastDeadlineAfter(delay)) throw e;
+			} catch (final RuntimeException e) {
+				// settles the trial of a half open breaker, which would otherwise refuse every post from now on
+				breaker.onFailure();
+				throw e;
+			}
+			retries.incrementAndGet();
+			sleep(delay);
+		}
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		return post(url, new Attempt() {
+			public int post() throws IOException {
+				return delegate.post(url, xml);
+			}
+		});
+	}
+
+	/**
+	 * Posts the documents and posts again only those whose response was
+	 * retryable or that got no answer; documents already answered are not
+	 * posted again, so a post failing part way does not deliver them twice.
+	 */
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final int[] statusCodes = new int[xml.size()];
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int i = 0; i < statusCodes.length; i++) {
+			pending.add(i);
+		}
+
+		for (int attempts = 1;; attempts++) {
+			try {
+				allowRequest(url);
+			} catch (final CircuitOpenException e) {
+				throw PartialPostException.of(statusCodes, e);
+			}
+			RetryAfter.take();
+
+			final List<byte[]> documents = new ArrayList<byte[]>(pending.size());
+			for (final Integer index : pending) {
+				documents.add(xml.get(index));
+			}
+
+			int[] answered;
+			IOException failure = null;
+			try {
+				answered = delegate.post(url, documents);
+			} catch (final PartialPostException e) {
+				answered = e.statusCodes();
+				failure = e;
+			} catch (final IOException e) {
+				answered = new int[documents.size()];
+				failure = e;
+			} catch (final RuntimeException e) {
+				// settles the trial of a half open breaker, which would otherwise refuse every post from now on
+				breaker.onFailure();
+				throw e;
+			}
+
+			final List<Integer> retryable = new ArrayList<Integer>();
+			for (int i = 0; i < answered.length; i++) {
+				statusCodes[pending.get(i)] = answered[i];
+				if (answered[i] == 0 || RetryPolicy.isRetryable(answered[i])) retryable.add(pending.get(i));
+			}
+			if (retryable.size() < answered.length) {
+				breaker.onSuccess();
+			} else {
+				breaker.onFailure();
+			}
+			if (retryable.isEmpty()) return statusCodes;
+			final long delay = policy.delayMillis(attempts, RetryAfter.take());
+			if (delay < 0 || isPastDeadlineAfter(delay)) {
+				if (failure != null) throw PartialPostException.of(statusCodes, failure);
+				return statusCodes;
+			}
+			pending = retryable;
+			retries.incrementAndGet();
+			sleep(delay);
+		}
+	}
+
+	/** Attempts made after a first one failed. */
+	public long retries() {
+		return retries.get();
+	}
+
+	protected void sleep(final long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting to retry");
+		}
+	}
+
+	private interface Attempt {
+		int post() throws IOException;
+	}
+}
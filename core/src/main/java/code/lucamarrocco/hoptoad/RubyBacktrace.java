@@ -4,7 +4,6 @@
 
 package code.lucamarrocco.hoptoad;
 
-import java.text.*;
 import java.util.*;
 
 public class RubyBacktrace extends Backtrace {
@@ -27,18 +26,21 @@ public class RubyBacktrace extends Backtrace {
 	}
 
 	@Override
-	protected String toBacktrace(final String className, final String fileName, final int lineNumber, final String methodName) {
+	protected void appendBacktrace(final StringBuilder out, final String className, final String fileName, final int lineNumber, final String methodName) {
 		String filteredFileName = fileName;
 		if (filteredFileName != null)
 		{
-			filteredFileName = filteredFileName.replaceAll(".java$", "");
+			if (filteredFileName.endsWith(".java")) filteredFileName = filteredFileName.substring(0, filteredFileName.length() - 5);
 		}
 		else
 		{
 			filteredFileName = "";
 		}
-		if (className.matches(".*\\." + filteredFileName)) return MessageFormat.format("at {0}.java:{1}:in `{2}''", className, lineNumber, methodName);
-		return MessageFormat.format("at {0}, {1}:{2}:in `{3}''", className, fileName, lineNumber, methodName);
+		if (className.endsWith("." + filteredFileName)) {
+			out.append("at ").append(className).append(".java:").append(lineNumber).append(":in `").append(methodName).append('\'');
+		} else {
+			out.append("at ").append(className).append(", ").append(fileName).append(':').append(lineNumber).append(":in `").append(methodName).append('\'');
+		}
 	}
 
 }
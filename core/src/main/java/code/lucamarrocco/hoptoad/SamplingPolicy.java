@@ -0,0 +1,20 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * Decides whether an error is notified before its notice is built, so an
+ * error sampled out costs no backtrace filtering or serialization. A notice
+ * that is kept carries its weight, the number of errors it stands for, as
+ * the {@value #WEIGHT} annotation; summing the weights estimates how many
+ * errors there were.
+ */
+public interface SamplingPolicy {
+
+	String WEIGHT = "hoptoad.sample_weight";
+
+	/** The weight of a notice of {@code throwable}, seen at {@code now}, or 0 to drop it. */
+	double sample(Throwable throwable, long now);
+}
@@ -0,0 +1,315 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * An append-only queue of byte records kept in fixed-size, memory-mapped
+ * segment files. Appending is a copy into the mapping; the page cache writes
+ * it out, so records survive the JVM crashing without an fsync per record.
+ * <p>
+ * A record is a state byte, the payload length, a CRC32 of the payload and the
+ * payload. The state byte is written last, so a record torn by a crash reads
+ * as the end of the segment, and it is set to acknowledged once the record has
+ * been delivered. A segment is deleted once every record in it is
+ * acknowledged and a newer segment is being written. When {@code maxSegments}
+ * are in use, appends are refused; a segment file that could not be deleted
+ * still counts until it is.
+ * <p>
+ * Segments left by a run with another segment size are replayed at their own
+ * size and deleted like any other.
+ */
+class Spool {
+
+	private static final byte EMPTY = 0;
+
+	private static final byte PENDING = 1;
+
+	private static final byte ACKNOWLEDGED = 2;
+
+	private static final int HEADER = 9;
+
+	private static final String PREFIX = "hoptoad-";
+
+	private static final String SUFFIX = ".spool";
+
+	private final File directory;
+
+	private final int segmentBytes;
+
+	private final int maxSegments;
+
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+	/** Files of deleted segments that the file system would not remove yet. */
+	private final List<File> undeleted = new ArrayList<File>();
+
+	private long nextSequence;
+
+	private boolean closed;
+
+	/** Read position of the oldest segment. */
+	private int readOffset;
+
+	Spool(final File directory, final int segmentBytes, final int maxSegments) throws IOException {
+		if (segmentBytes <= HEADER) throw new IllegalArgumentException("segmentBytes too small: " + segmentBytes);
+		if (maxSegments < 1) throw new IllegalArgumentException("maxSegments must be positive: " + maxSegments);
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create spool directory " + directory);
+
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxSegments = maxSegments;
+		recover();
+	}
+
+	private static int crc(final byte[] payload) {
+		final CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+	/** Marks the record delivered; the drainer acknowledges records in the order {@link #next()} returned them. */
+	synchronized void acknowledge(final Record record) {
+		if (segments.isEmpty() || segments.getFirst() != record.segment) return;
+		record.segment.buffer.put(record.offset, ACKNOWLEDGED);
+		record.segment.pending--;
+		readOffset = record.offset + HEADER + record.payload.length;
+	}
+
+	/** Appends the record, or returns false if it does not fit in a segment or the spool is full. */
+	synchronized boolean append(final byte[] payload) throws IOException {
+		final int length = HEADER + payload.length;
+		if (closed || length > segmentBytes) return false;
+
+		Segment segment = segments.isEmpty() ? null : segments.getLast();
+		if (segment == null || segment.sealed || segment.writeOffset + length > segment.size) {
+			if (segments.size() + undeleted() >= maxSegments) return false;
+			if (segment != null) segment.sealed = true;
+			segment = newSegment();
+		}
+
+		final int offset = segment.writeOffset;
+		final ByteBuffer buffer = segment.buffer;
+		buffer.putInt(offset + 1, payload.length);
+		buffer.putInt(offset + 5, crc(payload));
+		final ByteBuffer target = buffer.duplicate();
+		target.position(offset + HEADER);
+		target.put(payload);
+		buffer.put(offset, PENDING);
+		segment.writeOffset = offset + length;
+		segment.pending++;
+		return true;
+	}
+
+	/** Forces the segments to disk and unmaps them. */
+	synchronized void close() {
+		closed = true;
+		for (final Segment segment : segments) {
+			segment.buffer.force();
+			unmap(segment.buffer);
+		}
+		segments.clear();
+	}
+
+	private void deleteOldest() {
+		final Segment segment = segments.removeFirst();
+		readOffset = 0;
+		unmap(segment.buffer);
+		if (!segment.file.delete()) {
+			segment.file.deleteOnExit();
+			undeleted.add(segment.file);
+		}
+	}
+
+	/** Files of deleted segments that are still on disk, after trying to remove them again. */
+	private int undeleted() {
+		for (final Iterator<File> files = undeleted.iterator(); files.hasNext();) {
+			final File file = files.next();
+			if (file.delete() || !file.exists()) files.remove();
+		}
+		return undeleted.size();
+	}
+
+	/**
+	 * Releases the mapping now rather than when the buffer is collected, which
+	 * is what lets a mapped file be deleted on Windows. Goes through
+	 * {@code sun.misc.Unsafe.invokeCleaner} or, before Java 9, the buffer's
+	 * cleaner; where neither can be reached the mapping stays until collected.
+	 * The buffer must not be touched afterwards.
+	 */
+	private static void unmap(final MappedByteBuffer buffer) {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+		} catch (final NoSuchMethodException e) {
+			try {
+				final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				final Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+			} catch (final Exception notAvailable) {}
+		} catch (final Exception notAvailable) {}
+	}
+
+	private Segment map(final File file, final int size) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			return new Segment(file, raf.getChannel().map(MapMode.READ_WRITE, 0, size));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private Segment newSegment() throws IOException {
+		final Segment segment = map(new File(directory, String.format("%s%020d%s", PREFIX, nextSequence++, SUFFIX)), segmentBytes);
+		segments.add(segment);
+		return segment;
+	}
+
+	/**
+	 * The oldest record that was not acknowledged, or null if there is none.
+	 * Fully acknowledged segments are deleted on the way.
+	 */
+	synchronized Record next() {
+		while (!segments.isEmpty()) {
+			final Segment segment = segments.getFirst();
+			final ByteBuffer buffer = segment.buffer;
+			while (readOffset + HEADER <= segment.size) {
+				final byte state = buffer.get(readOffset);
+				if (state == EMPTY) break;
+
+				final int length = buffer.getInt(readOffset + 1);
+				if (length < 0 || readOffset + HEADER + length > segment.size) break;
+				if (state == PENDING) {
+					final byte[] payload = payload(buffer, readOffset, length);
+					if (crc(payload) != buffer.getInt(readOffset + 5)) break;
+					return new Record(segment, readOffset, payload);
+				}
+				readOffset += HEADER + length;
+			}
+			if (segment == segments.getLast() && !segment.sealed) return null;
+			deleteOldest();
+		}
+		return null;
+	}
+
+	private static byte[] payload(final ByteBuffer buffer, final int offset, final int length) {
+		final byte[] payload = new byte[length];
+		final ByteBuffer source = buffer.duplicate();
+		source.position(offset + HEADER);
+		source.get(payload);
+		return payload;
+	}
+
+	/** Records appended and not acknowledged yet. */
+	synchronized int pending() {
+		int pending = 0;
+		for (final Segment segment : segments) {
+			pending += segment.pending;
+		}
+		return pending;
+	}
+
+	/**
+	 * Picks up the segments left by a previous run, oldest first, whatever
+	 * segment size they were written with. A file too large to map is left
+	 * alone and reported.
+	 */
+	private void recover() throws IOException {
+		final File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(final File dir, final String name) {
+				return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+			}
+		});
+		if (files == null) return;
+		Arrays.sort(files);
+
+		for (final File file : files) {
+			if (file.length() > Integer.MAX_VALUE) {
+				System.err.println("hoptoad spool file " + file + " is too large to replay, leaving it alone");
+				continue;
+			}
+			final Segment segment = map(file, (int) file.length());
+			segment.sealed = true;
+			segment.writeOffset = scan(segment);
+			segments.add(segment);
+			try {
+				nextSequence = Math.max(nextSequence, Long.parseLong(file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length())) + 1);
+			} catch (final NumberFormatException e) {}
+		}
+	}
+
+	/** Counts the intact pending records of a recovered segment and returns where they end. */
+	private int scan(final Segment segment) {
+		final ByteBuffer buffer = segment.buffer;
+		int offset = 0;
+		while (offset + HEADER <= segment.size) {
+			final byte state = buffer.get(offset);
+			if (state != PENDING && state != ACKNOWLEDGED) break;
+			final int length = buffer.getInt(offset + 1);
+			if (length < 0 || offset + HEADER + length > segment.size) break;
+			if (state == PENDING) {
+				if (crc(payload(buffer, offset, length)) != buffer.getInt(offset + 5)) break;
+				segment.pending++;
+			}
+			offset += HEADER + length;
+		}
+		return offset;
+	}
+
+	/** Spool files, oldest first; exposed for unit testing. */
+	synchronized List<File> files() {
+		final List<File> files = new ArrayList<File>();
+		for (final Segment segment : segments) {
+			files.add(segment.file);
+		}
+		return files;
+	}
+
+	static class Record {
+		private final Segment segment;
+
+		private final int offset;
+
+		final byte[] payload;
+
+		Record(final Segment segment, final int offset, final byte[] payload) {
+			this.segment = segment;
+			this.offset = offset;
+			this.payload = payload;
+		}
+	}
+
+	private static class Segment {
+		final File file;
+
+		final MappedByteBuffer buffer;
+
+		/** The size of the file, which is the spool's segment size unless it was recovered from a run with another. */
+		final int size;
+
+		int writeOffset;
+
+		int pending;
+
+		/** No more records go into a recovered segment, or one that has been rolled over. */
+		boolean sealed;
+
+		Segment(final File file, final MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+			this.size = buffer.capacity();
+		}
+	}
+}
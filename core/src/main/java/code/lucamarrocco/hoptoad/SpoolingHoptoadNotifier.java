@@ -0,0 +1,226 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Keeps notices that could not be delivered in an on-disk {@link Spool} and
+ * replays them from a background drainer once Hoptoad answers again. A notice
+ * is posted directly while the spool is empty; once something is spooled, new
+ * notices are appended behind it so they go out in order. A failed replay is
+ * retried after a delay that doubles up to {@link #MAX_RETRY_MILLIS}.
+ * <p>
+ * Connection failures, 5xx, 408 and 429 responses are worth retrying; any
+ * other response means Hoptoad has seen the notice, and it is not spooled.
+ * <p>
+ * A notice handed over with a {@link Deadline} is spooled with it, and
+ * dropped instead of replayed once the deadline has passed.
+ */
+public class SpoolingHoptoadNotifier extends HoptoadNotifier {
+
+	public static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+
+	public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+	public static final long DEFAULT_RETRY_MILLIS = 1000;
+
+	public static final long MAX_RETRY_MILLIS = 60 * 1000;
+
+	/** Starts a spooled notice that carries a deadline; a bare document starts with '&lt;'. */
+	private static final byte WITH_DEADLINE = 1;
+
+	private static final int DEADLINE_BYTES = 9;
+
+	private final HoptoadNotifier delegate;
+
+	private final Spool spool;
+
+	private final long retryMillis;
+
+	private final Thread drainer;
+
+	private final AtomicLong spooled = new AtomicLong();
+
+	private final AtomicLong replayed = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong expired = new AtomicLong();
+
+	private volatile boolean closed;
+
+	public SpoolingHoptoadNotifier(final HoptoadNotifier delegate, final File directory) throws IOException {
+		this(delegate, directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS, DEFAULT_RETRY_MILLIS);
+	}
+
+	/**
+	 * @param maxSegments caps the disk used by the spool at
+	 *            {@code segmentBytes * maxSegments}
+	 */
+	public SpoolingHoptoadNotifier(final HoptoadNotifier delegate, final File directory, final int segmentBytes, final int maxSegments, final long retryMillis) throws IOException {
+		this.delegate = delegate;
+		this.spool = new Spool(directory, segmentBytes, maxSegments);
+		this.retryMillis = Math.max(retryMillis, 1);
+
+		drainer = new Thread(new Drainer(), "hoptoad-spool-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/** Stops the drainer and closes the spool; what is left in it is replayed by the next notifier using the directory. */
+	@Override
+	public void close() {
+		closed = true;
+		drainer.interrupt();
+		try {
+			drainer.join(MAX_RETRY_MILLIS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		spool.close();
+		delegate.close();
+	}
+
+	/** The deadline a spooled notice was given, or {@link Deadline#NONE}. */
+	private static long deliverBy(final byte[] payload) {
+		if (payload.length < DEADLINE_BYTES || payload[0] != WITH_DEADLINE) return Deadline.NONE;
+		long deliverBy = 0;
+		for (int i = 1; i < DEADLINE_BYTES; i++) {
+			deliverBy = deliverBy << 8 | payload[i] & 0xff;
+		}
+		return deliverBy;
+	}
+
+	/** Notices that were neither delivered nor spooled, because the spool was full or the notice larger than a segment. */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/** Notices not spooled, or not replayed, because they were past their deadline. */
+	public long expired() {
+		return expired.get();
+	}
+
+	/**
+	 * Posts the notice if nothing is waiting in the spool, and spools it if that
+	 * is not possible. Returns the status code of a direct post, 0 otherwise.
+	 */
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		final byte[] xml;
+		try {
+			xml = delegate.toXml(notice);
+		} catch (final IOException e) {
+			dropped.incrementAndGet();
+			return 0;
+		}
+
+		if (spool.pending() == 0) {
+			try {
+				final int statusCode = post(xml);
+				if (!RetryPolicy.isRetryable(statusCode)) return statusCode;
+			} catch (final IOException e) {}
+		}
+
+		final long deliverBy = Deadline.current();
+		if (Deadline.passed(deliverBy, System.currentTimeMillis())) {
+			expired.incrementAndGet();
+			return 0;
+		}
+		try {
+			if (spool.append(payload(xml, deliverBy))) {
+				spooled.incrementAndGet();
+				return 0;
+			}
+		} catch (final IOException e) {
+			// not spooled, counted as dropped
+		}
+		dropped.incrementAndGet();
+		return 0;
+	}
+
+	/** The notice as it is spooled, behind its deadline if it has one. */
+	private static byte[] payload(final byte[] xml, final long deliverBy) {
+		if (deliverBy == Deadline.NONE) return xml;
+		final byte[] payload = new byte[DEADLINE_BYTES + xml.length];
+		payload[0] = WITH_DEADLINE;
+		for (int i = DEADLINE_BYTES - 1; i > 0; i--) {
+			payload[i] = (byte) (deliverBy >>> 8 * (DEADLINE_BYTES - 1 - i));
+		}
+		System.arraycopy(xml, 0, payload, DEADLINE_BYTES, xml.length);
+		return payload;
+	}
+
+	/** Notices waiting in the spool. */
+	public int pending() {
+		return spool.pending();
+	}
+
+	private int post(final byte[] xml) throws IOException {
+		return delegate.transport().post(delegate.url(), xml);
+	}
+
+	/** Spooled notices that have since been delivered. */
+	public long replayed() {
+		return replayed.get();
+	}
+
+	/** Notices written to the spool. */
+	public long spooled() {
+		return spooled.get();
+	}
+
+	// exposed for unit testing
+	Spool spool() {
+		return spool;
+	}
+
+	/** The document of a spooled notice. */
+	private static byte[] xml(final byte[] payload) {
+		if (deliverBy(payload) == Deadline.NONE) return payload;
+		final byte[] xml = new byte[payload.length - DEADLINE_BYTES];
+		System.arraycopy(payload, DEADLINE_BYTES, xml, 0, xml.length);
+		return xml;
+	}
+
+	private class Drainer implements Runnable {
+		/** Replays spooled notices in order and returns false at the first one that has to be retried. */
+		private boolean drain() {
+			for (Spool.Record record; !closed && (record = spool.next()) != null;) {
+				final long deliverBy = deliverBy(record.payload);
+				if (Deadline.passed(deliverBy, System.currentTimeMillis())) {
+					spool.acknowledge(record);
+					expired.incrementAndGet();
+					continue;
+				}
+				final long previous = Deadline.set(deliverBy);
+				try {
+					if (RetryPolicy.isRetryable(post(xml(record.payload)))) return false;
+				} catch (final IOException e) {
+					return false;
+				} finally {
+					Deadline.set(previous);
+				}
+				spool.acknowledge(record);
+				replayed.incrementAndGet();
+			}
+			return true;
+		}
+
+		public void run() {
+			long delay = retryMillis;
+			while (!closed) {
+				try {
+					Thread.sleep(delay);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				delay = drain() ? retryMillis : Math.min(delay * 2, MAX_RETRY_MILLIS);
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.regex.*;
+
+/**
+ * The system properties, minus those matched by a list of environment filters,
+ * as an immutable map shared by every notice. The snapshot is taken again when
+ * the filters differ, when {@link System#setProperties(Properties)} replaced
+ * the properties, when their number changed, or at the latest after
+ * {@link #TTL_MILLIS}, which catches a value being changed in place.
+ */
+class SystemPropertiesSnapshot {
+
+	static final long TTL_MILLIS = 60 * 1000;
+
+	private static volatile SystemPropertiesSnapshot current;
+
+	private final List<String> filters;
+
+	private final Properties properties;
+
+	private final int size;
+
+	private final long takenAt;
+
+	private final Map<String, Object> environment;
+
+	private SystemPropertiesSnapshot(final List<String> filters, final Properties properties, final long takenAt) {
+		this.filters = new ArrayList<String>(filters);
+		this.properties = properties;
+		this.size = properties.size();
+		this.takenAt = takenAt;
+		this.environment = Collections.unmodifiableMap(filter((Properties) properties.clone(), filters));
+	}
+
+	private static Map<String, Object> filter(final Properties properties, final List<String> filters) {
+		final Pattern[] patterns = new Pattern[filters.size()];
+		for (int i = 0; i < patterns.length; i++) {
+			patterns[i] = Pattern.compile(filters.get(i));
+		}
+		final Map<String, Object> environment = new TreeMap<String, Object>();
+		for (final Entry<Object, Object> property : properties.entrySet()) {
+			final String key = property.getKey().toString();
+			if (!matchesAny(patterns, key)) {
+				environment.put(key, property.getValue());
+			}
+		}
+		return environment;
+	}
+
+	private static boolean matchesAny(final Pattern[] patterns, final String key) {
+		for (final Pattern pattern : patterns) {
+			if (pattern.matcher(key).matches()) return true;
+		}
+		return false;
+	}
+
+	static SystemPropertiesSnapshot of(final List<String> filters) {
+		return of(filters, System.currentTimeMillis());
+	}
+
+	static SystemPropertiesSnapshot of(final List<String> filters, final long now) {
+		final SystemPropertiesSnapshot snapshot = current;
+		final Properties properties = System.getProperties();
+		if (snapshot != null && snapshot.isCurrent(filters, properties, now)) return snapshot;
+
+		final SystemPropertiesSnapshot taken = new SystemPropertiesSnapshot(filters, properties, now);
+		current = taken;
+		return taken;
+	}
+
+	Map<String, Object> environment() {
+		return environment;
+	}
+
+	boolean isFilteredBy(final List<String> filters) {
+		return this.filters.equals(filters);
+	}
+
+	private boolean isCurrent(final List<String> filters, final Properties properties, final long now) {
+		return this.properties == properties && size == properties.size() && now - takenAt < TTL_MILLIS && isFilteredBy(filters);
+	}
+}
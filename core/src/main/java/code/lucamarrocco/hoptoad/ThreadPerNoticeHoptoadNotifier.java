@@ -0,0 +1,170 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Sends every notice on a thread of its own, with a semaphore rather than a
+ * pool bounding how many are sent at once; a notice that finds no permit
+ * within {@code acquireTimeoutMillis} is dropped. On a JVM with virtual
+ * threads (Java 21 and later) the threads are virtual, so the blocking
+ * transports scale to many concurrent sends on a few carrier threads; older
+ * JVMs get daemon platform threads. Virtual threads are looked up by
+ * reflection, which keeps the jar loadable on the Java versions the rest of
+ * the notifier supports.
+ */
+public class ThreadPerNoticeHoptoadNotifier extends HoptoadNotifier {
+
+	public static final int DEFAULT_MAX_CONCURRENT_SENDS = 256;
+
+	public static final long CLOSE_TIMEOUT_MILLIS = 10 * 1000;
+
+	private final HoptoadNotifier delegate;
+
+	private final int maxConcurrentSends;
+
+	private final Semaphore permits;
+
+	private final long acquireTimeoutMillis;
+
+	private final ThreadFactory threads;
+
+	private final boolean virtual;
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile boolean closed;
+
+	public ThreadPerNoticeHoptoadNotifier(final HoptoadNotifier delegate) {
+		this(delegate, DEFAULT_MAX_CONCURRENT_SENDS, 0);
+	}
+
+	public ThreadPerNoticeHoptoadNotifier(final HoptoadNotifier delegate, final int maxConcurrentSends, final long acquireTimeoutMillis) {
+		this(delegate, maxConcurrentSends, acquireTimeoutMillis, virtualThreads());
+	}
+
+	ThreadPerNoticeHoptoadNotifier(final HoptoadNotifier delegate, final int maxConcurrentSends, final long acquireTimeoutMillis, final ThreadFactory virtualThreads) {
+		if (maxConcurrentSends < 1) throw new IllegalArgumentException("maxConcurrentSends must be positive: " + maxConcurrentSends);
+
+		this.delegate = delegate;
+		this.maxConcurrentSends = maxConcurrentSends;
+		this.permits = new Semaphore(maxConcurrentSends);
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.virtual = virtualThreads != null;
+		this.threads = virtual ? virtualThreads : platformThreads();
+	}
+
+	private static ThreadFactory platformThreads() {
+		final AtomicLong count = new AtomicLong();
+		return new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "hoptoad-delivery-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/** {@code Thread.ofVirtual().name("hoptoad-delivery-", 0).factory()}, or null before Java 21. */
+	static ThreadFactory virtualThreads() {
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builderType.getMethod("name", String.class, long.class).invoke(builder, "hoptoad-delivery-", 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (final NoSuchMethodException e) {
+			return null;
+		} catch (final ClassNotFoundException e) {
+			return null;
+		} catch (final IllegalAccessException e) {
+			return null;
+		} catch (final InvocationTargetException e) {
+			return null;
+		}
+	}
+
+	/** Stops taking notices and waits up to {@link #CLOSE_TIMEOUT_MILLIS} for the sends in progress. */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			if (permits.tryAcquire(maxConcurrentSends, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				permits.release(maxConcurrentSends);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		delegate.close();
+	}
+
+	/** Notices handed to the delegate. */
+	public long delivered() {
+		return delivered.get();
+	}
+
+	/** Notices dropped because the limit of concurrent sends was reached, or the notifier was closed. */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/** Notices the delegate threw on. */
+	public long failed() {
+		return failed.get();
+	}
+
+	/** Sends in progress. */
+	public int inFlight() {
+		return maxConcurrentSends - permits.availablePermits();
+	}
+
+	/** Whether sends run on virtual threads. */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/** Starts a thread sending the notice and returns 0, or drops the notice if no permit comes free in time. */
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		if (closed || !tryAcquire()) {
+			dropped.incrementAndGet();
+			return 0;
+		}
+		try {
+			threads.newThread(new Runnable() {
+				public void run() {
+					try {
+						delegate.notify(notice);
+						delivered.incrementAndGet();
+					} catch (final RuntimeException e) {
+						failed.incrementAndGet();
+					} finally {
+						permits.release();
+					}
+				}
+			}).start();
+		} catch (final RuntimeException e) {
+			permits.release();
+			dropped.incrementAndGet();
+		}
+		return 0;
+	}
+
+	private boolean tryAcquire() {
+		if (acquireTimeoutMillis <= 0) return permits.tryAcquire();
+		try {
+			return permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
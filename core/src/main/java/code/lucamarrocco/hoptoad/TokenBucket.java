@@ -0,0 +1,55 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A token bucket holding up to {@code burst} tokens and refilled at
+ * {@code perSecond} tokens a second, kept lock-free as the single timestamp of
+ * the generic cell rate algorithm: the time at which the bucket will be full
+ * again. Taking a token moves that time one refill interval further; it is
+ * refused when that would put it more than the burst ahead of now.
+ */
+public class TokenBucket {
+
+	private final long intervalNanos;
+
+	private final long toleranceNanos;
+
+	private final AtomicLong fullAt;
+
+	public TokenBucket(final double perSecond, final int burst) {
+		this(perSecond, burst, System.nanoTime());
+	}
+
+	TokenBucket(final double perSecond, final int burst, final long now) {
+		if (perSecond <= 0) throw new IllegalArgumentException("perSecond must be positive: " + perSecond);
+		if (burst < 1) throw new IllegalArgumentException("burst must be positive: " + burst);
+
+		this.intervalNanos = Math.max(1, (long) (1e9 / perSecond));
+		this.toleranceNanos = intervalNanos * burst;
+		this.fullAt = new AtomicLong(now);
+	}
+
+	public boolean tryAcquire() {
+		return tryAcquire(System.nanoTime());
+	}
+
+	boolean tryAcquire(final long now) {
+		while (true) {
+			final long current = fullAt.get();
+			final long base = current - now < 0 ? now : current;
+			final long next = base + intervalNanos;
+			if (next - now > toleranceNanos) return false;
+			if (fullAt.compareAndSet(current, next)) return true;
+		}
+	}
+
+	/** Gives back a token taken by {@link #tryAcquire()} that ended up not being used. */
+	public void release() {
+		fullAt.addAndGet(-intervalNanos);
+	}
+}
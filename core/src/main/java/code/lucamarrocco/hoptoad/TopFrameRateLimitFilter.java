@@ -0,0 +1,42 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+/**
+ * Lets through at most {@code limit} errors thrown from the same place in a
+ * window. Errors are told apart by their class and their top frame, the one
+ * that threw them, so only that frame is hashed. Unlike a sampling policy it
+ * drops the errors over the limit without weighting those it keeps: it is
+ * meant for errors known to be noise, where a count is not wanted.
+ */
+public class TopFrameRateLimitFilter extends WindowedSamplingPolicy implements ErrorFilter {
+
+	private final int limit;
+
+	public TopFrameRateLimitFilter(final int limit) {
+		this(limit, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_KEYS);
+	}
+
+	public TopFrameRateLimitFilter(final int limit, final long windowMillis, final int maxKeys) {
+		super(windowMillis, maxKeys);
+		if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+
+		this.limit = limit;
+	}
+
+	public boolean accept(final String logger, final Throwable throwable) {
+		return sample(throwable, System.currentTimeMillis()) > 0;
+	}
+
+	@Override
+	protected Object key(final Throwable throwable) {
+		return Fingerprint.of(throwable, 1);
+	}
+
+	@Override
+	protected double weigh(final long seen) {
+		return seen <= limit ? 1 : 0;
+	}
+}
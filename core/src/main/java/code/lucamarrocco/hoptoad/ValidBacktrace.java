@@ -0,0 +1,11 @@
+package code.lucamarrocco.hoptoad;
+
+import java.util.regex.Pattern;
+
+public class ValidBacktrace {
+  private static final Pattern VALID = Pattern.compile("[^:]*:\\d+.*");
+
+  public static boolean matches(CharSequence string) {
+    return VALID.matcher(string).matches();
+  }
+}
@@ -0,0 +1,102 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Samples errors by how many errors with the same key came before them in the
+ * current window. Windows are fixed, starting with the first error of a key
+ * after the last one ended. Keys live in a {@link ConcurrentHashMap} bounded
+ * by {@code maxKeys}; deciding on an error is one lookup and one atomic
+ * increment, and when the table is full the expired windows are cleared, or
+ * failing that a few windows are.
+ */
+public abstract class WindowedSamplingPolicy implements SamplingPolicy {
+
+	public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000;
+
+	public static final int DEFAULT_MAX_KEYS = 1000;
+
+	private static final int EVICTION_SAMPLE = 16;
+
+	private final long windowMillis;
+
+	private final int maxKeys;
+
+	private final ConcurrentMap<Object, Window> windows = new ConcurrentHashMap<Object, Window>();
+
+	private final AtomicLong kept = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	protected WindowedSamplingPolicy(final long windowMillis, final int maxKeys) {
+		if (windowMillis < 1) throw new IllegalArgumentException("windowMillis must be positive: " + windowMillis);
+		if (maxKeys < 1) throw new IllegalArgumentException("maxKeys must be positive: " + maxKeys);
+
+		this.windowMillis = windowMillis;
+		this.maxKeys = maxKeys;
+	}
+
+	private void evict(final long now) {
+		for (final Iterator<Window> windows = this.windows.values().iterator(); windows.hasNext();) {
+			if (now - windows.next().start >= windowMillis) windows.remove();
+		}
+		int evicted = 0;
+		for (final Iterator<Window> windows = this.windows.values().iterator(); windows.hasNext() && this.windows.size() >= maxKeys && evicted++ < EVICTION_SAMPLE;) {
+			windows.next();
+			windows.remove();
+		}
+	}
+
+	/** Errors kept. */
+	public long kept() {
+		return kept.get();
+	}
+
+	/** The key errors are counted under. */
+	protected abstract Object key(Throwable throwable);
+
+	/** Errors sampled out. */
+	public long rejected() {
+		return rejected.get();
+	}
+
+	public double sample(final Throwable throwable, final long now) {
+		final double weight = weigh(window(key(throwable), now).seen.incrementAndGet());
+		(weight > 0 ? kept : rejected).incrementAndGet();
+		return weight;
+	}
+
+	/** The weight of the {@code seen}th error of a key in its window, or 0 to drop it. */
+	protected abstract double weigh(long seen);
+
+	private Window window(final Object key, final long now) {
+		final Window window = windows.get(key);
+		if (window != null && now - window.start < windowMillis) return window;
+
+		final Window started = new Window(now);
+		if (window == null) {
+			if (windows.size() >= maxKeys) evict(now);
+			final Window raced = windows.putIfAbsent(key, started);
+			return raced != null ? raced : started;
+		}
+		if (windows.replace(key, window, started)) return started;
+		final Window raced = windows.get(key);
+		return raced != null ? raced : started;
+	}
+
+	private static class Window {
+		final long start;
+
+		final AtomicLong seen = new AtomicLong();
+
+		Window(final long start) {
+			this.start = start;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+
+/**
+ * Writes XML as bytes into a buffer that is either flushed to a stream when
+ * full or grown to hold the whole document. Escaping is done a character at a
+ * time into the buffer, the same way commons-lang {@code escapeXml} does it,
+ * so everything above US-ASCII becomes a numeric character reference and the
+ * output is valid UTF-8 as well as ASCII. Markup is written from byte arrays
+ * built once with {@link #ascii(String)}.
+ */
+class XmlWriter {
+
+	private static final byte[] NULL = ascii("null");
+
+	private static final byte[] LT = ascii("&lt;");
+
+	private static final byte[] GT = ascii("&gt;");
+
+	private static final byte[] AMP = ascii("&amp;");
+
+	private static final byte[] QUOT = ascii("&quot;");
+
+	private static final byte[] APOS = ascii("&apos;");
+
+	private final OutputStream out;
+
+	private byte[] buffer;
+
+	private int count;
+
+	private long flushed;
+
+	/** Buffers the whole document in memory. */
+	XmlWriter(final int initialSize) {
+		this(null, initialSize);
+	}
+
+	/** Writes through to {@code out} whenever {@code bufferSize} bytes are buffered. */
+	XmlWriter(final OutputStream out, final int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(bufferSize, 16)];
+	}
+
+	static byte[] ascii(final String string) {
+		final byte[] bytes = new byte[string.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) string.charAt(i);
+		}
+		return bytes;
+	}
+
+	private void ensure(final int length) throws IOException {
+		if (count + length <= buffer.length) return;
+		if (out != null) {
+			flushBuffer();
+			if (length <= buffer.length) return;
+		}
+		final byte[] grown = new byte[Math.max(buffer.length * 2, count + length)];
+		System.arraycopy(buffer, 0, grown, 0, count);
+		buffer = grown;
+	}
+
+	/** The number of bytes {@link #escaped(CharSequence)} writes for {@code text}. */
+	static int escapedLength(final CharSequence text) {
+		if (text == null) return NULL.length;
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			bytes += escapedLength(text, i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * The bytes written for the character at {@code i}: a surrogate pair is
+	 * written as one reference, counted at its high surrogate.
+	 */
+	private static int escapedLength(final CharSequence text, final int i) {
+		final char c = text.charAt(i);
+		switch (c) {
+		case '<':
+			return LT.length;
+		case '>':
+			return GT.length;
+		case '&':
+			return AMP.length;
+		case '"':
+			return QUOT.length;
+		case '\'':
+			return APOS.length;
+		default:
+			if (c < 0x80) return 1;
+			if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				return 3 + numberLength(Character.toCodePoint(c, text.charAt(i + 1)));
+			}
+			if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(text.charAt(i - 1))) return 0;
+			return 3 + numberLength(c);
+		}
+	}
+
+	/** Escapes {@code text}, writing "null" for null as string concatenation would. */
+	XmlWriter escaped(final CharSequence text) throws IOException {
+		if (text == null) return raw(NULL);
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				raw(LT);
+				break;
+			case '>':
+				raw(GT);
+				break;
+			case '&':
+				raw(AMP);
+				break;
+			case '"':
+				raw(QUOT);
+				break;
+			case '\'':
+				raw(APOS);
+				break;
+			default:
+				if (c < 0x80) {
+					if (count == buffer.length) ensure(1);
+					buffer[count++] = (byte) c;
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+					reference(Character.toCodePoint(c, text.charAt(++i)));
+				} else {
+					reference(c);
+				}
+			}
+		}
+		return this;
+	}
+
+	/** The number of characters at the start of {@code text} that escape to at most {@code maxBytes}; surrogate pairs are not split. */
+	static int fit(final CharSequence text, final int maxBytes) {
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			bytes += escapedLength(text, i);
+			if (bytes > maxBytes) return i;
+		}
+		return text.length();
+	}
+
+	void flush() throws IOException {
+		flushBuffer();
+		if (out != null) out.flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (out != null && count > 0) {
+			out.write(buffer, 0, count);
+			flushed += count;
+			count = 0;
+		}
+	}
+
+	XmlWriter number(final long number) throws IOException {
+		ensure(20);
+		if (number < 0) buffer[count++] = '-';
+		final int start = count;
+		long rest = number;
+		do {
+			buffer[count++] = (byte) ('0' + Math.abs(rest % 10));
+			rest /= 10;
+		} while (rest != 0);
+		for (int i = start, j = count - 1; i < j; i++, j--) {
+			final byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+		return this;
+	}
+
+	/** The number of bytes {@link #number(long)} writes. */
+	static int numberLength(final long number) {
+		int length = number < 0 ? 2 : 1;
+		for (long rest = number / 10; rest != 0; rest /= 10) {
+			length++;
+		}
+		return length;
+	}
+
+	XmlWriter raw(final byte[] markup) throws IOException {
+		ensure(markup.length);
+		System.arraycopy(markup, 0, buffer, count, markup.length);
+		count += markup.length;
+		return this;
+	}
+
+	private void reference(final int codePoint) throws IOException {
+		ensure(10);
+		buffer[count++] = '&';
+		buffer[count++] = '#';
+		number(codePoint);
+		buffer[count++] = ';';
+	}
+
+	/** The bytes written and not yet flushed to a stream: the whole document when buffering in memory. */
+	byte[] toByteArray() {
+		final byte[] bytes = new byte[count];
+		System.arraycopy(buffer, 0, bytes, 0, count);
+		return bytes;
+	}
+
+	/** All bytes written so far, flushed or not. */
+	long written() {
+		return flushed + count;
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return new String(buffer, 0, count, "US-ASCII");
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
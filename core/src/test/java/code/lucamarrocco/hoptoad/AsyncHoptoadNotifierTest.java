@@ -0,0 +1,139 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.RecordingNotifier.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import code.lucamarrocco.hoptoad.AsyncHoptoadNotifier.OverflowPolicy;
+
+public class AsyncHoptoadNotifierTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final RecordingNotifier blockedNotifier = new RecordingNotifier(release);
+
+	private final List<HoptoadNotice> sent = blockedNotifier.sent();
+
+	private AsyncHoptoadNotifier notifier;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (notifier != null) notifier.close();
+	}
+
+	@Test
+	public void testNotifyReturnsWithoutWaitingForDelivery() throws Exception {
+		notifier = new AsyncHoptoadNotifier(blockedNotifier, 10, 1, OverflowPolicy.DROP_NEWEST, 0);
+
+		notifier.notify(newNotice("first"));
+
+		assertThat(notifier.enqueued(), is(1L));
+		assertThat(sent.size(), is(0));
+
+		release.countDown();
+		notifier.close(1000);
+
+		assertThat(sent.size(), is(1));
+		assertThat(notifier.delivered(), is(1L));
+	}
+
+	@Test
+	public void testDropNewestWhenQueueIsFull() throws Exception {
+		notifier = new AsyncHoptoadNotifier(blockedNotifier, 2, 1, OverflowPolicy.DROP_NEWEST, 0);
+
+		final List<HoptoadNotice> notices = fill(notifier, 5);
+
+		assertThat(notifier.queueDepth(), is(2));
+		assertThat(notifier.dropped(), is(2L));
+
+		release.countDown();
+		notifier.close(1000);
+
+		assertThat(sent, is(notices.subList(0, 3)));
+	}
+
+	@Test
+	public void testDropOldestWhenQueueIsFull() throws Exception {
+		notifier = new AsyncHoptoadNotifier(blockedNotifier, 2, 1, OverflowPolicy.DROP_OLDEST, 0);
+
+		final List<HoptoadNotice> notices = fill(notifier, 5);
+
+		assertThat(notifier.queueDepth(), is(2));
+		assertThat(notifier.dropped(), is(2L));
+
+		release.countDown();
+		notifier.close(1000);
+
+		assertThat(sent, is(Arrays.asList(notices.get(0), notices.get(3), notices.get(4))));
+	}
+
+	@Test
+	public void testBlockGivesUpAfterTimeout() throws Exception {
+		notifier = new AsyncHoptoadNotifier(blockedNotifier, 1, 1, OverflowPolicy.BLOCK, 50);
+
+		fill(notifier, 2);
+
+		final long start = System.currentTimeMillis();
+		notifier.notify(newNotice("blocked"));
+
+		assertThat(System.currentTimeMillis() - start, is(greaterThanOrEqualTo(40L)));
+		assertThat(notifier.dropped(), is(1L));
+	}
+
+	@Test
+	public void testNoticesAfterCloseAreDropped() {
+		notifier = new AsyncHoptoadNotifier(blockedNotifier);
+		release.countDown();
+		notifier.close(1000);
+
+		notifier.notify(newNotice("late"));
+
+		assertThat(notifier.dropped(), is(1L));
+		assertThat(sent.size(), is(0));
+	}
+
+	@Test
+	public void testFailuresAreCountedAndSendingGoesOn() {
+		release.countDown();
+		notifier = new AsyncHoptoadNotifier(new RecordingNotifier() {
+			@Override
+			public int notify(final HoptoadNotice notice) {
+				if (notice.errorMessage().equals("bad")) throw new IllegalStateException("bad");
+				sent.add(notice);
+				return 200;
+			}
+		}, 10, 1, OverflowPolicy.DROP_NEWEST, 0);
+
+		notifier.notify(newNotice("bad"));
+		notifier.notify(newNotice("good"));
+		notifier.close(1000);
+
+		assertThat(notifier.failed(), is(1L));
+		assertThat(notifier.delivered(), is(1L));
+		assertThat(sent.size(), is(1));
+	}
+
+	private List<HoptoadNotice> fill(final AsyncHoptoadNotifier notifier, final int count) throws InterruptedException {
+		final List<HoptoadNotice> notices = new ArrayList<HoptoadNotice>();
+		notices.add(newNotice("in flight"));
+		notifier.notify(notices.get(0));
+		while (notifier.queueDepth() > 0) {
+			Thread.sleep(1);
+		}
+		for (int i = 1; i < count; i++) {
+			notices.add(newNotice("queued " + i));
+			notifier.notify(notices.get(i));
+		}
+		return notices;
+	}
+}
@@ -10,6 +10,7 @@ import static code.lucamarrocco.hoptoad.Slurp.read;
 import static code.lucamarrocco.hoptoad.Slurp.slurp;
 import static code.lucamarrocco.hoptoad.Slurp.strings;
 import static code.lucamarrocco.hoptoad.ValidBacktrace.matches;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
@@ -297,6 +298,55 @@ public class BacktraceTest {
 		assertThat(backtrace, hasItem("at code.lucamarrocco.hoptoad.Exceptions.newException(Exceptions.java:15)"));
 	}
 
+	@Test
+	public void testFramesSharedWithTheEnclosingTraceAreElided() {
+		final StackTraceElement main = new StackTraceElement("app.Main", "main", "Main.java", 10);
+		final StackTraceElement run = new StackTraceElement("app.Service", "run", "Service.java", 20);
+		final Exception cause = new IllegalStateException("cause");
+		cause.setStackTrace(new StackTraceElement[] { new StackTraceElement("app.Dao", "load", "Dao.java", 30), run, main });
+		final Exception exception = new RuntimeException("boom", cause);
+		exception.setStackTrace(new StackTraceElement[] { new StackTraceElement("app.Service", "wrap", "Service.java", 22), run, main });
+
+		final Backtrace backtrace = new Backtrace(exception);
+		final List<BacktraceLine> lines = backtrace.lines();
+
+		assertEquals("at app.Service.wrap(Service.java:22)\nat app.Service.run(Service.java:20)\nat app.Main.main(Main.java:10)\nCaused by cause\nat app.Dao.load(Dao.java:30)\n... 2 more\n", backtrace.toString());
+		assertEquals(6, lines.size());
+		assertEquals("<line method=\"... 2 more\" file=\"\" number=\"-1\"/>", lines.get(5).toXml());
+	}
+
+	@Test
+	public void testLinesComeStraightFromStackTraceElements() {
+		final Exception exception = new RuntimeException("boom");
+		exception.setStackTrace(new StackTraceElement[] {
+				new StackTraceElement("org.mortbay.jetty.servlet.ServletHandler$CachedChain", "doFilter", "ServletHandler.java", 1088),
+				new StackTraceElement("sun.reflect.NativeMethodAccessorImpl", "invoke0", null, -2) });
+
+		final List<BacktraceLine> lines = new RubyBacktrace(exception).lines();
+
+		assertEquals(2, lines.size());
+		assertEquals("<line method=\"org.mortbay.jetty.servlet.ServletHandler$CachedChain.doFilter\" file=\"ServletHandler.java\" number=\"1088\"/>", lines.get(0).toXml());
+		assertEquals("sun.reflect.NativeMethodAccessorImpl", lines.get(1).className());
+		assertEquals("invoke0", lines.get(1).methodName());
+		assertEquals(-2, lines.get(1).lineNumber());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testOverridingToBacktraceStillFormatsTheFrames() {
+		final Exception exception = new RuntimeException("boom");
+		exception.setStackTrace(new StackTraceElement[] { new StackTraceElement("app.Service", "call", "Service.java", 42) });
+
+		final Backtrace backtrace = new Backtrace(exception) {
+			@Override
+			protected String toBacktrace(final String className, final String fileName, final int lineNumber, final String methodName) {
+				return "frame " + className + "#" + methodName;
+			}
+		};
+
+		assertThat(backtrace.toString(), containsString("frame app.Service#call\n"));
+	}
+
 	@Test
 	public void testNotValidaBacktrace() {
     String string = "Caused by: java.lang.NullPointerException";
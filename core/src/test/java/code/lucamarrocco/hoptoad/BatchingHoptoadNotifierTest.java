@@ -0,0 +1,131 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class BatchingHoptoadNotifierTest {
+
+	private StubHoptoadServer server;
+
+	private BatchingHoptoadNotifier notifier;
+
+	@Before
+	public void setUp() {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		if (notifier != null) notifier.close();
+		server.stop();
+	}
+
+	@Test
+	public void testFlushesWhenMaxNoticesIsReached() throws Exception {
+		notifier = new BatchingHoptoadNotifier(pooledNotifier(), 3, Integer.MAX_VALUE, 60000, null);
+
+		notifier.notify(newNotice("one"));
+		notifier.notify(newNotice("two"));
+		assertThat(notifier.pending(), is(2));
+
+		notifier.notify(newNotice("three"));
+		final List<String> bodies = server.awaitBodies(3, 5000);
+
+		assertThat(bodies.size(), is(3));
+		assertThat(bodies.get(0), containsString("<message>one</message>"));
+		assertThat(bodies.get(2), containsString("<message>three</message>"));
+		assertThat(server.connections(), is(1));
+		assertThat(notifier.flushes(), is(1L));
+	}
+
+	@Test
+	public void testFlushesWhenMaxBytesIsReached() throws Exception {
+		notifier = new BatchingHoptoadNotifier(pooledNotifier(), 100, 1, 60000, null);
+
+		notifier.notify(newNotice("one"));
+
+		assertThat(server.awaitBodies(1, 5000).size(), is(1));
+		assertThat(notifier.pending(), is(0));
+	}
+
+	@Test
+	public void testFlushesWhenMaxDelayIsReached() throws Exception {
+		notifier = new BatchingHoptoadNotifier(pooledNotifier(), 100, Integer.MAX_VALUE, 50, null);
+
+		notifier.notify(newNotice("one"));
+		notifier.notify(newNotice("two"));
+
+		assertThat(server.awaitBodies(2, 5000).size(), is(2));
+		assertThat(notifier.flushes(), is(1L));
+	}
+
+	@Test
+	public void testPostsOneDocumentToBatchUrl() throws Exception {
+		notifier = new BatchingHoptoadNotifier(pooledNotifier(), 2, Integer.MAX_VALUE, 60000, server.url() + "/batch");
+
+		notifier.notify(newNotice("one"));
+		notifier.notify(newNotice("two"));
+		final List<String> bodies = server.awaitBodies(1, 5000);
+
+		assertThat(bodies.size(), is(1));
+		final String xml = bodies.get(0);
+		assertThat(xml, startsWith("<?xml version=\"1.0\"?><notices><notice version=\"2.0.0\">"));
+		assertThat(xml, endsWith("</notice></notices>"));
+		assertThat(xml.indexOf("<?xml", 1), is(-1));
+		assertThat(xml, containsString("<message>two</message>"));
+	}
+
+	@Test
+	public void testCloseFlushesPendingNotices() throws Exception {
+		notifier = new BatchingHoptoadNotifier(pooledNotifier(), 100, Integer.MAX_VALUE, 60000, null);
+
+		notifier.notify(newNotice("one"));
+		notifier.close();
+		notifier = null;
+
+		assertThat(server.bodies().size(), is(1));
+	}
+
+	@Test
+	public void testNoticesOfAFailedFlushAreCounted() throws Exception {
+		final ScriptedTransport down = new ScriptedTransport(new ConnectException("collector down"));
+		notifier = new BatchingHoptoadNotifier(new HoptoadNotifier(server.url(), down), 100, Integer.MAX_VALUE, 60000, null);
+
+		notifier.notify(newNotice("one"));
+		notifier.notify(newNotice("two"));
+		notifier.close();
+
+		assertThat(notifier.failed(), is(2L));
+		assertThat(down.posts, is(1));
+	}
+
+	@Test
+	public void testOnlyUnansweredNoticesOfAFlushAreCounted() throws Exception {
+		final ScriptedTransport reset = new ScriptedTransport(200, new SocketException("Connection reset"));
+		notifier = new BatchingHoptoadNotifier(new HoptoadNotifier(server.url(), reset), 100, Integer.MAX_VALUE, 60000, null);
+
+		notifier.notify(newNotice("one"));
+		notifier.notify(newNotice("two"));
+		notifier.close();
+
+		assertThat(notifier.failed(), is(1L));
+		assertThat(reset.posts, is(2));
+	}
+
+	private HoptoadNotifier pooledNotifier() {
+		return new HoptoadNotifier(server.url(), new PooledHttpTransport());
+	}
+
+	private HoptoadNotice newNotice(final String message) {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, message).newNotice();
+	}
+}
@@ -0,0 +1,156 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.RecordingNotifier.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class DeadlineHoptoadNotifierTest {
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier();
+
+	private ServerSocket blackHole;
+
+	@Before
+	public void setUp() throws Exception {
+		blackHole = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		blackHole.close();
+	}
+
+	@Test
+	public void testNoticesPastDeadlineAreDropped() {
+		final DeadlineHoptoadNotifier notifier = new DeadlineHoptoadNotifier(recordingNotifier, 1000);
+		final HoptoadNotice notice = newNotice("late");
+
+		assertThat(notifier.isExpired(notice, notice.createdAt() + 1000), is(false));
+		assertThat(notifier.isExpired(notice, notice.createdAt() + 1001), is(true));
+		assertThat(notifier.notify(notice), is(200));
+		assertThat(recordingNotifier.sent().size(), is(1));
+	}
+
+	@Test
+	public void testQueueWaitCountsTowardsDeadline() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final RecordingNotifier slow = new RecordingNotifier(release);
+		final DeadlineHoptoadNotifier deadline = new DeadlineHoptoadNotifier(slow, 50);
+		final AsyncHoptoadNotifier notifier = new AsyncHoptoadNotifier(deadline, 10, 1, AsyncHoptoadNotifier.OverflowPolicy.DROP_NEWEST, 0);
+
+		notifier.notify(newNotice("late"));
+		notifier.notify(newNotice("late"));
+		Thread.sleep(100);
+		release.countDown();
+		notifier.close();
+
+		assertThat(slow.sent().size(), is(1));
+		assertThat(deadline.expired(), is(1L));
+	}
+
+	@Test
+	public void testNoticeExpiringDuringARetryIsNotPostedAgain() throws Exception {
+		final ScriptedTransport flaky = new ScriptedTransport(503, 200);
+		final RetryingTransport retrying = new RetryingTransport(flaky, new RetryPolicy(3, 200, 200, longestJitter()), new CircuitBreaker());
+		final DeadlineHoptoadNotifier notifier = new DeadlineHoptoadNotifier(new HoptoadNotifier(HoptoadNotifier.NOTICES_URL, retrying), 100);
+
+		assertThat(notifier.notify(newNotice("late")), is(503));
+		assertThat(flaky.posts, is(1));
+		assertThat(retrying.abandoned(), is(1L));
+	}
+
+	@Test
+	public void testRetriesWithinTheDeadlineGoAhead() throws Exception {
+		final ScriptedTransport flaky = new ScriptedTransport(503, 200);
+		final RetryingTransport retrying = new RetryingTransport(flaky, new RetryPolicy(3, 10, 10), new CircuitBreaker());
+		final DeadlineHoptoadNotifier notifier = new DeadlineHoptoadNotifier(new HoptoadNotifier(HoptoadNotifier.NOTICES_URL, retrying), 5000);
+
+		assertThat(notifier.notify(newNotice("late")), is(200));
+		assertThat(flaky.posts, is(2));
+	}
+
+	@Test
+	public void testBatchedNoticesPastTheDeadlineAreNotFlushed() throws Exception {
+		final ScriptedTransport transport = new ScriptedTransport(200);
+		final BatchingHoptoadNotifier batching = new BatchingHoptoadNotifier(new HoptoadNotifier(HoptoadNotifier.NOTICES_URL, transport), 10, 1024 * 1024, 200, null);
+		final DeadlineHoptoadNotifier notifier = new DeadlineHoptoadNotifier(batching, 50);
+
+		notifier.notify(newNotice("late"));
+		final long giveUp = System.currentTimeMillis() + 5000;
+		while (batching.expired() == 0 && System.currentTimeMillis() < giveUp) {
+			Thread.sleep(10);
+		}
+		batching.close();
+
+		assertThat(transport.posts, is(0));
+		assertThat(batching.expired(), is(1L));
+	}
+
+	@Test
+	public void testSpooledNoticesPastTheDeadlineAreNotReplayed() throws Exception {
+		final File directory = SpoolTest.newDirectory();
+		final ScriptedTransport transport = new ScriptedTransport(new IOException("connection refused"), 200);
+		final SpoolingHoptoadNotifier spooling = new SpoolingHoptoadNotifier(new HoptoadNotifier(HoptoadNotifier.NOTICES_URL, transport), directory, 64 * 1024, 2, 200);
+		try {
+			new DeadlineHoptoadNotifier(spooling, 50).notify(newNotice("late"));
+			spooling.notify(newNotice("late"));
+			assertThat(spooling.spooled(), is(2L));
+
+			final long giveUp = System.currentTimeMillis() + 5000;
+			while (spooling.pending() > 0 && System.currentTimeMillis() < giveUp) {
+				Thread.sleep(10);
+			}
+
+			assertThat(spooling.expired(), is(1L));
+			assertThat(spooling.replayed(), is(1L));
+			assertThat(transport.posts, is(2));
+			assertThat(new String(transport.posted.get(1), "UTF-8"), startsWith("<?xml"));
+		} finally {
+			spooling.close();
+			SpoolTest.delete(directory);
+		}
+	}
+
+	@Test
+	public void testPooledTransportGivesUpOnSilentCollector() throws Exception {
+		assertTimesOut(new PooledHttpTransport(1, 1000, 1000, 200));
+	}
+
+	@Test
+	public void testUrlConnectionTransportGivesUpOnSilentCollector() throws Exception {
+		assertTimesOut(new HttpURLConnectionTransport(1000, 200));
+	}
+
+	/** Jitter that always waits about the whole delay, so a retry cannot fit a short deadline. */
+	private static Random longestJitter() {
+		return new Random() {
+			@Override
+			public double nextDouble() {
+				return 0.99;
+			}
+		};
+	}
+
+	private void assertTimesOut(final HoptoadTransport transport) throws Exception {
+		final long start = System.currentTimeMillis();
+		try {
+			transport.post(new URL("http://127.0.0.1:" + blackHole.getLocalPort() + "/notifier_api/v2/notices"), "<notice/>".getBytes("UTF-8"));
+			fail();
+		} catch (final SocketTimeoutException e) {
+			assertThat(System.currentTimeMillis() - start, is(lessThan(5000L)));
+		} finally {
+			transport.close();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class DeduplicatingHoptoadNotifierTest {
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier();
+
+	private final List<HoptoadNotice> sent = recordingNotifier.sent();
+
+	private DeduplicatingHoptoadNotifier notifier;
+
+	@After
+	public void tearDown() {
+		if (notifier != null) notifier.close();
+	}
+
+	@Test
+	public void testFingerprintIgnoresMessagesAndGeneratedNames() {
+		final long fingerprint = Fingerprint.of(newNotice("order 1", "com.shop.Orders.place(Orders.java:10)", "com.shop.Orders$$EnhancerByCGLIB$$1a2b3c.place(<generated>)"));
+
+		assertThat(Fingerprint.of(newNotice("order 2", "com.shop.Orders.place(Orders.java:10)", "com.shop.Orders$$EnhancerByCGLIB$$9f8e7d.place(<generated>)")), is(fingerprint));
+		assertThat(Fingerprint.of(newNotice("order 1", "com.shop.Orders.place(Orders.java:11)", "com.shop.Orders$$EnhancerByCGLIB$$1a2b3c.place(<generated>)")), is(not(fingerprint)));
+	}
+
+	@Test
+	public void testFingerprintUsesOnlyTopFrames() {
+		final HoptoadNotice notice = newNotice("boom", "com.shop.A.a(A.java:1)", "com.shop.B.b(B.java:2)");
+		final HoptoadNotice otherCaller = newNotice("boom", "com.shop.A.a(A.java:1)", "com.shop.C.c(C.java:3)");
+
+		assertThat(Fingerprint.of(otherCaller, 1), is(Fingerprint.of(notice, 1)));
+		assertThat(Fingerprint.of(otherCaller, 2), is(not(Fingerprint.of(notice, 2))));
+	}
+
+	@Test
+	public void testRepeatsInsideWindowAreCountedAndFlushed() {
+		notifier = new DeduplicatingHoptoadNotifier(recordingNotifier, 60000, Fingerprint.DEFAULT_FRAMES, 100);
+
+		for (int i = 0; i < 10; i++) {
+			notifier.notify(newNotice("boom " + i, "com.shop.A.a(A.java:1)"));
+		}
+		notifier.notify(newNotice("other", "com.shop.B.b(B.java:2)"));
+
+		assertThat(sent.size(), is(2));
+		assertThat(notifier.suppressed(), is(9L));
+
+		notifier.flushExpired(System.currentTimeMillis() + 60000);
+
+		assertThat(sent.size(), is(3));
+		assertThat(sent.get(2).errorMessage(), is("boom 9"));
+		assertThat(sent.get(2).annotations().get(DeduplicatingHoptoadNotifier.OCCURRENCES), is((Object) 9L));
+		assertThat(notifier.fingerprints(), is(0));
+	}
+
+	@Test
+	public void testCountsGoOutOnClose() {
+		notifier = new DeduplicatingHoptoadNotifier(recordingNotifier, 60000, Fingerprint.DEFAULT_FRAMES, 100);
+		notifier.notify(newNotice("boom", "com.shop.A.a(A.java:1)"));
+		notifier.notify(newNotice("boom", "com.shop.A.a(A.java:1)"));
+
+		notifier.close();
+
+		assertThat(sent.size(), is(2));
+		assertThat(sent.get(1).annotations().get(DeduplicatingHoptoadNotifier.OCCURRENCES), is((Object) 1L));
+	}
+
+	@Test
+	public void testFingerprintTableIsBounded() {
+		notifier = new DeduplicatingHoptoadNotifier(recordingNotifier, 60000, Fingerprint.DEFAULT_FRAMES, 3);
+
+		for (int i = 0; i < 10; i++) {
+			notifier.notify(newNotice("boom", "com.shop.A.a" + i + "(A.java:1)"));
+			notifier.notify(newNotice("boom", "com.shop.A.a" + i + "(A.java:1)"));
+		}
+
+		assertThat(notifier.fingerprints(), is(lessThanOrEqualTo(3)));
+		assertThat(notifier.suppressed(), is(10L));
+		assertThat(sent.size(), is(17));
+	}
+
+	@Test
+	public void testConcurrentRepeatsAreAllAccountedFor() throws Exception {
+		notifier = new DeduplicatingHoptoadNotifier(recordingNotifier, 60000, Fingerprint.DEFAULT_FRAMES, 100);
+		final int threads = 4;
+		final int perThread = 1000;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						notifier.notify(newNotice("boom", "com.shop.A.a(A.java:1)"));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		notifier.flushExpired(System.currentTimeMillis() + 60000);
+
+		assertThat(sent.size(), is(2));
+		assertThat(sent.get(1).annotations().get(DeduplicatingHoptoadNotifier.OCCURRENCES), is((Object) (long) (threads * perThread - 1)));
+	}
+
+	private HoptoadNotice newNotice(final String message, final String... frames) {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, message) {
+			{
+				backtrace(new Backtrace(Arrays.asList(frames)));
+			}
+		}.newNotice();
+	}
+}
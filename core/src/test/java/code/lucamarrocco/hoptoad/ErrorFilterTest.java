@@ -0,0 +1,97 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class ErrorFilterTest {
+
+	private final HoptoadPipeline pipeline = new RecordingNotifier().pipeline();
+
+	private static RuntimeException thrownAt(final int place) {
+		return new RuntimeException("place " + place);
+	}
+
+	@Test
+	public void testDeniedClassesCoverTheirSubclassesAndInterfaces() {
+		final ErrorClassFilter filter = new ErrorClassFilter(Collections.<String> emptyList(), Arrays.asList("java.lang.IllegalArgumentException", "java.io.Closeable"));
+
+		assertThat(filter.accept("test", new NumberFormatException()), is(false));
+		assertThat(filter.accept("test", new IllegalArgumentException()), is(false));
+		assertThat(filter.accept("test", new IllegalStateException()), is(true));
+		assertThat(filter.accept("test", new ClosingException()), is(false));
+	}
+
+	@Test
+	public void testOnlyAllowedClassesAreAcceptedWhenAnyIs() {
+		final ErrorClassFilter filter = new ErrorClassFilter(Arrays.asList("java.io.IOException"), Arrays.asList("java.io.FileNotFoundException"));
+
+		assertThat(filter.accept("test", new EOFException()), is(true));
+		assertThat(filter.accept("test", new FileNotFoundException()), is(false));
+		assertThat(filter.accept("test", new RuntimeException()), is(false));
+	}
+
+	@Test
+	public void testLoggerNamesCoverTheLoggersBelowThem() {
+		final LoggerNameFilter filter = new LoggerNameFilter(Arrays.asList("org.hibernate", "noisy"));
+
+		assertThat(filter.accept("org.hibernate", new RuntimeException()), is(false));
+		assertThat(filter.accept("org.hibernate.SQL", new RuntimeException()), is(false));
+		assertThat(filter.accept("org.hibernatex", new RuntimeException()), is(true));
+		assertThat(filter.accept("org", new RuntimeException()), is(true));
+		assertThat(filter.accept(null, new RuntimeException()), is(true));
+	}
+
+	@Test
+	public void testTopFrameRateLimitCountsErrorsByWhereTheyWereThrown() {
+		final TopFrameRateLimitFilter filter = new TopFrameRateLimitFilter(2);
+		final List<Boolean> accepted = new ArrayList<Boolean>();
+		for (int i = 0; i < 3; i++) {
+			accepted.add(filter.accept("test", thrownAt(1)));
+		}
+		accepted.add(filter.accept("test", new RuntimeException("elsewhere")));
+
+		assertThat(accepted, is(Arrays.asList(true, true, false, true)));
+	}
+
+	@Test
+	public void testPipelineCountsAndSkipsWhatItsFiltersReject() {
+		pipeline.setDenyLoggers("noisy");
+		pipeline.setDenyErrorClasses("java.lang.IllegalStateException");
+		pipeline.setTopFrameLimit(1);
+		pipeline.addErrorFilter(new ErrorFilter() {
+			public boolean accept(final String logger, final Throwable throwable) {
+				return !"custom".equals(throwable.getMessage());
+			}
+		});
+
+		assertThat(pipeline.accepts("noisy.child", new RuntimeException()), is(false));
+		assertThat(pipeline.accepts("app", new IllegalStateException()), is(false));
+		assertThat(pipeline.accepts("app", thrownAt(1)), is(true));
+		assertThat(pipeline.accepts("app", thrownAt(1)), is(false));
+		assertThat(pipeline.accepts("app", new RuntimeException("custom")), is(false));
+		assertThat(pipeline.metrics().filteredOut(), is(4L));
+		assertThat(pipeline.metrics().built(), is(0L));
+	}
+
+	@Test
+	public void testWithoutOptionsEverythingIsAccepted() {
+		for (int i = 0; i < 3; i++) {
+			assertThat(pipeline.accepts("app", thrownAt(1)), is(true));
+		}
+		assertThat(pipeline.metrics().filteredOut(), is(0L));
+	}
+
+	private static class ClosingException extends RuntimeException implements Closeable {
+		public void close() {
+		}
+	}
+}
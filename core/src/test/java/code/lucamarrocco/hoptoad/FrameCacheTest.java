@@ -0,0 +1,102 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class FrameCacheTest {
+
+	private static StackTraceElement frame(final int line) {
+		return new StackTraceElement("app.Service", "call", "Service.java", line);
+	}
+
+	private static FrameCache.Rendered rendered(final int line) {
+		return new FrameCache.Rendered(frame(line), "at app.Service.call(Service.java:" + line + ")", null, null, false);
+	}
+
+	@Test
+	public void testBacktracesOfTheSameKindShareFormattedFrames() {
+		final RuntimeException first = new RuntimeException("first");
+		final RuntimeException second = new RuntimeException("second");
+		second.setStackTrace(first.getStackTrace());
+
+		final QuietRubyBacktrace backtrace = new QuietRubyBacktrace(first);
+		final List<String> rules = new ArrayList<String>(backtrace.ignoreRules());
+		rules.remove(0);
+		final List<String> firstLines = strings(backtrace);
+		final FrameCache cache = FrameCache.of(QuietRubyBacktrace.class, rules);
+		final int cached = cache.size();
+		final List<String> secondLines = strings(new QuietRubyBacktrace(second));
+
+		assertThat(cached, is(greaterThan(0)));
+		assertThat(cache.size(), is(cached));
+		assertThat(secondLines, is(firstLines));
+		assertThat(FrameCache.of(Backtrace.class, rules), is(not(sameInstance(cache))));
+	}
+
+	@Test
+	public void testMessagesDoNotFillTheSharedRuleCache() {
+		strings(new QuietRubyBacktrace(new RuntimeException("warm up")));
+		final int cached = IgnoreRules.cachedPatterns();
+		for (int i = 0; i < 2000; i++) {
+			final List<String> lines = strings(new QuietRubyBacktrace(new RuntimeException("order " + i + " failed")));
+			assertThat(lines.isEmpty(), is(false));
+		}
+
+		assertThat(IgnoreRules.cachedPatterns(), is(cached));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsedHalf() {
+		final FrameCache cache = new FrameCache(10);
+		for (int i = 0; i < 10; i++) {
+			cache.put(rendered(i));
+		}
+		cache.get(frame(0));
+		cache.get(frame(1));
+
+		cache.put(rendered(10));
+
+		assertThat(cache.size(), is(lessThanOrEqualTo(6)));
+		assertThat(cache.get(frame(0)), is(notNullValue()));
+		assertThat(cache.get(frame(1)), is(notNullValue()));
+		assertThat(cache.get(frame(10)), is(notNullValue()));
+		assertThat(cache.get(frame(2)), is(nullValue()));
+	}
+
+	@Test
+	public void testKeepsTheFrameAddedFirst() {
+		final FrameCache cache = new FrameCache(10);
+		final FrameCache.Rendered first = cache.put(rendered(1));
+
+		assertThat(cache.put(rendered(1)), is(sameInstance(first)));
+		assertThat(cache.get(frame(1)), is(sameInstance(first)));
+	}
+
+	@Test
+	public void testMessageRuleStillAppliesToCachedFrames() {
+		final StackTraceElement[] trace = { frame(1), new StackTraceElement("app.Main", "main", "Main.java", 2) };
+		final RuntimeException warmUp = new RuntimeException("warm up");
+		warmUp.setStackTrace(trace);
+		final RuntimeException exception = new RuntimeException("Service.java");
+		exception.setStackTrace(trace);
+
+		assertThat(strings(new Backtrace(warmUp)), is(Arrays.asList("at app.Service.call(Service.java:1)", "at app.Main.main(Main.java:2)")));
+		assertThat(strings(new Backtrace(exception)), is(Arrays.asList("at app.Main.main(Main.java:2)")));
+	}
+
+	private static List<String> strings(final Backtrace backtrace) {
+		final List<String> strings = new ArrayList<String>();
+		for (final String string : backtrace) {
+			strings.add(string);
+		}
+		return strings;
+	}
+}
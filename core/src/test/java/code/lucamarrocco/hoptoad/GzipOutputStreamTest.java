@@ -0,0 +1,86 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.zip.*;
+
+import org.junit.*;
+
+public class GzipOutputStreamTest {
+
+	private static String gunzip(final byte[] gzipped) {
+		return Slurp.slurp(newGzipInput(gzipped));
+	}
+
+	private static InputStream newGzipInput(final byte[] gzipped) {
+		try {
+			return new GZIPInputStream(new ByteArrayInputStream(gzipped));
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Throwable deepThrowable(final int depth) {
+		if (depth == 0) return new IllegalStateException("boom");
+		return deepThrowable(depth - 1);
+	}
+
+	@Test
+	public void testNoticesShrinkSeveralTimes() throws Exception {
+		final HoptoadNotice notice = new HoptoadNoticeBuilderUsingFilteredSystemProperties(HoptoadNotifierTest.KEY, new Backtrace(), deepThrowable(150), "test").newNotice();
+		final byte[] xml = new HoptoadNotifier().toXml(notice);
+
+		final byte[] gzipped = GzipOutputStream.gzip(xml);
+
+		assertThat(gunzip(gzipped), is(new String(xml, "UTF-8")));
+		assertThat(xml.length / gzipped.length, is(greaterThanOrEqualTo(5)));
+	}
+
+	@Test
+	public void testPooledDeflatersStartFresh() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			final String document = "<notice>" + i + "</notice>";
+			assertThat(gunzip(GzipOutputStream.gzip(document.getBytes("UTF-8"))), is(document));
+		}
+		assertThat(gunzip(GzipOutputStream.gzip(new byte[0])), is(""));
+	}
+
+	@Test
+	public void testTransportsSendGzippedBodies() throws Exception {
+		final StubHoptoadServer server = new StubHoptoadServer();
+		final HoptoadTransport[] transports = { new HttpURLConnectionTransport(1000, 1000, true), new PooledHttpTransport(1, 1000, 1000, 1000, true), new NioHttpTransport(1, 1000, 1000, 1000, true) };
+		try {
+			final URL url = new URL(server.url());
+			for (final HoptoadTransport transport : transports) {
+				assertThat(transport.post(url, "<notice>bytes</notice>".getBytes("UTF-8")), is(200));
+				assertThat(transport.post(url, new HoptoadTransport.Body() {
+					public void writeTo(final OutputStream out) throws IOException {
+						out.write("<notice>".getBytes("UTF-8"));
+						out.write("streamed</notice>".getBytes("UTF-8"));
+					}
+				}), is(200));
+			}
+
+			assertThat(server.bodies().size(), is(6));
+			for (int i = 0; i < 6; i += 2) {
+				assertThat(server.bodies().get(i), is("<notice>bytes</notice>"));
+				assertThat(server.bodies().get(i + 1), is("<notice>streamed</notice>"));
+			}
+			for (final String encoding : server.encodings()) {
+				assertThat(encoding, is("gzip"));
+			}
+		} finally {
+			for (final HoptoadTransport transport : transports) {
+				transport.close();
+			}
+			server.stop();
+		}
+	}
+}
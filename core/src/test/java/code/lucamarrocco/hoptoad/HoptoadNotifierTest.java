@@ -157,6 +157,19 @@ public class HoptoadNotifierTest {
     assertNoticeReturnsSuccess(notice);
   }
 
+	@Test
+	public void testStreamsNoticeToConfiguredUrl() throws Exception {
+		final StubHoptoadServer server = new StubHoptoadServer();
+		try {
+			final HoptoadNotice notice = new HoptoadNoticeBuilder(KEY, newException(ERROR_MESSAGE), "test").newNotice();
+
+			assertThat(new HoptoadNotifier(server.url(), new HttpURLConnectionTransport()).notify(notice), is(200));
+			assertThat(server.bodies().get(0), is(new NoticeApi2(notice).toString()));
+		} finally {
+			server.stop();
+		}
+	}
+
   private void assertNoticeWithBacktraceReturnsSuccess(final String backtraceLine) throws InterruptedException {
     HoptoadNoticeBuilder builder = new HoptoadNoticeBuilder(KEY, ERROR_MESSAGE) {
       {
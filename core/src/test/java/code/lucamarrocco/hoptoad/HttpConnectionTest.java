@@ -0,0 +1,90 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+
+import javax.net.ssl.*;
+
+import org.junit.*;
+
+public class HttpConnectionTest {
+
+	private SSLServerSocket server;
+
+	@After
+	public void tearDown() throws IOException {
+		if (server != null) server.close();
+	}
+
+	/** A TLS server presenting the certificate in {@code keyStore}, and a client factory trusting it. */
+	private SSLSocketFactory serve(final String keyStore) throws Exception {
+		final KeyStore keys = KeyStore.getInstance("JKS");
+		final InputStream in = getClass().getClassLoader().getResourceAsStream(keyStore);
+		try {
+			keys.load(in, "changeit".toCharArray());
+		} finally {
+			in.close();
+		}
+		final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keys, "changeit".toCharArray());
+		final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(keys);
+		final SSLContext context = SSLContext.getInstance("TLS");
+		context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+
+		server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		final Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					final SSLSocket socket = (SSLSocket) server.accept();
+					try {
+						socket.startHandshake();
+						socket.getInputStream().read();
+					} finally {
+						socket.close();
+					}
+				} catch (final IOException e) {
+					// the client gave up on the connection
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return context.getSocketFactory();
+	}
+
+	private URL url() throws MalformedURLException {
+		return new URL("https://127.0.0.1:" + server.getLocalPort() + "/notifier_api/v2/notices");
+	}
+
+	@Test
+	public void testRefusesACertificateForAnotherHost() throws Exception {
+		final SSLSocketFactory trusting = serve("wrong-host.jks");
+
+		try {
+			new HttpConnection(url(), 1000, 1000, false, trusting);
+			fail("connected to a server whose certificate names another host");
+		} catch (final SSLPeerUnverifiedException e) {
+			assertThat(e.getMessage(), containsString("127.0.0.1"));
+		}
+	}
+
+	@Test
+	public void testAcceptsACertificateNamingTheHost() throws Exception {
+		final SSLSocketFactory trusting = serve("localhost.jks");
+
+		final HttpConnection connection = new HttpConnection(url(), 1000, 1000, false, trusting);
+
+		assertThat(connection.isReusable(), is(true));
+		connection.close();
+	}
+}
@@ -0,0 +1,97 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.Slurp.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.junit.*;
+
+public class IgnoreRulesTest {
+
+	private final List<String> rules = new ArrayList<String>(new QuietRubyBacktrace(Exceptions.newException("com.banana.MyClass{junk}")).ignoreRules());
+
+	@Before
+	public void setUp() {
+		rules.add("^Caused by $");
+	}
+
+	@Test
+	public void testWildcardRules() {
+		assertTrue(IgnoreRules.isWildcardRule(".*org.mortbay.jetty.Server.*"));
+		assertTrue(IgnoreRules.isWildcardRule(".*.*org.junit.internal.runners.*"));
+		assertTrue(IgnoreRules.isWildcardRule(".*inv1.invoke.*"));
+
+		assertFalse(IgnoreRules.isWildcardRule("^Caused by $"));
+		assertFalse(IgnoreRules.isWildcardRule(".*\\Qjunk\\E.*"));
+		assertFalse(IgnoreRules.isWildcardRule("org.mortbay.jetty.Server.*"));
+		assertFalse(IgnoreRules.isWildcardRule(".*org.mortbay.jetty.Server"));
+		assertFalse(IgnoreRules.isWildcardRule(".*.*"));
+		assertFalse(IgnoreRules.isWildcardRule(".*a$b.*"));
+	}
+
+	@Test
+	public void testSameResultsAsStringMatchesOnBacktraces() {
+		final List<String> lines = new ArrayList<String>();
+		lines.addAll(strings(slurp(read("backtrace.txt"))));
+		lines.addAll(strings(slurp(read("filteredBacktrace.txt"))));
+		lines.addAll(strings(ExceptionUtils.getStackTrace(Exceptions.newException("com.banana.MyClass{junk}"))));
+		lines.addAll(new Backtrace(Exceptions.newException(Exceptions.ERROR_MESSAGE)).ignoreRules());
+
+		assertSameResults(lines);
+	}
+
+	@Test
+	public void testSameResultsAsStringMatchesOnEdgeCases() {
+		assertSameResults(Arrays.asList(
+				"",
+				"Caused by ",
+				"Caused by com.banana.MyClass{junk}",
+				"at orgXmortbayXjettyXServer.handle(Server.java:324)",
+				"at org.mortbay.jetty.Serve",
+				"org.mortbay.jetty.Server",
+				"first line\nat org.mortbay.jetty.Server.handle(Server.java:324)",
+				"at org.mortbay.jetty.Server.handle(Server.java:324)\r",
+				"at org.mortbay.jetty.Server.handle(Server.java:324)\u2028",
+				"at sun\uD83D\uDE00reflect.Method",
+				"at sun.reflect\uD800",
+				"at inv1\u00e9invoke(:-1)",
+				"at com.banana.MyClass{junk}",
+				"at org.junit.internal.runners.TestMethod.invoke(TestMethod.java:59)"));
+	}
+
+	@Test
+	public void testSameResultsAsStringMatchesOnMutatedLines() {
+		final Random random = new Random(42);
+		final char[] alphabet = "abcXYZ.:_$(){}\n\r\u2028\u00e9\uD83D\uDE00 ".toCharArray();
+		final List<String> lines = new ArrayList<String>();
+		for (final String line : strings(slurp(read("backtrace.txt")))) {
+			final StringBuilder mutated = new StringBuilder(line);
+			for (int i = 0; i < 3 && mutated.length() > 0; i++) {
+				mutated.setCharAt(random.nextInt(mutated.length()), alphabet[random.nextInt(alphabet.length)]);
+			}
+			lines.add(mutated.toString());
+		}
+
+		assertSameResults(lines);
+	}
+
+	private void assertSameResults(final List<String> lines) {
+		final IgnoreRules ignoreRules = IgnoreRules.compile(rules);
+		for (final String line : lines) {
+			assertEquals(line, matchesAny(line), ignoreRules.matches(line));
+		}
+	}
+
+	private boolean matchesAny(final String line) {
+		for (final String rule : rules) {
+			if (line.matches(rule)) return true;
+		}
+		return false;
+	}
+}
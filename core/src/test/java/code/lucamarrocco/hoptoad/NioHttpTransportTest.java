@@ -0,0 +1,197 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class NioHttpTransportTest {
+
+	private StubHoptoadServer server;
+
+	private NioHttpTransport transport;
+
+	@Before
+	public void setUp() {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		if (transport != null) transport.close();
+		server.stop();
+	}
+
+	@Test
+	public void testFailsWhenNothingListens() throws Exception {
+		final ServerSocket socket = new ServerSocket(0);
+		final int port = socket.getLocalPort();
+		socket.close();
+		transport = new NioHttpTransport(1, 1000, 1000);
+
+		try {
+			transport.post(new URL("http://127.0.0.1:" + port + "/notifier_api/v2/notices"), "<notice/>".getBytes("UTF-8"));
+			fail();
+		} catch (final IOException e) {}
+		assertThat(transport.openConnections(), is(0));
+	}
+
+	@Test
+	public void testKeepsManyUploadsInFlightOverFewConnections() throws Exception {
+		transport = new NioHttpTransport(4, 1000, 5000);
+		final URL url = new URL(server.url());
+
+		final List<Future<Integer>> responses = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 200; i++) {
+			responses.add(transport.submit(url, ("<notice>" + i + "</notice>").getBytes("UTF-8")));
+		}
+		for (final Future<Integer> response : responses) {
+			assertThat(response.get(10, TimeUnit.SECONDS), is(200));
+		}
+
+		assertThat(server.bodies().size(), is(200));
+		assertThat(server.bodies(), hasItem("<notice>199</notice>"));
+		assertThat(server.connections(), is(lessThanOrEqualTo(4)));
+	}
+
+	@Test
+	public void testPostsAndReusesConnection() throws Exception {
+		transport = new NioHttpTransport(2, 1000, 1000);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8")), is(200));
+		}
+		server.respondWith(422);
+		assertThat(transport.post(new URL(server.url()), new HoptoadTransport.Body() {
+			public void writeTo(final OutputStream out) throws IOException {
+				out.write("<streamed/>".getBytes("UTF-8"));
+			}
+		}), is(422));
+
+		assertThat(server.bodies().get(5), is("<streamed/>"));
+		assertThat(server.connections(), is(1));
+		assertThat(transport.openConnections(), is(1));
+	}
+
+	@Test
+	public void testRecordsRetryAfter() throws Exception {
+		transport = new NioHttpTransport(1, 1000, 1000);
+		server.respondWith(503);
+		server.retryAfter("7");
+
+		assertThat(transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8")), is(503));
+		assertThat(RetryAfter.take(), is(7000L));
+	}
+
+	@Test
+	public void testReplaysRequestWhenKeptAliveConnectionWasClosed() throws Exception {
+		final ServerSocket oneShot = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final AtomicInteger accepted = new AtomicInteger();
+		final Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = oneShot.accept();
+						accepted.incrementAndGet();
+						readRequest(socket.getInputStream());
+						socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes("US-ASCII"));
+						socket.getOutputStream().flush();
+						Thread.sleep(50);
+						socket.close();
+					}
+				} catch (final Exception e) {}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			transport = new NioHttpTransport(1, 1000, 1000);
+			final URL url = new URL("http://127.0.0.1:" + oneShot.getLocalPort() + "/notifier_api/v2/notices");
+
+			assertThat(transport.post(url, "<notice/>".getBytes("UTF-8")), is(200));
+			Thread.sleep(200);
+			assertThat(transport.post(url, "<notice/>".getBytes("UTF-8")), is(200));
+			assertThat(accepted.get(), is(2));
+		} finally {
+			oneShot.close();
+		}
+	}
+
+	@Test
+	public void testMalformedContentLengthFailsOnlyItsRequest() throws Exception {
+		final ServerSocket collector = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int accepted = 0;; accepted++) {
+						final Socket socket = collector.accept();
+						readRequest(socket.getInputStream());
+						final String length = accepted == 0 ? "lots" : "0";
+						socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nContent-Length: " + length + "\r\n\r\n").getBytes("US-ASCII"));
+						socket.getOutputStream().flush();
+					}
+				} catch (final Exception e) {}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			transport = new NioHttpTransport(1, 1000, 1000);
+			final URL url = new URL("http://127.0.0.1:" + collector.getLocalPort() + "/notifier_api/v2/notices");
+
+			try {
+				transport.post(url, "<notice/>".getBytes("UTF-8"));
+				fail();
+			} catch (final IOException e) {
+				assertThat(e.getMessage(), containsString("malformed Content-Length"));
+			}
+			assertThat(transport.post(url, "<notice/>".getBytes("UTF-8")), is(200));
+		} finally {
+			collector.close();
+		}
+	}
+
+	@Test
+	public void testTimesOutOnSilentCollector() throws Exception {
+		final ServerSocket blackHole = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		try {
+			transport = new NioHttpTransport(1, 1000, 200);
+			final long start = System.currentTimeMillis();
+			try {
+				transport.post(new URL("http://127.0.0.1:" + blackHole.getLocalPort() + "/notifier_api/v2/notices"), "<notice/>".getBytes("UTF-8"));
+				fail();
+			} catch (final SocketTimeoutException e) {
+				assertThat(System.currentTimeMillis() - start, is(lessThan(5000L)));
+			}
+		} finally {
+			blackHole.close();
+		}
+	}
+
+	private static void readRequest(final InputStream in) throws IOException {
+		final StringBuilder head = new StringBuilder();
+		while (!head.toString().endsWith("\r\n\r\n")) {
+			final int c = in.read();
+			if (c == -1) throw new EOFException();
+			head.append((char) c);
+		}
+		final String lower = head.toString().toLowerCase();
+		final int at = lower.indexOf("content-length:");
+		final int length = Integer.parseInt(lower.substring(at + 15, lower.indexOf("\r\n", at)).trim());
+		for (int i = 0; i < length; i++) {
+			if (in.read() == -1) throw new EOFException();
+		}
+	}
+}
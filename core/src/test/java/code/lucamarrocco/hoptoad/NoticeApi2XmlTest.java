@@ -0,0 +1,231 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class NoticeApi2XmlTest {
+  @Test
+	public void testApiKey() {
+		assertThat(xml(), containsString("<api-key>" + HoptoadNotifierTest.KEY + "</api-key>"));
+	}
+
+  @Test
+	public void testError() {
+		assertThat(xml(), containsString("error>"));
+	}
+
+	@Test
+	public void testErrorBacktrace() {
+		assertThat(xml(), containsString("backtrace>"));
+	}
+
+	@Test
+	public void testErrorBacktraceLine() {
+		assertThat(xml(), containsString("<line method=\"org.junit.internal.runners.MethodRoadie.run\" file=\"MethodRoadie.java\" number=\"42\"/>"));
+	}
+
+	@Test
+	public void testErrorClass() {
+		assertThat(xml(), containsString("<class>java.lang.RuntimeException</class>"));
+	}
+
+	@Test
+	public void testErrorMessage() {
+		assertThat(xml(), containsString("<message>errorMessage</message>"));
+	}
+
+	@Test
+	public void testNoticeVersion() {
+		assertThat(xml(), containsString("notice version=\"2.0.0\""));
+	}
+
+	@Test
+	public void testNotifier() {
+		assertThat(xml(), containsString("notifier>"));
+	}
+	
+	@Test
+	public void testNotifierName() {
+		assertThat(xml(), containsString("<name>hoptoad</name>"));
+	}
+	
+	@Test
+	public void testNotifierUrl() {
+		assertThat(xml(), containsString("<url>http://hoptoad.googlecode.com</url>"));
+	}
+
+	@Test
+	public void testNotifierVersion() {
+		assertThat(xml(), containsString("<version>1.7-socrata-SNAPSHOT</version>"));
+	}
+
+  @Test
+  public void testEscapesAngleBrackets() throws Exception {
+    assertThat(xml(), containsString("&lt;blink&gt;production&lt;/blink&gt;"));
+  }
+
+  @Test
+  public void testSendsRequest() throws Exception {
+    HoptoadNoticeBuilder builder = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()) {
+      {
+        setRequest("http://example.com", "carburetor");
+        addSessionKey("lights", "<blink>");
+        addSessionKey("color", "orange");
+      }
+    };
+
+    String expected = "<request>" +
+        "<url>http://example.com</url>" +
+        "<component>carburetor</component>" +
+        "<session><var key=\"color\">orange</var><var key=\"lights\">&lt;blink&gt;</var></session>";
+    assertThat(xml(builder), containsString(expected));
+  }
+
+  @Test
+  public void testSendsAnnotationsAsCgiData() throws Exception {
+    HoptoadNotice notice = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()).newNotice();
+
+    notice.annotate("hoptoad.occurrences", 42L);
+
+    assertThat(new NoticeApi2(notice).toString(), containsString("<cgi-data><var key=\"hoptoad.occurrences\">42</var></cgi-data>"));
+  }
+
+  @Test
+  public void testEscapesVarKeys() throws Exception {
+    HoptoadNotice notice = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()).newNotice();
+
+    notice.annotate("a\"b<c", "d");
+
+    assertThat(new NoticeApi2(notice).toString(), containsString("<var key=\"a&quot;b&lt;c\">d</var>"));
+  }
+
+  @Test
+  public void testStreamsSameDocumentAsUtf8() throws Exception {
+    HoptoadNotice notice = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, new RuntimeException("caf\u00e9 \u2603")).newNotice();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NoticeApi2(notice, out);
+
+    assertThat(new String(out.toByteArray(), "UTF-8"), is(new NoticeApi2(notice).toString()));
+  }
+
+  @Test
+  public void testStreamsToChannel() throws Exception {
+    HoptoadNotice notice = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()).newNotice();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NoticeApi2(notice, Channels.newChannel(out));
+
+    assertThat(new String(out.toByteArray(), "UTF-8"), is(new NoticeApi2(notice).toString()));
+  }
+
+  @Test
+  public void testCutsNoticesDownToTheirLimit() throws Exception {
+    StackTraceElement[] frames = new StackTraceElement[10000];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = new StackTraceElement("app.Recursive", "call" + i, "Recursive.java", i);
+    }
+    RuntimeException overflow = new RuntimeException(StringUtils.repeat("m", 10000));
+    overflow.setStackTrace(frames);
+    final Map<String, Object> params = new TreeMap<String, Object>();
+    params.put("body", StringUtils.repeat("<b>", 50000));
+    HoptoadNoticeBuilder builder = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, overflow) {
+      {
+        setRequest("http://example.com", "carburetor");
+        request(params);
+      }
+    };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NoticeApi2(builder.newNotice(), out, 16384);
+
+    String xml = new String(out.toByteArray(), "UTF-8");
+    assertThat(out.size(), is(lessThanOrEqualTo(16384)));
+    assertThat(xml, containsString("mmm...</message>"));
+    assertThat(xml, containsString("<line method=\"app.Recursive.call0\" file=\"Recursive.java\" number=\"0\"/>"));
+    assertThat(xml, containsString("<line method=\"app.Recursive.call9999\" file=\"Recursive.java\" number=\"9999\"/>"));
+    assertThat(xml, containsString("frames omitted\" file=\"\" number=\"-1\"/>"));
+    assertThat(xml, containsString("...</var></params>"));
+    assertThat(xml, containsString("<var key=\"" + NoticeApi2.TRUNCATED + "\">"));
+    DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  @Test
+  public void testDropsEnvironmentBeforeParamsAndAnnotations() throws Exception {
+    final Map<String, Object> params = new TreeMap<String, Object>();
+    final Map<String, Object> environment = new TreeMap<String, Object>();
+    for (int i = 0; i < 5; i++) {
+      params.put("param" + i, "kept");
+    }
+    for (int i = 0; i < 500; i++) {
+      environment.put("env" + i, StringUtils.repeat("e", 100));
+    }
+    HoptoadNoticeBuilder builder = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()) {
+      {
+        setRequest("http://example.com", "carburetor");
+        request(params);
+        environment(environment);
+      }
+    };
+    HoptoadNotice notice = builder.newNotice();
+    notice.annotate("hoptoad.occurrences", 42L);
+
+    String xml = new NoticeApi2(notice, 8192).toString();
+
+    assertThat(xml.length(), is(lessThanOrEqualTo(8192)));
+    assertThat(xml, containsString("<var key=\"param4\">kept</var>"));
+    assertThat(xml, containsString("<cgi-data><var key=\"hoptoad.occurrences\">42</var>"));
+    assertThat(xml, containsString(" vars</var></cgi-data>"));
+    assertThat(StringUtils.countMatches(xml, "<var key=\"env"), is(lessThan(500)));
+  }
+
+  @Test
+  public void testLeavesNoticesWithinTheirLimitAlone() throws Exception {
+    HoptoadNotice notice = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()).newNotice();
+
+    String xml = new NoticeApi2(notice, NoticeApi2.DEFAULT_MAX_BYTES).toString();
+
+    assertThat(xml, is(new NoticeApi2(notice).toString()));
+    assertThat(xml, not(containsString(NoticeApi2.TRUNCATED)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsLimitsTooSmallForANotice() throws Exception {
+    new NoticeApi2(new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable()).newNotice(), 100);
+  }
+
+  private RuntimeException newThrowable() {
+    return new RuntimeException("errorMessage");
+  }
+
+  private String xml() {
+    String env = "<blink>production</blink>";
+    HoptoadNoticeBuilder builder = new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, newThrowable(), env);
+    return xml(builder);
+  }
+
+  private String xml(HoptoadNoticeBuilder builder) {
+    HoptoadNotice notice = builder.newNotice();
+    NoticeApi2 noticeApi2 = new NoticeApi2(notice);
+    return noticeApi2.toString();
+  }
+}
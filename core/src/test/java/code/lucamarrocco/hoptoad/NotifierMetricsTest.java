@@ -0,0 +1,121 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.*;
+import java.util.*;
+
+import javax.management.*;
+
+import org.junit.*;
+
+public class NotifierMetricsTest {
+
+	private StubHoptoadServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	private static HoptoadNotice newNotice() {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, "metered").newNotice();
+	}
+
+	@Test
+	public void testPipelineRegistersAnMBean() throws Exception {
+		final HoptoadPipeline pipeline = new HoptoadPipeline();
+		pipeline.setApi_key(HoptoadNotifierTest.KEY);
+		pipeline.setName("metered-pipeline");
+		pipeline.setUrl(server.url());
+		pipeline.setJmx(true);
+		pipeline.setDedup(true);
+		pipeline.notifier();
+		final ObjectName name = new ObjectName(NotifierMetrics.DOMAIN + ":type=NotifierMetrics,name=\"metered-pipeline\"");
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (int i = 0; i < 3; i++) {
+				pipeline.notifier().notify(pipeline.newNoticeFor(new RuntimeException("same"), null));
+			}
+
+			assertThat((Long) server.getAttribute(name, "Built"), is(3L));
+			assertThat((Long) server.getAttribute(name, "Sent"), is(1L));
+			assertThat((Long) server.getAttribute(name, "Deduplicated"), is(2L));
+			assertThat((String) server.getAttribute(name, "StatusCounts"), is("200=1"));
+			assertThat((Long) server.getAttribute(name, "SendMaxMicros"), is(greaterThan(0L)));
+		} finally {
+			pipeline.close();
+		}
+		assertThat(server.isRegistered(name), is(false));
+	}
+
+	@Test
+	public void testCountsSentAndFailedPostsByStatus() throws Exception {
+		final NotifierMetrics metrics = new NotifierMetrics();
+		final HoptoadNotifier notifier = new HoptoadNotifier(server.url(), new HttpURLConnectionTransport(), NoticeApi2.UNBOUNDED, metrics);
+
+		notifier.notify(newNotice());
+		notifier.notify(newNotice());
+		server.respondWith(503);
+		notifier.notify(newNotice());
+		notifier.transport().post(notifier.url(), notifier.toXml(newNotice()));
+
+		assertThat(metrics.sent(), is(2L));
+		assertThat(metrics.failed(), is(2L));
+		assertThat(metrics.status(200), is(2L));
+		assertThat(metrics.statusCounts().toString(), is("{200=2, 503=2}"));
+		assertThat(metrics.inFlight(), is(0));
+		assertThat(metrics.sendLatency().count(), is(4L));
+		assertThat(metrics.serializeLatency().count(), is(4L));
+	}
+
+	@Test
+	public void testCountsPostsThatGetNoResponseAsFailed() throws Exception {
+		final NotifierMetrics metrics = new NotifierMetrics();
+		server.stop();
+		final HoptoadNotifier notifier = new HoptoadNotifier(server.url(), new HttpURLConnectionTransport(), NoticeApi2.UNBOUNDED, metrics);
+
+		notifier.notify(newNotice());
+
+		assertThat(metrics.failed(), is(1L));
+		assertThat(metrics.inFlight(), is(0));
+		assertThat(metrics.statusCounts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testHistogramBucketsAreWithinAQuarter() {
+		final Random random = new Random(7);
+		for (int i = 0; i < 10000; i++) {
+			final long nanos = i < 100 ? i : (random.nextLong() >>> 1) >>> random.nextInt(63);
+			final int bucket = LatencyHistogram.bucket(nanos);
+			assertThat(nanos <= LatencyHistogram.upperBound(bucket), is(true));
+			assertThat(bucket == 0 || nanos > LatencyHistogram.upperBound(bucket - 1), is(true));
+			assertThat((double) LatencyHistogram.upperBound(bucket), is(lessThanOrEqualTo(nanos * 1.25 + 1)));
+		}
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros * 1000L);
+		}
+
+		assertThat(histogram.count(), is(1000L));
+		assertThat(histogram.maxNanos(), is(1000000L));
+		assertThat(histogram.meanNanos(), is(500500.0));
+		assertThat((double) histogram.percentileNanos(0.5), is(closeTo(500000, 125000)));
+		assertThat((double) histogram.percentileNanos(0.99), is(closeTo(990000, 10000)));
+		assertThat(histogram.percentileNanos(1.0), is(1000000L));
+	}
+}
@@ -0,0 +1,116 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class PooledHttpTransportTest {
+
+	private StubHoptoadServer server;
+
+	private PooledHttpTransport transport;
+
+	@Before
+	public void setUp() {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		if (transport != null) transport.close();
+		server.stop();
+	}
+
+	@Test
+	public void testReusesConnectionBetweenPosts() throws Exception {
+		transport = new PooledHttpTransport(2, 30000);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8")), is(200));
+		}
+
+		assertThat(server.bodies().size(), is(5));
+		assertThat(server.connections(), is(1));
+		assertThat(transport.idleConnections(), is(1));
+	}
+
+	@Test
+	public void testPostTimingOutOnAPooledConnectionIsNotSentAgain() throws Exception {
+		transport = new PooledHttpTransport(1, 30000, 1000, 100);
+		transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8"));
+		server.respondAfter(300);
+
+		try {
+			transport.post(new URL(server.url()), "<slow/>".getBytes("UTF-8"));
+			fail("the post did not time out");
+		} catch (final SocketTimeoutException e) {
+			// the server has the notice, it just has not answered
+		}
+		Thread.sleep(500);
+
+		assertThat(server.bodies(), is(Arrays.asList("<notice/>", "<slow/>")));
+	}
+
+	@Test
+	public void testDrainsErrorResponses() throws Exception {
+		transport = new PooledHttpTransport(1, 30000);
+		server.respondWith(422);
+
+		assertThat(transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8")), is(422));
+		assertThat(transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8")), is(422));
+
+		assertThat(server.connections(), is(1));
+	}
+
+	@Test
+	public void testEvictsIdleConnections() throws Exception {
+		transport = new PooledHttpTransport(1, 50);
+
+		transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8"));
+		assertThat(transport.idleConnections(), is(1));
+
+		Thread.sleep(300);
+
+		assertThat(transport.idleConnections(), is(0));
+	}
+
+	@Test
+	public void testStreamsChunkedBody() throws Exception {
+		transport = new PooledHttpTransport();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			expected.append("<line number=\"").append(i).append("\"/>");
+		}
+
+		final int status = transport.post(new URL(server.url()), new HoptoadTransport.Body() {
+			public void writeTo(final OutputStream out) throws IOException {
+				out.write(expected.toString().getBytes("UTF-8"));
+			}
+		});
+		transport.post(new URL(server.url()), "<notice/>".getBytes("UTF-8"));
+
+		assertThat(status, is(200));
+		assertThat(server.bodies().get(0), is(expected.toString()));
+		assertThat(server.connections(), is(1));
+	}
+
+	@Test
+	public void testNotifierPostsThroughTransport() throws Exception {
+		transport = new PooledHttpTransport();
+		final HoptoadNotifier notifier = new HoptoadNotifier(server.url(), transport);
+
+		final int status = notifier.notify(new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, "errorMessage").newNotice());
+
+		assertThat(status, is(200));
+		assertThat(server.bodies().get(0), containsString("<message>errorMessage</message>"));
+	}
+}
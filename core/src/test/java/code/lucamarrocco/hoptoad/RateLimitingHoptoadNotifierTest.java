@@ -0,0 +1,134 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.RecordingNotifier.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class RateLimitingHoptoadNotifierTest {
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier();
+
+	private final List<HoptoadNotice> sent = recordingNotifier.sent();
+
+	@Test
+	public void testBucketAllowsBurstThenRefills() {
+		final long second = TimeUnit.SECONDS.toNanos(1);
+		final TokenBucket bucket = new TokenBucket(2, 3, 0);
+
+		assertThat(bucket.tryAcquire(0), is(true));
+		assertThat(bucket.tryAcquire(0), is(true));
+		assertThat(bucket.tryAcquire(0), is(true));
+		assertThat(bucket.tryAcquire(0), is(false));
+
+		assertThat(bucket.tryAcquire(second / 2), is(true));
+		assertThat(bucket.tryAcquire(second / 2), is(false));
+
+		assertThat(bucket.tryAcquire(10 * second), is(true));
+		assertThat(bucket.tryAcquire(10 * second), is(true));
+		assertThat(bucket.tryAcquire(10 * second), is(true));
+		assertThat(bucket.tryAcquire(10 * second), is(false));
+	}
+
+	@Test
+	public void testReleasedTokenCanBeTakenAgain() {
+		final TokenBucket bucket = new TokenBucket(1, 1, 0);
+
+		assertThat(bucket.tryAcquire(0), is(true));
+		assertThat(bucket.tryAcquire(0), is(false));
+		bucket.release();
+		assertThat(bucket.tryAcquire(0), is(true));
+	}
+
+	@Test
+	public void testBucketHandsOutExactlyBurstUnderContention() throws Exception {
+		final TokenBucket bucket = new TokenBucket(0.001, 500, 0);
+		final AtomicInteger acquired = new AtomicInteger();
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (final InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						if (bucket.tryAcquire(0)) acquired.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertThat(acquired.get(), is(500));
+	}
+
+	@Test
+	public void testErrorClassesHaveTheirOwnBuckets() {
+		final RateLimitingHoptoadNotifier notifier = new RateLimitingHoptoadNotifier(recordingNotifier, 0, 0, 0.001, 2);
+
+		for (int i = 0; i < 5; i++) {
+			notifier.notify(newNotice(new IllegalStateException("boom")));
+			notifier.notify(newNotice(new IllegalArgumentException("bang")));
+		}
+
+		assertThat(sent.size(), is(4));
+		assertThat(notifier.suppressed(), is(6L));
+	}
+
+	@Test
+	public void testNextNoticeCarriesSuppressedCount() {
+		final RateLimitingHoptoadNotifier notifier = new RateLimitingHoptoadNotifier(recordingNotifier, 0, 0, 0.001, 1);
+
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		notifier.notify(newNotice(new IllegalArgumentException("bang")));
+		notifier.notify(newNotice(new UnsupportedOperationException("bust")));
+
+		assertThat(sent.size(), is(3));
+		assertThat(sent.get(0).annotations().isEmpty(), is(true));
+		assertThat(sent.get(1).annotations().get(RateLimitingHoptoadNotifier.SUPPRESSED), is((Object) 2L));
+		assertThat(sent.get(2).annotations().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testNoticesRefusedGloballyKeepTheirErrorClassBudget() throws Exception {
+		final RateLimitingHoptoadNotifier notifier = new RateLimitingHoptoadNotifier(recordingNotifier, 20, 1, 0.001, 2);
+
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		Thread.sleep(100);
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+
+		assertThat(sent.size(), is(2));
+		assertThat(notifier.suppressed(), is(1L));
+	}
+
+	@Test
+	public void testGlobalLimitAppliesAcrossErrorClasses() {
+		final RateLimitingHoptoadNotifier notifier = new RateLimitingHoptoadNotifier(recordingNotifier, 0.001, 3, 0, 0);
+
+		notifier.notify(newNotice(new IllegalStateException("boom")));
+		notifier.notify(newNotice(new IllegalArgumentException("bang")));
+		notifier.notify(newNotice(new UnsupportedOperationException("bust")));
+		notifier.notify(newNotice(new NullPointerException("null")));
+
+		assertThat(sent.size(), is(3));
+		assertThat(notifier.suppressed(), is(1L));
+	}
+}
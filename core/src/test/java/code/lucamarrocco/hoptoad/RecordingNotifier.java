@@ -0,0 +1,64 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A notifier that keeps the notices handed to it instead of sending them, for
+ * the tests of the stages in front of it. Given a latch, it holds every notice
+ * until the latch is released.
+ */
+public class RecordingNotifier extends HoptoadNotifier {
+
+	private final List<HoptoadNotice> sent = new CopyOnWriteArrayList<HoptoadNotice>();
+
+	private final CountDownLatch release;
+
+	public RecordingNotifier() {
+		this(new CountDownLatch(0));
+	}
+
+	public RecordingNotifier(final CountDownLatch release) {
+		this.release = release;
+	}
+
+	public static HoptoadNotice newNotice(final String message) {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, message).newNotice();
+	}
+
+	public static HoptoadNotice newNotice(final Throwable throwable) {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, throwable).newNotice();
+	}
+
+	@Override
+	public int notify(final HoptoadNotice notice) {
+		try {
+			release.await();
+		} catch (final InterruptedException e) {
+			return 0;
+		}
+		sent.add(notice);
+		return 200;
+	}
+
+	/** An enabled pipeline that hands its notices to this notifier. */
+	public HoptoadPipeline pipeline() {
+		final HoptoadPipeline pipeline = new HoptoadPipeline() {
+			@Override
+			protected HoptoadNotifier newNotifier(final NotifierMetrics metrics) {
+				return RecordingNotifier.this;
+			}
+		};
+		pipeline.setApi_key(HoptoadNotifierTest.KEY);
+		pipeline.setEnabled(true);
+		return pipeline;
+	}
+
+	public List<HoptoadNotice> sent() {
+		return sent;
+	}
+}
@@ -0,0 +1,233 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class RetryingTransportTest {
+
+	private static final byte[] XML = new byte[] { '<', 'n', '/', '>' };
+
+	private final List<Long> sleeps = new ArrayList<Long>();
+
+	private URL url;
+
+	@Before
+	public void setUp() throws Exception {
+		url = new URL(HoptoadNotifier.NOTICES_URL);
+	}
+
+	@Test
+	public void testBatchRetriesOnlyRetryableDocuments() throws Exception {
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		final HoptoadTransport flaky = new ScriptedTransport() {
+			@Override
+			public int[] post(final URL url, final List<byte[]> xml) {
+				batchSizes.add(xml.size());
+				return batchSizes.size() == 1 ? new int[] { 200, 503, 422 } : new int[] { 200 };
+			}
+		};
+
+		final int[] statusCodes = newTransport(flaky, 3, 5).post(url, Arrays.asList(XML, XML, XML));
+
+		assertThat(statusCodes[0], is(200));
+		assertThat(statusCodes[1], is(200));
+		assertThat(statusCodes[2], is(422));
+		assertThat(batchSizes, is(Arrays.asList(3, 1)));
+	}
+
+	@Test
+	public void testBatchFailingMidwayRetriesOnlyUnansweredDocuments() throws Exception {
+		final ScriptedTransport reset = new ScriptedTransport(200, new SocketException("Connection reset"), 200);
+		final byte[] first = "<n>1</n>".getBytes(), second = "<n>2</n>".getBytes(), third = "<n>3</n>".getBytes();
+
+		final int[] statusCodes = newTransport(reset, 3, 5).post(url, Arrays.asList(first, second, third));
+
+		assertThat(statusCodes[0], is(200));
+		assertThat(statusCodes[1], is(200));
+		assertThat(statusCodes[2], is(200));
+		assertThat(reset.posted, is(Arrays.asList(first, second, second, third)));
+	}
+
+	@Test
+	public void testBatchGivingUpReportsTheAnsweredDocuments() throws Exception {
+		final ScriptedTransport reset = new ScriptedTransport(200, new SocketException("Connection reset"));
+
+		try {
+			newTransport(reset, 2, 5).post(url, Arrays.asList(XML, XML));
+			fail();
+		} catch (final PartialPostException e) {
+			assertThat(e.statusCodes()[0], is(200));
+			assertThat(e.statusCodes()[1], is(0));
+			assertThat(e.getCause(), is(instanceOf(SocketException.class)));
+		}
+		assertThat(reset.posts, is(3));
+	}
+
+	@Test
+	public void testBreakerOpensAfterFailuresAndHalfOpensAfterReset() {
+		final CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+
+		breaker.onFailure(0);
+		breaker.onFailure(0);
+		assertThat(breaker.allowRequest(0), is(true));
+		breaker.onFailure(0);
+
+		assertThat(breaker.allowRequest(999), is(false));
+		assertThat(breaker.allowRequest(1000), is(true));
+		assertThat(breaker.allowRequest(1000), is(false));
+
+		breaker.onFailure(1000);
+		assertThat(breaker.allowRequest(1999), is(false));
+		assertThat(breaker.allowRequest(2000), is(true));
+
+		breaker.onSuccess();
+		assertThat(breaker.isOpen(), is(false));
+		assertThat(breaker.allowRequest(2000), is(true));
+		assertThat(breaker.rejected(), is(3L));
+	}
+
+	@Test
+	public void testHalfOpenTrialThatThrowsOpensTheBreakerAgain() throws Exception {
+		final ScriptedTransport broken = new ScriptedTransport(new IOException("connection refused"), new IllegalStateException("bad body"), new IllegalStateException("bad body"), 200, 200);
+		final RetryingTransport transport = new RetryingTransport(broken, new RetryPolicy(1, 10, 10), new CircuitBreaker(1, 1));
+
+		try {
+			transport.post(url, XML);
+			fail();
+		} catch (final IOException e) {}
+		Thread.sleep(5);
+		try {
+			transport.post(url, XML);
+			fail();
+		} catch (final IllegalStateException e) {}
+		assertThat(transport.breaker().isOpen(), is(true));
+		Thread.sleep(5);
+		try {
+			transport.post(url, Arrays.asList(XML));
+			fail();
+		} catch (final IllegalStateException e) {}
+		Thread.sleep(5);
+
+		assertThat(transport.post(url, XML), is(200));
+		assertThat(transport.breaker().isOpen(), is(false));
+	}
+
+	@Test
+	public void testDelaysUseFullJitterUpToMaxDelay() {
+		final RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(policy.delayMillis(1, -1), is(lessThanOrEqualTo(100L)));
+			assertThat(policy.delayMillis(3, -1), is(lessThanOrEqualTo(400L)));
+			assertThat(policy.delayMillis(9, -1), is(lessThanOrEqualTo(1000L)));
+		}
+		assertThat(policy.delayMillis(10, -1), is(-1L));
+	}
+
+	@Test
+	public void testOpenBreakerRefusesWithoutPosting() throws Exception {
+		final ScriptedTransport down = new ScriptedTransport(new IOException("connection refused"));
+		final RetryingTransport transport = newTransport(down, 1, 2);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				transport.post(url, XML);
+				fail();
+			} catch (final IOException e) {
+				assertThat(e, is(not(instanceOf(CircuitOpenException.class))));
+			}
+		}
+		try {
+			transport.post(url, XML);
+			fail();
+		} catch (final CircuitOpenException e) {}
+
+		assertThat(down.posts, is(2));
+		assertThat(new HoptoadNotifier(HoptoadNotifier.NOTICES_URL, transport).notify(new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, "down").newNotice()), is(0));
+		assertThat(down.posts, is(2));
+	}
+
+	@Test
+	public void testParsesRetryAfterSecondsAndDates() {
+		assertThat(RetryAfter.parse("120", 0), is(120000L));
+		assertThat(RetryAfter.parse("Thu, 01 Jan 1970 00:00:30 GMT", 10000), is(20000L));
+		assertThat(RetryAfter.parse("soon", 0), is(-1L));
+	}
+
+	@Test
+	public void testRetriesServerErrorsUntilAccepted() throws Exception {
+		final ScriptedTransport flaky = new ScriptedTransport(503, new IOException("reset"), 200);
+		final RetryingTransport transport = newTransport(flaky, 5, 5);
+
+		assertThat(transport.post(url, XML), is(200));
+		assertThat(flaky.posts, is(3));
+		assertThat(transport.retries(), is(2L));
+		assertThat(transport.breaker().isOpen(), is(false));
+	}
+
+	@Test
+	public void testRetryAfterBeyondMaxDelayIsNotWaitedFor() throws Exception {
+		final StubHoptoadServer server = new StubHoptoadServer();
+		try {
+			server.respondWith(429);
+			server.retryAfter("5");
+			final URL stub = new URL(server.url());
+
+			for (final HoptoadTransport delegate : new HoptoadTransport[] { new HttpURLConnectionTransport(), new PooledHttpTransport() }) {
+				final RetryingTransport transport = new RetryingTransport(delegate, new RetryPolicy(3, 10, 1000), new CircuitBreaker(10, 1000));
+				assertThat(transport.post(stub, XML), is(429));
+				assertThat(transport.retries(), is(0L));
+				transport.close();
+			}
+
+			server.retryAfter("0");
+			final RetryingTransport transport = newTransport(new HttpURLConnectionTransport(), 3, 10);
+			assertThat(transport.post(stub, XML), is(429));
+			assertThat(transport.retries(), is(2L));
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRetryAfterIsHonored() throws Exception {
+		final HoptoadTransport throttled = new ScriptedTransport(429, 200) {
+			@Override
+			public int post(final URL url, final byte[] xml) throws IOException {
+				final int statusCode = super.post(url, xml);
+				if (statusCode == 429) RetryAfter.record("3");
+				return statusCode;
+			}
+		};
+
+		assertThat(newTransport(throttled, 3, 5).post(url, XML), is(200));
+		assertThat(sleeps, is(Arrays.asList(3000L)));
+	}
+
+	@Test
+	public void testStopsAtClientErrors() throws Exception {
+		final ScriptedTransport rejecting = new ScriptedTransport(422);
+
+		assertThat(newTransport(rejecting, 5, 1).post(url, XML), is(422));
+		assertThat(rejecting.posts, is(1));
+	}
+
+	private RetryingTransport newTransport(final HoptoadTransport delegate, final int attempts, final int failureThreshold) {
+		return new RetryingTransport(delegate, new RetryPolicy(attempts, 10, 10000), new CircuitBreaker(failureThreshold, 60000)) {
+			@Override
+			protected void sleep(final long millis) {
+				sleeps.add(millis);
+			}
+		};
+	}
+}
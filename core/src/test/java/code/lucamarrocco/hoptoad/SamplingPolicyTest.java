@@ -0,0 +1,114 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class SamplingPolicyTest {
+
+	private final RecordingNotifier recording = new RecordingNotifier();
+
+	private final List<HoptoadNotice> sent = recording.sent();
+
+	@Test
+	public void testEveryNthKeepsTheFirstThenOneInN() {
+		final EveryNthSamplingPolicy policy = new EveryNthSamplingPolicy(2, 3);
+		final double[] weights = new double[8];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = policy.sample(new IllegalStateException(), 0);
+		}
+
+		assertThat(Arrays.toString(weights), is("[1.0, 1.0, 0.0, 0.0, 3.0, 0.0, 0.0, 3.0]"));
+		assertThat(policy.sample(new IllegalArgumentException(), 0), is(1.0));
+		assertThat(policy.kept(), is(5L));
+		assertThat(policy.rejected(), is(4L));
+	}
+
+	@Test
+	public void testEveryNthStartsOverInTheNextWindow() {
+		final EveryNthSamplingPolicy policy = new EveryNthSamplingPolicy(1, 100, 1000, 10);
+		policy.sample(new IllegalStateException(), 0);
+
+		assertThat(policy.sample(new IllegalStateException(), 999), is(0.0));
+		assertThat(policy.sample(new IllegalStateException(), 1000), is(1.0));
+	}
+
+	@Test
+	public void testKeysAreBounded() {
+		final EveryNthSamplingPolicy policy = new EveryNthSamplingPolicy(1, 100, 1000, 2);
+		policy.sample(new IllegalStateException(), 0);
+		policy.sample(new IllegalArgumentException(), 0);
+		policy.sample(new UnsupportedOperationException(), 0);
+
+		assertThat(policy.sample(new UnsupportedOperationException(), 0), is(0.0));
+	}
+
+	@Test
+	public void testReservoirWeightsEstimateTheCount() {
+		final ReservoirSamplingPolicy policy = new ReservoirSamplingPolicy(10, 60000, 10, Fingerprint.DEFAULT_FRAMES, new Random(42));
+		final RuntimeException exception = new RuntimeException("hot");
+		double total = 0;
+		int kept = 0;
+		for (int i = 0; i < 10000; i++) {
+			final double weight = policy.sample(exception, 0);
+			if (i < 10) assertThat(weight, is(1.0));
+			if (weight > 0) kept++;
+			total += weight;
+		}
+
+		assertThat(kept, is(lessThan(200)));
+		assertThat(Math.abs(total - 10000) / 10000, is(lessThan(0.2)));
+	}
+
+	@Test
+	public void testErrorsSampledOutAreNotBuilt() {
+		final HoptoadPipeline pipeline = recording.pipeline();
+		pipeline.setSampleFirst(1);
+		pipeline.setSampleEvery(2);
+		for (int i = 0; i < 5; i++) {
+			pipeline.notify(new IllegalStateException("hot"), null, 1234567890L);
+		}
+
+		assertThat(sent.size(), is(3));
+		assertThat(pipeline.metrics().built(), is(3L));
+		assertThat(pipeline.metrics().sampledOut(), is(2L));
+		assertThat(sent.get(0).annotations().get(SamplingPolicy.WEIGHT), is((Object) 1L));
+		assertThat(sent.get(1).annotations().get(SamplingPolicy.WEIGHT), is((Object) 2L));
+		assertThat(sent.get(2).createdAt(), is(1234567890L));
+	}
+
+	@Test
+	public void testWeightsOfPoliciesMultiply() {
+		final HoptoadPipeline pipeline = recording.pipeline();
+		pipeline.addSamplingPolicy(new SamplingPolicy() {
+			public double sample(final Throwable throwable, final long now) {
+				return 2;
+			}
+		});
+		pipeline.addSamplingPolicy(new SamplingPolicy() {
+			public double sample(final Throwable throwable, final long now) {
+				return 1.5;
+			}
+		});
+		pipeline.notify(new IllegalStateException(), null, 0);
+
+		assertThat(sent.get(0).annotations().get(SamplingPolicy.WEIGHT), is((Object) 3L));
+	}
+
+	@Test
+	public void testWithoutPoliciesNoticesAreNotAnnotated() {
+		final HoptoadPipeline pipeline = recording.pipeline();
+		pipeline.notify(new IllegalStateException(), null, 0);
+
+		assertThat(sent.size(), is(1));
+		assertThat(sent.get(0).annotations().containsKey(SamplingPolicy.WEIGHT), is(false));
+		assertThat(pipeline.metrics().sampledOut(), is(0L));
+	}
+}
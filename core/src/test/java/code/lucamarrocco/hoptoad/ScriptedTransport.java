@@ -0,0 +1,52 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Answers each post with the next status code, or throws the next exception; the last outcome repeats. */
+class ScriptedTransport implements HoptoadTransport {
+
+	private final Object[] outcomes;
+
+	final List<byte[]> posted = new CopyOnWriteArrayList<byte[]>();
+
+	volatile int posts;
+
+	ScriptedTransport(final Object... outcomes) {
+		this.outcomes = outcomes;
+	}
+
+	public void close() {}
+
+	public synchronized int post(final URL url, final byte[] xml) throws IOException {
+		posted.add(xml);
+		final Object outcome = outcomes[Math.min(posts++, outcomes.length - 1)];
+		if (outcome instanceof IOException) throw (IOException) outcome;
+		if (outcome instanceof RuntimeException) throw (RuntimeException) outcome;
+		return (Integer) outcome;
+	}
+
+	public int post(final URL url, final Body xml) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		xml.writeTo(out);
+		return post(url, out.toByteArray());
+	}
+
+	public int[] post(final URL url, final List<byte[]> xml) throws IOException {
+		final int[] statusCodes = new int[xml.size()];
+		try {
+			for (int i = 0; i < statusCodes.length; i++) {
+				statusCodes[i] = post(url, xml.get(i));
+			}
+		} catch (final IOException e) {
+			throw PartialPostException.of(statusCodes, e);
+		}
+		return statusCodes;
+	}
+}
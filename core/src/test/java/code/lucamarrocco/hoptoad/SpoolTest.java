@@ -0,0 +1,158 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+public class SpoolTest {
+
+	private File directory;
+
+	public static File newDirectory() throws IOException {
+		final File directory = File.createTempFile("hoptoad-spool", "");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+
+	public static void delete(final File directory) {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		directory = newDirectory();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	@Test
+	public void testReplaysRecordsInOrder() throws IOException {
+		final Spool spool = new Spool(directory, 1024, 4);
+		spool.append(bytes("first"));
+		spool.append(bytes("second"));
+
+		assertThat(spool.pending(), is(2));
+		assertThat(string(spool.next()), is("first"));
+		assertThat(string(spool.next()), is("first"));
+
+		spool.acknowledge(spool.next());
+
+		assertThat(string(spool.next()), is("second"));
+		assertThat(spool.pending(), is(1));
+	}
+
+	@Test
+	public void testRecoversPendingRecordsAfterCrash() throws IOException {
+		final Spool crashed = new Spool(directory, 1024, 4);
+		crashed.append(bytes("first"));
+		crashed.append(bytes("second"));
+		crashed.append(bytes("third"));
+		crashed.acknowledge(crashed.next());
+
+		final Spool spool = new Spool(directory, 1024, 4);
+
+		assertThat(spool.pending(), is(2));
+		assertThat(string(spool.next()), is("second"));
+
+		spool.append(bytes("fourth"));
+		spool.acknowledge(spool.next());
+		spool.acknowledge(spool.next());
+
+		assertThat(string(spool.next()), is("fourth"));
+	}
+
+	@Test
+	public void testTornRecordEndsRecoveredSegment() throws IOException {
+		final Spool crashed = new Spool(directory, 1024, 4);
+		crashed.append(bytes("first"));
+		crashed.append(bytes("second"));
+		crashed.close();
+
+		final RandomAccessFile file = new RandomAccessFile(directory.listFiles()[0], "rw");
+		file.seek(9 + 5 + 9);
+		file.write('S');
+		file.close();
+
+		final Spool spool = new Spool(directory, 1024, 4);
+
+		assertThat(spool.pending(), is(1));
+		spool.acknowledge(spool.next());
+		assertThat(spool.next(), is(nullValue()));
+	}
+
+	@Test
+	public void testRollsOverAndDeletesAcknowledgedSegments() throws IOException {
+		final Spool spool = new Spool(directory, 64, 8);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(spool.append(bytes("record number " + i)));
+		}
+		assertThat(spool.files().size(), is(3));
+
+		for (int i = 0; i < 5; i++) {
+			final Spool.Record record = spool.next();
+			assertThat(string(record), is("record number " + i));
+			spool.acknowledge(record);
+		}
+
+		assertThat(spool.next(), is(nullValue()));
+		assertThat(spool.files().size(), is(1));
+		assertThat(directory.listFiles().length, is(1));
+	}
+
+	@Test
+	public void testRefusesAppendsWhenFull() throws IOException {
+		final Spool spool = new Spool(directory, 64, 2);
+
+		assertTrue(spool.append(bytes("record number 0")));
+		assertTrue(spool.append(bytes("record number 1")));
+		assertTrue(spool.append(bytes("record number 2")));
+		assertTrue(spool.append(bytes("record number 3")));
+		assertFalse(spool.append(bytes("record number 4")));
+		assertFalse(spool.append(new byte[64]));
+		assertThat(spool.pending(), is(4));
+	}
+
+	@Test
+	public void testReplaysSegmentsWrittenWithAnotherSize() throws IOException {
+		final Spool before = new Spool(directory, 1024, 4);
+		before.append(bytes("first"));
+		before.append(bytes("second"));
+		before.close();
+
+		final Spool spool = new Spool(directory, 64, 4);
+
+		assertThat(spool.pending(), is(2));
+		spool.acknowledge(spool.next());
+		assertThat(string(spool.next()), is("second"));
+		spool.acknowledge(spool.next());
+		assertTrue(spool.append(bytes("third")));
+		assertThat(string(spool.next()), is("third"));
+		assertThat(directory.listFiles().length, is(1));
+		assertThat(directory.listFiles()[0].length(), is(64L));
+	}
+
+		private byte[] bytes(final String string) throws IOException {
+		return string.getBytes("UTF-8");
+	}
+
+	private String string(final Spool.Record record) throws IOException {
+		return new String(record.payload, "UTF-8");
+	}
+}
@@ -0,0 +1,98 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class SpoolingHoptoadNotifierTest {
+
+	private final StubHoptoadServer server = new StubHoptoadServer();
+
+	private File directory;
+
+	private SpoolingHoptoadNotifier notifier;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = SpoolTest.newDirectory();
+	}
+
+	@After
+	public void tearDown() {
+		if (notifier != null) notifier.close();
+		server.stop();
+		SpoolTest.delete(directory);
+	}
+
+	@Test
+	public void testPostsDirectlyWhenNothingIsSpooled() throws Exception {
+		notifier = newNotifier();
+
+		assertThat(notifier.notify(newNotice("direct")), is(200));
+		assertThat(notifier.spooled(), is(0L));
+		assertThat(server.bodies().size(), is(1));
+	}
+
+	@Test
+	public void testSpoolsWhileUnavailableAndReplaysInOrder() throws Exception {
+		server.respondWith(503);
+		notifier = newNotifier();
+
+		notifier.notify(newNotice("first"));
+		notifier.notify(newNotice("second"));
+		notifier.notify(newNotice("third"));
+
+		assertThat(notifier.spooled(), is(3L));
+
+		server.respondWith(200);
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (notifier.pending() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(notifier.replayed(), is(3L));
+		final List<String> bodies = server.bodies();
+		final List<String> delivered = bodies.subList(bodies.size() - 3, bodies.size());
+		assertThat(delivered.get(0), containsString("<message>first</message>"));
+		assertThat(delivered.get(1), containsString("<message>second</message>"));
+		assertThat(delivered.get(2), containsString("<message>third</message>"));
+	}
+
+	@Test
+	public void testSpooledNoticesSurviveRestart() throws Exception {
+		server.respondWith(503);
+		notifier = newNotifier();
+		notifier.notify(newNotice("before restart"));
+		notifier.close();
+
+		server.respondWith(200);
+		notifier = newNotifier();
+
+		assertThat(server.awaitBodies(2, 5000).get(server.bodies().size() - 1), containsString("<message>before restart</message>"));
+	}
+
+	@Test
+	public void testClientErrorsAreNotSpooled() throws Exception {
+		server.respondWith(422);
+		notifier = newNotifier();
+
+		assertThat(notifier.notify(newNotice("rejected")), is(422));
+		assertThat(notifier.spooled(), is(0L));
+	}
+
+	private SpoolingHoptoadNotifier newNotifier() throws IOException {
+		return new SpoolingHoptoadNotifier(new HoptoadNotifier(server.url(), new HttpURLConnectionTransport()), directory, 64 * 1024, 4, 20);
+	}
+
+	private HoptoadNotice newNotice(final String message) {
+		return new HoptoadNoticeBuilder(HoptoadNotifierTest.KEY, message).newNotice();
+	}
+}
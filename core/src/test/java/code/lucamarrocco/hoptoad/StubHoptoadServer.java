@@ -0,0 +1,106 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import com.sun.net.httpserver.*;
+
+/** A local HTTP endpoint standing in for hoptoadapp.com. */
+public class StubHoptoadServer {
+
+	private final HttpServer server;
+
+	private final List<String> bodies = new CopyOnWriteArrayList<String>();
+
+	private final List<String> encodings = new CopyOnWriteArrayList<String>();
+
+	private final Set<Integer> clientPorts = new CopyOnWriteArraySet<Integer>();
+
+	private volatile int statusCode = 200;
+
+	private volatile String retryAfter;
+
+	private volatile long delayMillis;
+
+	public StubHoptoadServer() {
+		try {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		server.createContext("/", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				final String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+				encodings.add(String.valueOf(encoding));
+				bodies.add(Slurp.slurp("gzip".equals(encoding) ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()));
+				if (delayMillis > 0) {
+					try {
+						Thread.sleep(delayMillis);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				final byte[] response = "<notice/>".getBytes("UTF-8");
+				if (retryAfter != null) exchange.getResponseHeaders().set("Retry-After", retryAfter);
+				exchange.sendResponseHeaders(statusCode, response.length);
+				exchange.getResponseBody().write(response);
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	/** Waits until at least {@code count} requests have arrived and returns their bodies. */
+	public List<String> awaitBodies(final int count, final long timeoutMillis) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (bodies.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		return bodies;
+	}
+
+	public List<String> bodies() {
+		return bodies;
+	}
+
+	/** Distinct client ports seen, i.e. how many connections were opened. */
+	public int connections() {
+		return clientPorts.size();
+	}
+
+	/** The Content-Encoding of each request, "null" where there was none; gzipped bodies are decoded. */
+	public List<String> encodings() {
+		return encodings;
+	}
+
+	/** Answers each request only {@code delayMillis} after it has been read. */
+	public void respondAfter(final long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	public void respondWith(final int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/** Sends a Retry-After header with every response, or none for null. */
+	public void retryAfter(final String retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/notifier_api/v2/notices";
+	}
+}
@@ -0,0 +1,64 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public class SystemPropertiesSnapshotTest {
+
+	private static final String KEY = "hoptoad.snapshot.test";
+
+	private final List<String> filters = Arrays.asList("java.class.path", "java.vendor.*");
+
+	@After
+	public void tearDown() {
+		System.clearProperty(KEY);
+	}
+
+	@Test
+	public void testFiltersProperties() {
+		final Map<String, Object> environment = SystemPropertiesSnapshot.of(filters).environment();
+
+		assertThat(environment.keySet(), hasItem("java.version"));
+		assertThat(environment.keySet(), not(hasItem("java.class.path")));
+		assertThat(environment.keySet(), not(hasItem("java.vendor")));
+	}
+
+	@Test
+	public void testSnapshotIsSharedUntilPropertiesChange() {
+		final SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.of(filters);
+
+		assertThat(SystemPropertiesSnapshot.of(filters), is(sameInstance(snapshot)));
+
+		System.setProperty(KEY, "value");
+		final SystemPropertiesSnapshot changed = SystemPropertiesSnapshot.of(filters);
+
+		assertThat(changed, is(not(sameInstance(snapshot))));
+		assertThat(changed.environment().get(KEY), is((Object) "value"));
+	}
+
+	@Test
+	public void testSnapshotIsTakenAgainAfterTtlOrWithOtherFilters() {
+		final long now = System.currentTimeMillis();
+		final SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.of(filters, now);
+
+		assertThat(SystemPropertiesSnapshot.of(filters, now + SystemPropertiesSnapshot.TTL_MILLIS), is(not(sameInstance(snapshot))));
+		assertThat(SystemPropertiesSnapshot.of(Arrays.asList("java.version"), now).environment().keySet(), not(hasItem("java.version")));
+	}
+
+	@Test
+	public void testNoticesShareTheSnapshot() {
+		final HoptoadNotice first = new HoptoadNoticeBuilderUsingFilteredSystemProperties(HoptoadNotifierTest.KEY, new Backtrace(), new RuntimeException("first"), "test").newNotice();
+		final HoptoadNotice second = new HoptoadNoticeBuilderUsingFilteredSystemProperties(HoptoadNotifierTest.KEY, new Backtrace(), new RuntimeException("second"), "test").newNotice();
+
+		assertThat(second.environment(), is(sameInstance(first.environment())));
+		assertThat(first.environment().keySet(), not(hasItem("java.class.path")));
+	}
+}
@@ -0,0 +1,118 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.RecordingNotifier.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class ThreadPerNoticeHoptoadNotifierTest {
+
+	private final List<String> senders = new CopyOnWriteArrayList<String>();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final HoptoadNotifier blockingNotifier = new HoptoadNotifier() {
+		@Override
+		public int notify(final HoptoadNotice notice) {
+			try {
+				release.await();
+			} catch (final InterruptedException e) {}
+			senders.add(Thread.currentThread().getName());
+			return 200;
+		}
+	};
+
+	@Test
+	public void testClosingWaitsForSendsInProgress() throws Exception {
+		final ThreadPerNoticeHoptoadNotifier notifier = new ThreadPerNoticeHoptoadNotifier(blockingNotifier, 4, 0);
+		notifier.notify(newNotice("sent"));
+		notifier.notify(newNotice("sent"));
+
+		new Timer(true).schedule(new TimerTask() {
+			@Override
+			public void run() {
+				release.countDown();
+			}
+		}, 100);
+		notifier.close();
+
+		assertThat(senders.size(), is(2));
+		assertThat(notifier.notify(newNotice("sent")), is(0));
+		assertThat(notifier.dropped(), is(1L));
+	}
+
+	@Test
+	public void testConcurrentSendsAreBoundedBySemaphore() throws Exception {
+		final ThreadPerNoticeHoptoadNotifier notifier = new ThreadPerNoticeHoptoadNotifier(blockingNotifier, 3, 0);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(notifier.notify(newNotice("sent")), is(0));
+		}
+		assertThat(notifier.inFlight(), is(3));
+		assertThat(notifier.dropped(), is(2L));
+
+		release.countDown();
+		notifier.close();
+		assertThat(notifier.delivered(), is(3L));
+		assertThat(notifier.inFlight(), is(0));
+		for (final String sender : senders) {
+			assertThat(sender, startsWith("hoptoad-delivery-"));
+		}
+	}
+
+	@Test
+	public void testSendsOnTheThreadsOfTheGivenFactory() throws Exception {
+		final ThreadFactory named = new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				return new Thread(runnable, "virtual-stand-in");
+			}
+		};
+		final ThreadPerNoticeHoptoadNotifier notifier = new ThreadPerNoticeHoptoadNotifier(blockingNotifier, 1, 0, named);
+		release.countDown();
+
+		notifier.notify(newNotice("sent"));
+		notifier.close();
+
+		assertThat(notifier.isVirtual(), is(true));
+		assertThat(senders, is(Arrays.asList("virtual-stand-in")));
+	}
+
+	@Test
+	public void testFailuresAreCounted() {
+		final ThreadPerNoticeHoptoadNotifier notifier = new ThreadPerNoticeHoptoadNotifier(new HoptoadNotifier() {
+			@Override
+			public int notify(final HoptoadNotice notice) {
+				throw new IllegalStateException("bad");
+			}
+		}, 4, 0);
+
+		notifier.notify(newNotice("bad"));
+		notifier.close();
+
+		assertThat(notifier.failed(), is(1L));
+		assertThat(notifier.delivered(), is(0L));
+		assertThat(notifier.inFlight(), is(0));
+	}
+
+	@Test
+	public void testUsesVirtualThreadsWhenTheJvmHasThem() {
+		boolean jvmHasVirtualThreads;
+		try {
+			Thread.class.getMethod("ofVirtual");
+			jvmHasVirtualThreads = true;
+		} catch (final NoSuchMethodException e) {
+			jvmHasVirtualThreads = false;
+		}
+
+		assertThat(ThreadPerNoticeHoptoadNotifier.virtualThreads() != null, is(jvmHasVirtualThreads));
+		assertThat(new ThreadPerNoticeHoptoadNotifier(blockingNotifier).isVirtual(), is(jvmHasVirtualThreads));
+	}
+}
@@ -0,0 +1,82 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.*;
+
+public class XmlWriterTest {
+
+	@Test
+	public void testEscapesLikeCommonsLang() throws Exception {
+		final List<String> strings = new ArrayList<String>(Arrays.asList("", "plain", "a<b>c&d\"e'f", "caf\u00e9 \u2603", "tab\tand\u0001control\u007f", "\u0080\u00ff\u0100"));
+		final Random random = new Random(42);
+		final char[] alphabet = "aZ09<>&\"' \u00e9\u2603\u0080".toCharArray();
+		for (int i = 0; i < 200; i++) {
+			final char[] chars = new char[random.nextInt(20)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = alphabet[random.nextInt(alphabet.length)];
+			}
+			strings.add(new String(chars));
+		}
+
+		for (final String string : strings) {
+			assertThat(string, new XmlWriter(16).escaped(string).toString(), is(StringEscapeUtils.escapeXml(string)));
+		}
+	}
+
+	@Test
+	public void testWritesSurrogatePairsAsOneReference() throws Exception {
+		assertThat(new XmlWriter(16).escaped("\uD83D\uDE00").toString(), is("&#128512;"));
+		assertThat(new XmlWriter(16).escaped("\uD83D!").toString(), is("&#55357;!"));
+	}
+
+	@Test
+	public void testWritesNullAndNumbers() throws Exception {
+		assertThat(new XmlWriter(16).escaped(null).toString(), is("null"));
+		assertThat(new XmlWriter(16).number(0).toString(), is("0"));
+		assertThat(new XmlWriter(16).number(1088).toString(), is("1088"));
+		assertThat(new XmlWriter(16).number(-2).toString(), is("-2"));
+		assertThat(new XmlWriter(16).number(Long.MIN_VALUE).toString(), is(String.valueOf(Long.MIN_VALUE)));
+	}
+
+	@Test
+	public void testMeasuresWhatItWrites() throws Exception {
+		for (final String string : Arrays.asList("", "plain", "a<b>c&d\"e'f", "caf\u00e9 \u2603", "\uD83D\uDE00", "\uD83D!", "!\uDE00")) {
+			final XmlWriter xml = new XmlWriter(new ByteArrayOutputStream(), 16).escaped(string).number(-1234567890L);
+			assertThat(string, xml.written(), is((long) XmlWriter.escapedLength(string) + XmlWriter.numberLength(-1234567890L)));
+		}
+		assertThat(XmlWriter.escapedLength(null), is(4));
+	}
+
+	@Test
+	public void testFitsPrefixesWithoutSplittingSurrogatePairs() throws Exception {
+		assertThat(XmlWriter.fit("a<b", 4), is(1));
+		assertThat(XmlWriter.fit("a<b", 5), is(2));
+		assertThat(XmlWriter.fit("a\uD83D\uDE00b", 5), is(1));
+		assertThat(XmlWriter.fit("a\uD83D\uDE00b", 10), is(3));
+		assertThat(XmlWriter.fit("plain", 100), is(5));
+	}
+
+	@Test
+	public void testFlushesToStreamWhenBufferIsFull() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final XmlWriter xml = new XmlWriter(out, 16);
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			xml.raw(XmlWriter.ascii("<a>")).escaped("x & y " + i).number(i).raw(XmlWriter.ascii("</a>"));
+			expected.append("<a>x &amp; y ").append(i).append(i).append("</a>");
+		}
+		xml.flush();
+
+		assertThat(new String(out.toByteArray(), "US-ASCII"), is(expected.toString()));
+	}
+}
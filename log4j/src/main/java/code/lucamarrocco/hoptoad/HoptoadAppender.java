@@ -0,0 +1,355 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.*;
+
+/**
+ * The log4j 1.x appender: notifies Hoptoad of the throwables logged. Its
+ * options are those of {@link HoptoadPipeline}, set through the appender.
+ */
+public class HoptoadAppender extends AppenderSkeleton {
+	private final HoptoadPipeline pipeline;
+
+	public HoptoadAppender() {
+		this(new HoptoadPipeline());
+		setThreshold(Level.ERROR);
+	}
+
+	public HoptoadAppender(final String apiKey) {
+		this(new HoptoadPipeline());
+		setApi_key(apiKey);
+	}
+
+	public HoptoadAppender(final String apiKey, final Backtrace backtrace) {
+		this(apiKey);
+		setBacktrace(backtrace);
+	}
+
+	/** An appender building its notifier with {@code pipeline}, which may build it some other way. */
+	protected HoptoadAppender(final HoptoadPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void activateOptions() {
+		notifier();
+	}
+
+	@Override
+	protected void append(final LoggingEvent loggingEvent) {
+		if (!pipeline.isEnabled()) return;
+
+		if (thereIsThrowableIn(loggingEvent) && pipeline.accepts(loggingEvent.getLoggerName(), throwable(loggingEvent))) {
+			notifyThrowableIn(loggingEvent);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		pipeline.close();
+	}
+
+	/** What the notifier has been doing, once it is built. */
+	public NotifierMetrics metrics() {
+		return pipeline.metrics();
+	}
+
+	/**
+	 * A copy of the logging thread's MDC. log4j hands out the live table,
+	 * which the thread goes on changing while the notice waits to be sent.
+	 */
+	protected static Map<String, Object> mdc() {
+		final Map<String, Object> context = MDC.getContext();
+		return context == null ? null : new HashMap<String, Object>(context);
+	}
+
+	public HoptoadNotice newNoticeFor(final Throwable throwable) {
+		return pipeline.newNoticeFor(throwable, mdc());
+	}
+
+	/** The notifier notices are handed to, built from the appender options on first use. */
+	public HoptoadNotifier notifier() {
+		return pipeline.notifier();
+	}
+
+	/** Notifies Hoptoad of {@code throwable}, logged at {@code occurredAt} by a thread with {@code mdc}, unless it is sampled out. */
+	protected int notifyThrowable(final Throwable throwable, final Object mdc, final long occurredAt) {
+		return pipeline.notify(throwable, mdc, occurredAt);
+	}
+
+	protected int notifyThrowableIn(final LoggingEvent loggingEvent) {
+		return notifyThrowable(throwable(loggingEvent), mdc(), loggingEvent.timeStamp);
+	}
+
+	@Override
+	public boolean requiresLayout() {
+		return false;
+	}
+
+	/** Comma separated classes of the errors to notify, with their subclasses; all of them when unset. */
+	public void setAllowErrorClasses(final String allowErrorClasses) {
+		pipeline.setAllowErrorClasses(allowErrorClasses);
+	}
+
+	public void setApi_key(final String apiKey) {
+		pipeline.setApi_key(apiKey);
+	}
+
+	/** Deliver notices from a bounded queue on background threads instead of on the logging thread. */
+	public void setAsync(final boolean async) {
+		pipeline.setAsync(async);
+	}
+
+	public void setBacktrace(final Backtrace backtrace) {
+		pipeline.setBacktrace(backtrace);
+	}
+
+	/** Collect notices and post them in batches instead of one by one. */
+	public void setBatch(final boolean batch) {
+		pipeline.setBatch(batch);
+	}
+
+	/** Flush a batch once its notices add up to this many bytes. */
+	public void setBatchBytes(final int batchBytes) {
+		pipeline.setBatchBytes(batchBytes);
+	}
+
+	/** Flush a batch at the latest this many milliseconds after its first notice. */
+	public void setBatchDelay(final long batchDelay) {
+		pipeline.setBatchDelay(batchDelay);
+	}
+
+	/** Flush a batch once it holds this many notices. */
+	public void setBatchSize(final int batchSize) {
+		pipeline.setBatchSize(batchSize);
+	}
+
+	/** Endpoint accepting one multi-notice document per batch; without it batches are pipelined to the notices url. */
+	public void setBatchUrl(final String batchUrl) {
+		pipeline.setBatchUrl(batchUrl);
+	}
+
+	/** Milliseconds to wait for room in the queue when the overflow policy is BLOCK. */
+	public void setBlockTimeout(final long blockTimeout) {
+		pipeline.setBlockTimeout(blockTimeout);
+	}
+
+	/** Milliseconds an open circuit breaker waits before letting a trial notice through. */
+	public void setCircuitBreakerReset(final long circuitBreakerReset) {
+		pipeline.setCircuitBreakerReset(circuitBreakerReset);
+	}
+
+	/** Failed posts in a row after which notices stop being posted for a while; 0, the default, never stops. */
+	public void setCircuitBreakerThreshold(final int circuitBreakerThreshold) {
+		pipeline.setCircuitBreakerThreshold(circuitBreakerThreshold);
+	}
+
+	/** Milliseconds to wait for a connection to Hoptoad. */
+	public void setConnectTimeout(final int connectTimeout) {
+		pipeline.setConnectTimeout(connectTimeout);
+	}
+
+	/** Send an error once per window and count its repeats instead of sending each of them. */
+	public void setDedup(final boolean dedup) {
+		pipeline.setDedup(dedup);
+	}
+
+	/** Number of backtrace frames, after the error class, that make up an error's fingerprint. */
+	public void setDedupFrames(final int dedupFrames) {
+		pipeline.setDedupFrames(dedupFrames);
+	}
+
+	public void setDedupMaxFingerprints(final int dedupMaxFingerprints) {
+		pipeline.setDedupMaxFingerprints(dedupMaxFingerprints);
+	}
+
+	/** Milliseconds during which repeats of an error are only counted. */
+	public void setDedupWindow(final long dedupWindow) {
+		pipeline.setDedupWindow(dedupWindow);
+	}
+
+	/** Comma separated classes of the errors not to notify, with their subclasses. */
+	public void setDenyErrorClasses(final String denyErrorClasses) {
+		pipeline.setDenyErrorClasses(denyErrorClasses);
+	}
+
+	/** Comma separated names of the loggers, with those below them, whose errors are not notified. */
+	public void setDenyLoggers(final String denyLoggers) {
+		pipeline.setDenyLoggers(denyLoggers);
+	}
+
+	/** Milliseconds after which a notice still waiting to be sent is dropped; 0, the default, never drops. */
+	public void setDeliveryDeadline(final long deliveryDeadline) {
+		pipeline.setDeliveryDeadline(deliveryDeadline);
+	}
+
+	public void setEnabled(final boolean enabled) {
+		pipeline.setEnabled(enabled);
+	}
+
+	public void setEnv(final String env) {
+		pipeline.setEnv(env);
+	}
+
+	public void setErrorClassRateBurst(final int errorClassRateBurst) {
+		pipeline.setErrorClassRateBurst(errorClassRateBurst);
+	}
+
+	/** Notices per second sent for any one error class; 0, the default, sets no limit. */
+	public void setErrorClassRateLimit(final double errorClassRateLimit) {
+		pipeline.setErrorClassRateLimit(errorClassRateLimit);
+	}
+
+	/** Send notices gzipped; the built-in transports only, a custom transport decides for itself. */
+	public void setGzip(final boolean gzip) {
+		pipeline.setGzip(gzip);
+	}
+
+	/** Milliseconds a pooled connection may stay idle before it is closed. */
+	public void setIdleConnectionTimeout(final long idleConnectionTimeout) {
+		pipeline.setIdleConnectionTimeout(idleConnectionTimeout);
+	}
+
+	/** Register the notifier's {@link NotifierMetrics} as an MBean named after the appender. */
+	public void setJmx(final boolean jmx) {
+		pipeline.setJmx(jmx);
+	}
+
+	/** Sends in progress at once when {@link #setThreadPerNotice(boolean)} is on; notices beyond it are dropped. */
+	public void setMaxConcurrentSends(final int maxConcurrentSends) {
+		pipeline.setMaxConcurrentSends(maxConcurrentSends);
+	}
+
+	public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+		pipeline.setMaxConnectionsPerHost(maxConnectionsPerHost);
+	}
+
+	/** The size in bytes notices are cut down to, or 0 for no limit. */
+	public void setMaxNoticeBytes(final int maxNoticeBytes) {
+		pipeline.setMaxNoticeBytes(maxNoticeBytes);
+	}
+
+	@Override
+	public void setName(final String name) {
+		super.setName(name);
+		pipeline.setName(name);
+	}
+
+	/** One of DROP_NEWEST, DROP_OLDEST or BLOCK. */
+	public void setOverflowPolicy(final String overflowPolicy) {
+		pipeline.setOverflowPolicy(overflowPolicy);
+	}
+
+	public void setQueueCapacity(final int queueCapacity) {
+		pipeline.setQueueCapacity(queueCapacity);
+	}
+
+	/** Notices that may be sent at once before {@link #setRateLimit(double)} applies. */
+	public void setRateBurst(final int rateBurst) {
+		pipeline.setRateBurst(rateBurst);
+	}
+
+	/** Notices per second sent overall; 0, the default, sets no limit. */
+	public void setRateLimit(final double rateLimit) {
+		pipeline.setRateLimit(rateLimit);
+	}
+
+	/** Milliseconds to wait for Hoptoad's response once a notice is sent. */
+	public void setReadTimeout(final int readTimeout) {
+		pipeline.setReadTimeout(readTimeout);
+	}
+
+	/** Times a notice is posted before giving up on a connection failure, 5xx, 408 or 429; 1, the default, never retries. */
+	public void setRetryAttempts(final int retryAttempts) {
+		pipeline.setRetryAttempts(retryAttempts);
+	}
+
+	public void setRetryBaseDelay(final long retryBaseDelay) {
+		pipeline.setRetryBaseDelay(retryBaseDelay);
+	}
+
+	/** Longest wait between attempts in milliseconds; a longer Retry-After from Hoptoad ends the retries. */
+	public void setRetryMaxDelay(final long retryMaxDelay) {
+		pipeline.setRetryMaxDelay(retryMaxDelay);
+	}
+
+	/** Keep one in this many errors of an error class once {@link #setSampleFirst(int)} were kept in a window; 0, the default, keeps all. */
+	public void setSampleEvery(final int sampleEvery) {
+		pipeline.setSampleEvery(sampleEvery);
+	}
+
+	/** Errors of an error class kept in a window before {@link #setSampleEvery(int)} applies. */
+	public void setSampleFirst(final int sampleFirst) {
+		pipeline.setSampleFirst(sampleFirst);
+	}
+
+	/** Sample the errors of each fingerprint as a reservoir of this size would; 0, the default, keeps all. */
+	public void setSampleReservoir(final int sampleReservoir) {
+		pipeline.setSampleReservoir(sampleReservoir);
+	}
+
+	/** Milliseconds sampling counts errors for before starting over. */
+	public void setSampleWindow(final long sampleWindow) {
+		pipeline.setSampleWindow(sampleWindow);
+	}
+
+	public void setSenderThreads(final int senderThreads) {
+		pipeline.setSenderThreads(senderThreads);
+	}
+
+	/** Directory where notices that cannot be delivered are kept until Hoptoad is reachable again. */
+	public void setSpoolDirectory(final String spoolDirectory) {
+		pipeline.setSpoolDirectory(spoolDirectory);
+	}
+
+	/** The spool uses at most this many segment files. */
+	public void setSpoolMaxSegments(final int spoolMaxSegments) {
+		pipeline.setSpoolMaxSegments(spoolMaxSegments);
+	}
+
+	public void setSpoolSegmentBytes(final int spoolSegmentBytes) {
+		pipeline.setSpoolSegmentBytes(spoolSegmentBytes);
+	}
+
+	/**
+	 * With async on, send each notice on a thread of its own, virtual where the
+	 * JVM has virtual threads, instead of queueing it for the sender threads.
+	 */
+	public void setThreadPerNotice(final boolean threadPerNotice) {
+		pipeline.setThreadPerNotice(threadPerNotice);
+	}
+
+	/** Notify at most this many errors thrown from the same place in a window; 0, the default, notifies all. */
+	public void setTopFrameLimit(final int topFrameLimit) {
+		pipeline.setTopFrameLimit(topFrameLimit);
+	}
+
+	/** Milliseconds {@link #setTopFrameLimit(int)} counts errors for before starting over. */
+	public void setTopFrameWindow(final long topFrameWindow) {
+		pipeline.setTopFrameWindow(topFrameWindow);
+	}
+
+	/** "urlconnection", "pooled", "nio", or the class name of a {@link HoptoadTransport} with a public no-argument constructor. */
+	public void setTransport(final String transport) {
+		pipeline.setTransport(transport);
+	}
+
+	public void setUrl(final String url) {
+		pipeline.setUrl(url);
+	}
+
+	private boolean thereIsThrowableIn(final LoggingEvent loggingEvent) {
+		return loggingEvent.getThrowableInformation() != null;
+	}
+
+	protected Throwable throwable(final LoggingEvent loggingEvent) {
+		return loggingEvent.getThrowableInformation().getThrowable();
+	}
+}
@@ -0,0 +1,203 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.apache.log4j.*;
+import org.apache.log4j.helpers.*;
+import org.apache.log4j.spi.*;
+
+/**
+ * A {@link HoptoadAppender} that does not serialize logging threads on the
+ * appender's lock. {@link AppenderSkeleton#doAppend(LoggingEvent)} is
+ * synchronized, so every error logged waits for the one before it to be
+ * built and sent; here the logging thread only checks the threshold, the
+ * filters and the error filters and captures the throwable, a copy of its
+ * MDC and the event's timestamp. A single builder thread takes the captures
+ * from a bounded lock-free queue, builds the notices and hands them to the
+ * notifier, where async delivery, batching and the other options apply as
+ * usual. Captures that find the queue full are dropped and counted.
+ */
+public class NonBlockingHoptoadAppender extends HoptoadAppender {
+
+	public static final int DEFAULT_CAPTURE_CAPACITY = 1000;
+
+	public static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+	private final Queue<Capture> captures = new ConcurrentLinkedQueue<Capture>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicLong captured = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private volatile Thread builder;
+
+	private volatile boolean closing;
+
+	private volatile int captureCapacity = DEFAULT_CAPTURE_CAPACITY;
+
+	public NonBlockingHoptoadAppender() {
+		super();
+	}
+
+	public NonBlockingHoptoadAppender(final String apiKey) {
+		super(apiKey);
+	}
+
+	public NonBlockingHoptoadAppender(final String apiKey, final Backtrace backtrace) {
+		super(apiKey, backtrace);
+	}
+
+	protected NonBlockingHoptoadAppender(final HoptoadPipeline pipeline) {
+		super(pipeline);
+	}
+
+	@Override
+	public void activateOptions() {
+		super.activateOptions();
+		start();
+	}
+
+	/** Errors captured on logging threads and queued for the builder thread. */
+	public long captured() {
+		return captured.get();
+	}
+
+	@Override
+	public void close() {
+		close(CLOSE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Stops capturing and gives the builder thread up to {@code timeoutMillis}
+	 * to notify what was captured already before closing the notifier.
+	 */
+	public void close(final long timeoutMillis) {
+		closing = true;
+		final Thread builder = this.builder;
+		if (builder != null) {
+			LockSupport.unpark(builder);
+			try {
+				builder.join(timeoutMillis);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			builder.interrupt();
+		}
+		dropped.addAndGet(queued.getAndSet(0));
+		captures.clear();
+		super.close();
+	}
+
+	/** Notices built and handed to the notifier by the builder thread. */
+	public long delivered() {
+		return delivered.get();
+	}
+
+	/**
+	 * Checks the threshold and filters and appends the event like
+	 * {@link AppenderSkeleton#doAppend(LoggingEvent)}, but without locking the
+	 * appender.
+	 */
+	@Override
+	public void doAppend(final LoggingEvent loggingEvent) {
+		if (closing || closed) return;
+		if (!isAsSevereAsThreshold(loggingEvent.getLevel())) return;
+
+		Filter filter = getFirstFilter();
+		while (filter != null) {
+			final int decision = filter.decide(loggingEvent);
+			if (decision == Filter.DENY) return;
+			if (decision == Filter.ACCEPT) break;
+			filter = filter.getNext();
+		}
+		append(loggingEvent);
+	}
+
+	/** Captures discarded because the queue was full or the appender was closed. */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/** Queues what the notice needs from the logging thread and returns 0 at once, as no status code is known yet. */
+	@Override
+	protected int notifyThrowableIn(final LoggingEvent loggingEvent) {
+		if (queued.incrementAndGet() > captureCapacity) {
+			queued.decrementAndGet();
+			dropped.incrementAndGet();
+			return 0;
+		}
+		captures.offer(new Capture(throwable(loggingEvent), mdc(), loggingEvent.timeStamp));
+		captured.incrementAndGet();
+		start();
+		final Thread builder = this.builder;
+		if (builder != null) LockSupport.unpark(builder);
+		return 0;
+	}
+
+	/** Captures waiting for the builder thread. */
+	public int queueDepth() {
+		return queued.get();
+	}
+
+	/** Errors waiting to be built into notices at once; errors logged beyond it are dropped. */
+	public void setCaptureCapacity(final int captureCapacity) {
+		this.captureCapacity = captureCapacity;
+	}
+
+	private void start() {
+		if (!started.compareAndSet(false, true)) return;
+		final Thread builder = new Thread(new Builder(), "hoptoad-builder");
+		builder.setDaemon(true);
+		this.builder = builder;
+		builder.start();
+	}
+
+	private class Builder implements Runnable {
+		public void run() {
+			while (true) {
+				final Capture capture = captures.poll();
+				if (capture == null) {
+					if (closing || Thread.currentThread().isInterrupted()) return;
+					// woken by notifyThrowableIn and close, which unpark after queueing and after closing
+					LockSupport.park(this);
+					continue;
+				}
+				queued.decrementAndGet();
+
+				try {
+					notifyThrowable(capture.throwable, capture.mdc, capture.timeStamp);
+					delivered.incrementAndGet();
+				} catch (final RuntimeException e) {
+					LogLog.error("cannot notify hoptoad", e);
+				}
+			}
+		}
+	}
+
+	private static class Capture {
+		final Throwable throwable;
+
+		final Map<String, Object> mdc;
+
+		final long timeStamp;
+
+		Capture(final Throwable throwable, final Map<String, Object> mdc, final long timeStamp) {
+			this.throwable = throwable;
+			this.mdc = mdc;
+			this.timeStamp = timeStamp;
+		}
+	}
+}
@@ -4,6 +4,9 @@
 
 package code.lucamarrocco.hoptoad;
 
+import java.util.*;
+
+import org.apache.log4j.*;
 import org.junit.*;
 
 import static code.lucamarrocco.hoptoad.Exceptions.*;
@@ -90,4 +93,20 @@ public class HoptoadAppenderTest {
 		final HoptoadNotice verboseNotice = appender.newNoticeFor(newException(ERROR_MESSAGE));
 		assertThat(verboseNotice.backtrace(), hasItem("at sun.reflect.NativeMethodAccessorImpl.invoke0(NativeMethodAccessorImpl.java-2)"));
 	}
+
+	@Test
+	public void testNoticeKeepsTheMdcAsItWasWhenTheErrorWasLogged() {
+		final HoptoadAppender appender = new HoptoadAppender(HoptoadNotifierTest.KEY);
+
+		MDC.put("request", "first");
+		final HoptoadNotice notice;
+		try {
+			notice = appender.newNoticeFor(newException(ERROR_MESSAGE));
+			MDC.put("request", "second");
+		} finally {
+			MDC.remove("request");
+		}
+
+		assertThat(((Map<?, ?>) notice.session().get(":data")).get("request"), is((Object) "first"));
+	}
 }
@@ -0,0 +1,134 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.Exceptions.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.*;
+import org.apache.log4j.varia.*;
+import org.junit.*;
+
+public class NonBlockingHoptoadAppenderTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final CountDownLatch building = new CountDownLatch(1);
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier(release) {
+		@Override
+		public int notify(final HoptoadNotice notice) {
+			building.countDown();
+			return super.notify(notice);
+		}
+	};
+
+	private final List<HoptoadNotice> sent = recordingNotifier.sent();
+
+	private final NonBlockingHoptoadAppender appender = new NonBlockingHoptoadAppender(recordingNotifier.pipeline());
+
+	@Before
+	public void setUp() {
+		appender.setApi_key(HoptoadNotifierTest.KEY);
+		appender.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		appender.close();
+	}
+
+	private LoggingEvent error(final Throwable throwable) {
+		return new LoggingEvent(getClass().getName(), Logger.getLogger(getClass()), Level.ERROR, "boom", throwable);
+	}
+
+	@Test
+	public void testAppendsWithoutTakingTheAppendersLock() throws Exception {
+		final Thread logging = new Thread() {
+			@Override
+			public void run() {
+				appender.doAppend(error(newException(ERROR_MESSAGE)));
+			}
+		};
+
+		synchronized (appender) {
+			logging.start();
+			logging.join(1000);
+			assertThat(logging.isAlive(), is(false));
+		}
+
+		assertThat(appender.captured(), is(1L));
+		release.countDown();
+		appender.close(1000);
+		assertThat(sent.size(), is(1));
+		assertThat(appender.delivered(), is(1L));
+	}
+
+	@Test
+	public void testNoticeCarriesTheLoggingThreadsMdcAndTimestamp() throws Exception {
+		final LoggingEvent event = error(newException(ERROR_MESSAGE));
+		MDC.put("user", "alice");
+		try {
+			appender.doAppend(event);
+		} finally {
+			MDC.remove("user");
+		}
+		release.countDown();
+		appender.close(1000);
+
+		final HoptoadNotice notice = sent.get(0);
+		assertThat(((Map<?, ?>) notice.session().get(":data")).get("user"), is((Object) "alice"));
+		assertThat(notice.createdAt(), is(event.timeStamp));
+		assertThat(notice.errorClass(), is("java.lang.RuntimeException"));
+	}
+
+	@Test
+	public void testDropsCapturesBeyondItsCapacity() throws Exception {
+		appender.setCaptureCapacity(1);
+
+		appender.doAppend(error(new RuntimeException("first")));
+		building.await(1, TimeUnit.SECONDS);
+		appender.doAppend(error(new RuntimeException("second")));
+		appender.doAppend(error(new RuntimeException("third")));
+
+		assertThat(appender.captured(), is(2L));
+		assertThat(appender.dropped(), is(1L));
+		assertThat(appender.queueDepth(), is(1));
+
+		release.countDown();
+		appender.close(1000);
+		assertThat(sent.size(), is(2));
+	}
+
+	@Test
+	public void testAppliesThresholdAndFilters() {
+		appender.setThreshold(Level.ERROR);
+		appender.doAppend(new LoggingEvent(getClass().getName(), Logger.getLogger(getClass()), Level.WARN, "warn", new RuntimeException()));
+
+		appender.addFilter(new DenyAllFilter());
+		appender.doAppend(error(new RuntimeException()));
+
+		assertThat(appender.captured(), is(0L));
+	}
+
+	@Test
+	public void testErrorsRejectedByErrorFiltersAreNotCaptured() {
+		appender.setDenyLoggers(getClass().getPackage().getName());
+		appender.setDenyErrorClasses("java.lang.IllegalStateException");
+
+		appender.doAppend(error(new RuntimeException()));
+		appender.doAppend(new LoggingEvent(getClass().getName(), Logger.getLogger("other"), Level.ERROR, "boom", new IllegalStateException()));
+		appender.doAppend(new LoggingEvent(getClass().getName(), Logger.getLogger("other"), Level.ERROR, "boom", new RuntimeException()));
+
+		assertThat(appender.captured(), is(1L));
+		assertThat(appender.metrics().filteredOut(), is(2L));
+	}
+}
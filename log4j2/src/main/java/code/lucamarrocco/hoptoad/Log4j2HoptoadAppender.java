@@ -0,0 +1,139 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+import org.apache.logging.log4j.core.*;
+import org.apache.logging.log4j.core.appender.*;
+import org.apache.logging.log4j.core.config.*;
+import org.apache.logging.log4j.core.config.plugins.*;
+import org.apache.logging.log4j.util.*;
+
+/**
+ * The log4j2 appender: notifies Hoptoad of the throwables logged.
+ *
+ * <pre>
+ * &lt;Hoptoad name="hoptoad" apiKey="..."&gt;
+ *   &lt;Property name="enabled"&gt;true&lt;/Property&gt;
+ *   &lt;Property name="async"&gt;true&lt;/Property&gt;
+ * &lt;/Hoptoad&gt;
+ * </pre>
+ *
+ * Each {@code Property} sets the {@link HoptoadPipeline} option of that name.
+ * The event's MDC is read in place from its {@link ReadOnlyStringMap} and
+ * written into the notice as text, so it is neither copied into a map first
+ * nor kept past the event, which async loggers reuse.
+ */
+@Plugin(name = "Hoptoad", category = Node.CATEGORY, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class Log4j2HoptoadAppender extends AbstractAppender {
+
+	private static final TriConsumer<String, Object, StringBuilder> WRITE_ENTRY = new TriConsumer<String, Object, StringBuilder>() {
+		public void accept(final String key, final Object value, final StringBuilder text) {
+			if (text.length() > 1) text.append(", ");
+			text.append(key).append('=').append(value);
+		}
+	};
+
+	private final HoptoadPipeline pipeline;
+
+	protected Log4j2HoptoadAppender(final String name, final Filter filter, final HoptoadPipeline pipeline) {
+		super(name, filter, null, true, Property.EMPTY_ARRAY);
+		this.pipeline = pipeline;
+		pipeline.setName(name);
+	}
+
+	@PluginFactory
+	public static Log4j2HoptoadAppender createAppender(@PluginAttribute("name") final String name, @PluginAttribute("apiKey") final String apiKey, @PluginElement("Filter") final Filter filter, @PluginElement("Properties") final Property[] properties) {
+		if (name == null) {
+			LOGGER.error("No name provided for the Hoptoad appender");
+			return null;
+		}
+		final HoptoadPipeline pipeline = new HoptoadPipeline();
+		if (apiKey != null) pipeline.setApi_key(apiKey);
+		try {
+			if (properties != null) {
+				for (final Property property : properties) {
+					set(pipeline, property.getName(), property.getValue());
+				}
+			}
+		} catch (final IllegalArgumentException e) {
+			LOGGER.error("Cannot configure the Hoptoad appender " + name + ": " + e.getMessage());
+			return null;
+		}
+		return new Log4j2HoptoadAppender(name, filter, pipeline);
+	}
+
+	/** The context data written as "{key=value, ...}", or null when there is none. */
+	static String mdc(final ReadOnlyStringMap contextData) {
+		if (contextData == null || contextData.isEmpty()) return null;
+		final StringBuilder text = new StringBuilder(contextData.size() * 32).append('{');
+		contextData.forEach(WRITE_ENTRY, text);
+		return text.append('}').toString();
+	}
+
+	/** Sets the option {@code name} through the pipeline's setter, converting {@code value} to the setter's type. */
+	static void set(final HoptoadPipeline pipeline, final String name, final String value) {
+		final String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		for (final Method method : HoptoadPipeline.class.getMethods()) {
+			if (!method.getName().equals(setter) || method.getParameterTypes().length != 1) continue;
+			try {
+				method.invoke(pipeline, convert(value.trim(), method.getParameterTypes()[0]));
+			} catch (final IllegalAccessException e) {
+				throw new IllegalArgumentException("cannot set " + name, e);
+			} catch (final InvocationTargetException e) {
+				throw new IllegalArgumentException("cannot set " + name + " to " + value, e.getCause());
+			}
+			return;
+		}
+		throw new IllegalArgumentException("no such option: " + name);
+	}
+
+	private static Object convert(final String value, final Class<?> type) {
+		try {
+			if (type == String.class) return value;
+			if (type == boolean.class) return Boolean.valueOf(value);
+			if (type == int.class) return Integer.valueOf(value);
+			if (type == long.class) return Long.valueOf(value);
+			if (type == double.class) return Double.valueOf(value);
+			final Object instance = Class.forName(value).newInstance();
+			if (!type.isInstance(instance)) throw new IllegalArgumentException(value + " is not a " + type.getName());
+			return instance;
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("not a number: " + value);
+		} catch (final ReflectiveOperationException e) {
+			throw new IllegalArgumentException("cannot create " + value, e);
+		}
+	}
+
+	@Override
+	public void append(final LogEvent event) {
+		final Throwable throwable = event.getThrown();
+		if (throwable == null || !pipeline.isEnabled() || !pipeline.accepts(event.getLoggerName(), throwable)) return;
+
+		pipeline.notify(throwable, mdc(event.getContextData()), event.getTimeMillis());
+	}
+
+	/** What the notifier has been doing, once it is built. */
+	public NotifierMetrics metrics() {
+		return pipeline.metrics();
+	}
+
+	@Override
+	public void start() {
+		pipeline.notifier();
+		super.start();
+	}
+
+	@Override
+	public boolean stop(final long timeout, final TimeUnit timeUnit) {
+		setStopping();
+		final boolean stopped = super.stop(timeout, timeUnit, false);
+		pipeline.close();
+		setStopped();
+		return stopped;
+	}
+}
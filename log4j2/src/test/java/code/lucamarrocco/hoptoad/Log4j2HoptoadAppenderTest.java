@@ -0,0 +1,89 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.Exceptions.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.logging.log4j.*;
+import org.apache.logging.log4j.core.*;
+import org.apache.logging.log4j.core.config.*;
+import org.apache.logging.log4j.core.config.plugins.util.*;
+import org.apache.logging.log4j.core.impl.*;
+import org.apache.logging.log4j.util.*;
+import org.junit.*;
+
+public class Log4j2HoptoadAppenderTest {
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier();
+
+	private final List<HoptoadNotice> sent = recordingNotifier.sent();
+
+	private StubHoptoadServer server;
+
+	private Log4j2HoptoadAppender appender;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		if (appender != null) appender.stop();
+		server.stop();
+	}
+
+	private static LogEvent error(final Throwable throwable, final StringMap contextData) {
+		return Log4jLogEvent.newBuilder().setLoggerName("test").setLevel(Level.ERROR).setThrown(throwable).setContextData(contextData).setTimeMillis(1234567890L).build();
+	}
+
+	@Test
+	public void testNoticeCarriesTheEventsContextDataAndTimestamp() {
+		final HoptoadPipeline pipeline = recordingNotifier.pipeline();
+		appender = new Log4j2HoptoadAppender("hoptoad", null, pipeline);
+		appender.start();
+		final StringMap contextData = new SortedArrayStringMap();
+		contextData.putValue("user", "alice");
+		contextData.putValue("request", 42);
+
+		appender.append(error(newException(ERROR_MESSAGE), contextData));
+		appender.append(error(null, contextData));
+
+		assertThat(sent.size(), is(1));
+		assertThat(sent.get(0).session().get(":data"), is((Object) "{request=42, user=alice}"));
+		assertThat(sent.get(0).createdAt(), is(1234567890L));
+	}
+
+	@Test
+	public void testPropertiesSetPipelineOptions() throws Exception {
+		appender = Log4j2HoptoadAppender.createAppender("hoptoad", HoptoadNotifierTest.KEY, null, new Property[] { Property.createProperty("enabled", "true"), Property.createProperty("url", server.url()), Property.createProperty("dedup", "true"), Property.createProperty("maxNoticeBytes", "65536") });
+		appender.start();
+
+		for (int i = 0; i < 3; i++) {
+			appender.append(error(new RuntimeException("same"), new SortedArrayStringMap()));
+		}
+
+		assertThat(server.bodies().size(), is(1));
+		assertThat(appender.metrics().deduplicated(), is(2L));
+	}
+
+	@Test
+	public void testUnknownPropertyIsAConfigurationError() {
+		assertThat(Log4j2HoptoadAppender.createAppender("hoptoad", HoptoadNotifierTest.KEY, null, new Property[] { Property.createProperty("asynch", "true") }), is(nullValue()));
+		assertThat(Log4j2HoptoadAppender.createAppender("hoptoad", HoptoadNotifierTest.KEY, null, new Property[] { Property.createProperty("queueCapacity", "lots") }), is(nullValue()));
+	}
+
+	@Test
+	public void testIsFoundAsAPlugin() {
+		final PluginManager plugins = new PluginManager(Node.CATEGORY);
+		plugins.collectPlugins();
+
+		assertThat(plugins.getPluginType("hoptoad").getPluginClass().getName(), is(Log4j2HoptoadAppender.class.getName()));
+	}
+}
@@ -0,0 +1,81 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import java.util.*;
+
+import ch.qos.logback.classic.spi.*;
+import ch.qos.logback.core.*;
+
+/**
+ * The logback appender: notifies Hoptoad of the throwables logged. The
+ * options are those of {@link HoptoadPipeline}, set in a nested element:
+ *
+ * <pre>
+ * &lt;appender name="hoptoad" class="code.lucamarrocco.hoptoad.LogbackHoptoadAppender"&gt;
+ *   &lt;pipeline&gt;
+ *     &lt;api_key&gt;...&lt;/api_key&gt;
+ *     &lt;enabled&gt;true&lt;/enabled&gt;
+ *     &lt;async&gt;true&lt;/async&gt;
+ *   &lt;/pipeline&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * Like the other unsynchronized logback appenders it takes no lock of its
+ * own, so logging threads do not wait on each other to be appended.
+ */
+public class LogbackHoptoadAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+	private HoptoadPipeline pipeline;
+
+	public LogbackHoptoadAppender() {
+		this(new HoptoadPipeline());
+	}
+
+	protected LogbackHoptoadAppender(final HoptoadPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	protected void append(final ILoggingEvent event) {
+		if (!pipeline.isEnabled()) return;
+		final IThrowableProxy proxy = event.getThrowableProxy();
+		if (!(proxy instanceof ThrowableProxy)) return;
+		final Throwable throwable = ((ThrowableProxy) proxy).getThrowable();
+		if (!pipeline.accepts(event.getLoggerName(), throwable)) return;
+
+		final Map<String, String> mdc = event.getMDCPropertyMap();
+		pipeline.notify(throwable, mdc.isEmpty() ? null : mdc, event.getTimeStamp());
+	}
+
+	/** What the notifier has been doing, once it is built. */
+	public NotifierMetrics metrics() {
+		return pipeline.metrics();
+	}
+
+	@Override
+	public void setName(final String name) {
+		super.setName(name);
+		pipeline.setName(name);
+	}
+
+	/** The options, usually given in a nested {@code <pipeline>} element. */
+	public void setPipeline(final HoptoadPipeline pipeline) {
+		pipeline.setName(getName());
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void start() {
+		pipeline.notifier();
+		super.start();
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		pipeline.close();
+	}
+}
@@ -0,0 +1,82 @@
+// Modified or written by Luca Marrocco for inclusion with hoptoad.
+// Copyright (c) 2009 Luca Marrocco.
+// Licensed under the Apache License, Version 2.0 (the "License")
+
+package code.lucamarrocco.hoptoad;
+
+import static code.lucamarrocco.hoptoad.Exceptions.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.slf4j.*;
+
+import ch.qos.logback.classic.*;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.joran.*;
+
+public class LogbackHoptoadAppenderTest {
+
+	private final RecordingNotifier recordingNotifier = new RecordingNotifier();
+
+	private final List<HoptoadNotice> sent = recordingNotifier.sent();
+
+	private final LoggerContext context = new LoggerContext();
+
+	private StubHoptoadServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new StubHoptoadServer();
+	}
+
+	@After
+	public void tearDown() {
+		context.stop();
+		server.stop();
+	}
+
+	@Test
+	public void testNoticeCarriesTheEventsMdcAndTimestamp() {
+		final HoptoadPipeline pipeline = recordingNotifier.pipeline();
+		final LogbackHoptoadAppender appender = new LogbackHoptoadAppender(pipeline);
+		appender.setContext(context);
+		appender.start();
+		final Logger logger = context.getLogger("test");
+		logger.addAppender(appender);
+
+		MDC.put("user", "alice");
+		try {
+			logger.error("boom", newException(ERROR_MESSAGE));
+			logger.error("no throwable");
+		} finally {
+			MDC.remove("user");
+		}
+
+		assertThat(sent.size(), is(1));
+		assertThat(sent.get(0).session().get(":data").toString(), is("{user=alice}"));
+		assertThat(sent.get(0).createdAt(), is(lessThanOrEqualTo(System.currentTimeMillis())));
+	}
+
+	@Test
+	public void testIsConfiguredWithANestedPipeline() throws Exception {
+		final String configuration = "<configuration><appender name='hoptoad' class='code.lucamarrocco.hoptoad.LogbackHoptoadAppender'><pipeline>"
+				+ "<api_key>" + HoptoadNotifierTest.KEY + "</api_key><enabled>true</enabled><url>" + server.url() + "</url><dedup>true</dedup>"
+				+ "</pipeline></appender><root level='ERROR'><appender-ref ref='hoptoad'/></root></configuration>";
+		final JoranConfigurator configurator = new JoranConfigurator();
+		configurator.setContext(context);
+		configurator.doConfigure(new ByteArrayInputStream(configuration.getBytes("UTF-8")));
+
+		final Logger logger = context.getLogger("test");
+		for (int i = 0; i < 3; i++) {
+			logger.error("boom", new RuntimeException("same"));
+		}
+
+		final LogbackHoptoadAppender appender = (LogbackHoptoadAppender) context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("hoptoad");
+		assertThat(server.bodies().size(), is(1));
+		assertThat(appender.metrics().deduplicated(), is(2L));
+	}
+}